@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.cloud.stream.module.metrics.buffer.AsyncAggregateCounterRepository;
+import org.springframework.cloud.stream.module.metrics.buffer.BufferedAggregateCounterRepository;
+
+/**
+ * Exposes the backlog and flush latency of the write-behind buffer, or the backlog of the writer threads, when one
+ * is configured.
+ */
+public class AggregateCounterBufferMetrics implements PublicMetrics {
+
+	private final AggregateCounterRepository repository;
+
+	public AggregateCounterBufferMetrics(AggregateCounterRepository repository) {
+		this.repository = repository;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		if (repository instanceof AsyncAggregateCounterRepository) {
+			AsyncAggregateCounterRepository async = (AsyncAggregateCounterRepository) repository;
+			List<Metric<?>> metrics = new ArrayList<>();
+			metrics.add(new Metric<Integer>("aggregatecounter.async.queued", async.getQueuedWrites()));
+			metrics.add(new Metric<Long>("aggregatecounter.async.writes", async.getWriteCount()));
+			return metrics;
+		}
+		if (!(repository instanceof BufferedAggregateCounterRepository)) {
+			return Collections.emptyList();
+		}
+		BufferedAggregateCounterRepository buffer = (BufferedAggregateCounterRepository) repository;
+		List<Metric<?>> metrics = new ArrayList<>();
+		metrics.add(new Metric<Integer>("aggregatecounter.buffer.buckets", buffer.getBufferedBuckets()));
+		metrics.add(new Metric<Integer>("aggregatecounter.buffer.increments", buffer.getPendingIncrements()));
+		metrics.add(new Metric<Long>("aggregatecounter.flush.count", buffer.getFlushCount()));
+		metrics.add(new Metric<Long>("aggregatecounter.flush.writes", buffer.getWriteCount()));
+		metrics.add(new Metric<Long>("aggregatecounter.flush.failures", buffer.getFailedFlushCount()));
+		metrics.add(new Metric<Double>("aggregatecounter.flush.last", buffer.getLastFlushDuration()));
+		metrics.add(new Metric<Double>("aggregatecounter.flush.max", buffer.getMaxFlushDuration()));
+		return metrics;
+	}
+}
@@ -19,20 +19,23 @@ package org.springframework.cloud.stream.module.metrics;
 import org.joda.time.DateTime;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.config.SpelExpressionConverterConfiguration;
 import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.cloud.stream.module.metrics.buffer.EventTimeAggregator;
 import org.springframework.context.annotation.Import;
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
 
 /**
  * Configuration class for Aggregate counter sink.
  *
  * @author Ilayaperumal Gopinathan
  */
-@EnableBinding(Sink.class)
+@EnableBinding(AggregateCounterSinkChannels.class)
 @EnableConfigurationProperties(AggregateCounterSinkProperties.class)
 @Import(SpelExpressionConverterConfiguration.class)
 public class AggregateCounterSink {
@@ -43,17 +46,39 @@ public class AggregateCounterSink {
 	@Autowired
 	private AggregateCounterRepository aggregateCounterRepository;
 
+	@Autowired(required = false)
+	private EventTimeAggregator eventTimeAggregator;
+
+	@Autowired(required = false)
+	private AggregateHistogramRepository aggregateHistogramRepository;
+
+	@Autowired
+	@Qualifier(AggregateCounterSinkChannels.LATE)
+	private MessageChannel late;
+
 	@ServiceActivator(inputChannel = Sink.INPUT)
 	public void process(Message<?> message) {
 		Long increment = this.config.getIncrementExpression().getValue(message, Long.class);
 		String counterName = this.config.getComputedNameExpression().getValue(message, String.class);
+		DateTime eventTime;
 		if (this.config.getTimeField() == null) {
-			this.aggregateCounterRepository.increment(counterName, increment, DateTime.now());
+			eventTime = DateTime.now();
+			this.aggregateCounterRepository.increment(counterName, increment, eventTime);
 		}
 		else {
-			String timeStampValue = this.config.getTimeField().getValue(message, String.class);
-			this.aggregateCounterRepository.increment(counterName, increment,
-					this.config.getDateFormatter().parseDateTime(timeStampValue));
+			Object timeStampValue = this.config.getTimeField().getValue(message);
+			eventTime = this.config.getTimestampParser().parse(timeStampValue);
+			if (this.eventTimeAggregator == null) {
+				this.aggregateCounterRepository.increment(counterName, increment, eventTime);
+			}
+			else if (!this.eventTimeAggregator.increment(counterName, increment, eventTime)) {
+				this.late.send(message);
+				return;
+			}
+		}
+		if (this.aggregateHistogramRepository != null) {
+			Long value = this.config.getValueExpression().getValue(message, Long.class);
+			this.aggregateHistogramRepository.record(counterName, value, eventTime);
 		}
 	}
 }
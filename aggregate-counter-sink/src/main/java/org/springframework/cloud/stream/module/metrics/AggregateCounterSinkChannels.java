@@ -0,0 +1,34 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import org.springframework.cloud.stream.annotation.Output;
+import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.messaging.MessageChannel;
+
+/**
+ * The channels of the aggregate counter sink: the input of a {@link Sink}, and an output where events arriving later
+ * than the allowed lateness are sent to, rather than being counted.
+ */
+public interface AggregateCounterSinkChannels extends Sink {
+
+	String LATE = "late";
+
+	@Output(AggregateCounterSinkChannels.LATE)
+	MessageChannel late();
+
+}
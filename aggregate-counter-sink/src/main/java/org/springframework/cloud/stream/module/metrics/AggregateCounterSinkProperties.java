@@ -17,10 +17,10 @@
 package org.springframework.cloud.stream.module.metrics;
 
 import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 import org.hibernate.validator.constraints.NotBlank;
-import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
 import org.springframework.beans.factory.annotation.Value;
@@ -36,6 +36,10 @@ import org.springframework.integration.expression.ValueExpression;
 @ConfigurationProperties
 public class AggregateCounterSinkProperties extends MetricProperties {
 
+	public static final String HASH_ENCODING_VALUE = "hash";
+
+	public static final String PACKED_ENCODING_VALUE = "packed";
+
 	/**
 	 * The default name of the aggregate counter
 	 */
@@ -62,7 +66,99 @@ public class AggregateCounterSinkProperties extends MetricProperties {
 	 */
 	private Expression incrementExpression = new ValueExpression<>(1L);
 
-	private String dateFormat = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+	/**
+	 * A SpEL expression (against the incoming Message) to derive a value, e.g. a latency, whose distribution is
+	 * recorded per bucket alongside the counts, under the name of the counter.
+	 */
+	private Expression valueExpression;
+
+	private String dateFormat = TimestampParser.ISO_PATTERN;
+
+	private TimestampParser timestampParser;
+
+	/**
+	 * How often buffered increments are written to the store, in milliseconds. Increments are written through
+	 * immediately if not positive.
+	 */
+	private long flushIntervalMs = 0L;
+
+	/**
+	 * The number of buffered increments that triggers an early write to the store.
+	 */
+	private int flushThreshold = 10000;
+
+	/**
+	 * The maximum number of distinct counter buckets kept in memory before writing to the store. While the store
+	 * cannot be written to, increments that would add buckets past it are rejected.
+	 */
+	private int maxBufferSize = 10000;
+
+	/**
+	 * The number of threads writing increments to the store, grouping the increments of concurrent consumers into
+	 * fewer writes. Each message is still only acknowledged once written. Increments are written by the consuming
+	 * thread if 0. Cannot be combined with a positive 'flushIntervalMs'.
+	 */
+	private int asyncWriters = 0;
+
+	/**
+	 * The maximum number of increments waiting for a writer thread, past which consumers wait.
+	 */
+	private int maxInFlight = 1000;
+
+	/**
+	 * How long consumers wait for a writer thread to take, then write, an increment, in milliseconds. The message
+	 * fails once that time is up.
+	 */
+	private long writeTimeoutMs = 30000L;
+
+	/**
+	 * The number of past days for which minute counts are kept by the memory store, 0 to keep them forever.
+	 */
+	private int minuteRetentionDays = 0;
+
+	/**
+	 * The number of past days for which hour counts are kept by the memory store, 0 to keep them forever.
+	 */
+	private int hourRetentionDays = 0;
+
+	/**
+	 * An upper bound on the memory held by the memory store, in bytes, 0 for no bound.
+	 */
+	private long maxMemoryBytes = 0L;
+
+	/**
+	 * How often the memory store evicts expired counts, in milliseconds.
+	 */
+	private long compactionIntervalMs = 60000L;
+
+	/**
+	 * How the redis store encodes counts, either as one hash field per bucket or as packed arrays.
+	 */
+	private String redisEncoding = HASH_ENCODING_VALUE;
+
+	/**
+	 * Whether to migrate hash encoded counts to the packed encoding on startup.
+	 */
+	private boolean migrateOnStartup = false;
+
+	/**
+	 * Whether to wrap counter names in Redis Cluster hash tags within hash encoded keys and histogram keys, so that all
+	 * the keys of a counter live in the same cluster slot. Data written with and without hash tags is not shared.
+	 */
+	private boolean redisClusterHashTags = false;
+
+	/**
+	 * How far behind the latest time seen in 'timeField' events are still counted, in milliseconds. When positive,
+	 * increments are grouped by minute until the minute falls out of that window, and later events are sent to the
+	 * 'late' output instead. Increments are written as they arrive if 0.
+	 */
+	private long allowedLatenessMs = 0L;
+
+	/**
+	 * The maximum number of (counter, minute) pairs held while waiting for 'allowedLatenessMs' to pass. Past it, the
+	 * oldest minutes are written early, and events are rejected while the store cannot be written to.
+	 */
+	private int maxPendingBuckets = 10000;
 
 	public String getName() {
 		if (name == null && nameExpression == null) {
@@ -108,6 +204,14 @@ public class AggregateCounterSinkProperties extends MetricProperties {
 		this.incrementExpression = incrementExpression;
 	}
 
+	public Expression getValueExpression() {
+		return valueExpression;
+	}
+
+	public void setValueExpression(Expression valueExpression) {
+		this.valueExpression = valueExpression;
+	}
+
 	@NotBlank
 	@DateFormat
 	public String getDateFormat() {
@@ -116,11 +220,175 @@ public class AggregateCounterSinkProperties extends MetricProperties {
 
 	@NotNull
 	public DateTimeFormatter getDateFormatter() {
-		return DateTimeFormat.forPattern(this.getDateFormat());
+		return getTimestampParser().getFormatter();
 	}
 
 	public void setDateFormat(String dateFormat) {
 		this.dateFormat = dateFormat;
+		this.timestampParser = null;
+	}
+
+	/**
+	 * Return the parser of the time field for the configured date format, compiled on first use.
+	 */
+	TimestampParser getTimestampParser() {
+		TimestampParser parser = this.timestampParser;
+		if (parser == null) {
+			parser = new TimestampParser(this.getDateFormat());
+			this.timestampParser = parser;
+		}
+		return parser;
+	}
+
+	public long getFlushIntervalMs() {
+		return flushIntervalMs;
+	}
+
+	public void setFlushIntervalMs(long flushIntervalMs) {
+		this.flushIntervalMs = flushIntervalMs;
+	}
+
+	@Min(1)
+	public int getFlushThreshold() {
+		return flushThreshold;
+	}
+
+	public void setFlushThreshold(int flushThreshold) {
+		this.flushThreshold = flushThreshold;
+	}
+
+	@Min(1)
+	public int getMaxBufferSize() {
+		return maxBufferSize;
+	}
+
+	public void setMaxBufferSize(int maxBufferSize) {
+		this.maxBufferSize = maxBufferSize;
+	}
+
+	@Min(0)
+	public int getAsyncWriters() {
+		return asyncWriters;
+	}
+
+	public void setAsyncWriters(int asyncWriters) {
+		this.asyncWriters = asyncWriters;
+	}
+
+	@Min(1)
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	@Min(1)
+	public long getWriteTimeoutMs() {
+		return writeTimeoutMs;
+	}
+
+	public void setWriteTimeoutMs(long writeTimeoutMs) {
+		this.writeTimeoutMs = writeTimeoutMs;
+	}
+
+	@Min(0)
+	public int getMinuteRetentionDays() {
+		return minuteRetentionDays;
+	}
+
+	public void setMinuteRetentionDays(int minuteRetentionDays) {
+		this.minuteRetentionDays = minuteRetentionDays;
+	}
+
+	@Min(0)
+	public int getHourRetentionDays() {
+		return hourRetentionDays;
+	}
+
+	public void setHourRetentionDays(int hourRetentionDays) {
+		this.hourRetentionDays = hourRetentionDays;
+	}
+
+	@Min(0)
+	public long getMaxMemoryBytes() {
+		return maxMemoryBytes;
+	}
+
+	public void setMaxMemoryBytes(long maxMemoryBytes) {
+		this.maxMemoryBytes = maxMemoryBytes;
+	}
+
+	@Min(1)
+	public long getCompactionIntervalMs() {
+		return compactionIntervalMs;
+	}
+
+	public void setCompactionIntervalMs(long compactionIntervalMs) {
+		this.compactionIntervalMs = compactionIntervalMs;
+	}
+
+	public String getRedisEncoding() {
+		return redisEncoding;
+	}
+
+	public void setRedisEncoding(String redisEncoding) {
+		this.redisEncoding = redisEncoding;
+	}
+
+	public boolean isMigrateOnStartup() {
+		return migrateOnStartup;
+	}
+
+	public void setMigrateOnStartup(boolean migrateOnStartup) {
+		this.migrateOnStartup = migrateOnStartup;
+	}
+
+	public boolean isRedisClusterHashTags() {
+		return redisClusterHashTags;
+	}
+
+	public void setRedisClusterHashTags(boolean redisClusterHashTags) {
+		this.redisClusterHashTags = redisClusterHashTags;
+	}
+
+	@Min(0)
+	public long getAllowedLatenessMs() {
+		return allowedLatenessMs;
+	}
+
+	public void setAllowedLatenessMs(long allowedLatenessMs) {
+		this.allowedLatenessMs = allowedLatenessMs;
+	}
+
+	@Min(1)
+	public int getMaxPendingBuckets() {
+		return maxPendingBuckets;
+	}
+
+	public void setMaxPendingBuckets(int maxPendingBuckets) {
+		this.maxPendingBuckets = maxPendingBuckets;
+	}
+
+	@AssertTrue(message = "'timeField' must be set when 'allowedLatenessMs' is positive")
+	public boolean isTimeFieldSetForLateness() {
+		return allowedLatenessMs <= 0 || timeField != null;
+	}
+
+	@AssertTrue(message = "'redisEncoding' must be one of 'hash' or 'packed'")
+	public boolean isValidRedisEncoding() {
+		return HASH_ENCODING_VALUE.equals(redisEncoding) || PACKED_ENCODING_VALUE.equals(redisEncoding);
+	}
+
+	@AssertTrue(message = "'redisClusterHashTags' is only supported with the 'hash' redis encoding")
+	public boolean isHashEncodingForClusterHashTags() {
+		return !redisClusterHashTags || HASH_ENCODING_VALUE.equals(redisEncoding);
+	}
+
+	@AssertTrue(message = "'flushIntervalMs' and 'asyncWriters' cannot both be positive")
+	public boolean isBufferedOrAsync() {
+		return flushIntervalMs <= 0 || asyncWriters <= 0;
 	}
 
 }
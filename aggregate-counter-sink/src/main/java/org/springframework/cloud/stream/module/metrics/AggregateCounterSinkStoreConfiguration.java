@@ -19,9 +19,18 @@ package org.springframework.cloud.stream.module.metrics;
 import java.util.Collections;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.stream.module.metrics.buffer.AsyncAggregateCounterRepository;
+import org.springframework.cloud.stream.module.metrics.buffer.BufferedAggregateCounterRepository;
+import org.springframework.cloud.stream.module.metrics.buffer.EventTimeAggregator;
 import org.springframework.cloud.stream.module.metrics.memory.InMemoryAggregateCounterRepository;
+import org.springframework.cloud.stream.module.metrics.memory.InMemoryAggregateHistogramRepository;
+import org.springframework.cloud.stream.module.metrics.redis.PackedRedisAggregateCounterRepository;
 import org.springframework.cloud.stream.module.metrics.redis.RedisAggregateCounterRepository;
+import org.springframework.cloud.stream.module.metrics.redis.RedisAggregateHistogramRepository;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.RedisConnectionFailureException;
@@ -48,12 +57,55 @@ public class AggregateCounterSinkStoreConfiguration {
 
 	@Bean
 	public AggregateCounterRepository aggregateCounterRepository() {
-		if (config.getStore().equals(MetricProperties.REDIS_STORE_VALUE)) {
-			return new RedisAggregateCounterRepository(redisConnectionFactory, retryOperations());
+		AggregateCounterRepository repository;
+		if (config.getStore().equals(MetricProperties.REDIS_STORE_VALUE)
+				&& config.getRedisEncoding().equals(AggregateCounterSinkProperties.PACKED_ENCODING_VALUE)) {
+			PackedRedisAggregateCounterRepository packed = new PackedRedisAggregateCounterRepository(
+					redisConnectionFactory, retryOperations());
+			if (config.isMigrateOnStartup()) {
+				packed.migrateAll();
+			}
+			repository = packed;
+		}
+		else if (config.getStore().equals(MetricProperties.REDIS_STORE_VALUE)) {
+			repository = new RedisAggregateCounterRepository(redisConnectionFactory, retryOperations(),
+					config.isRedisClusterHashTags());
 		}
 		else {
-			return new InMemoryAggregateCounterRepository();
+			repository = new InMemoryAggregateCounterRepository(config.getMinuteRetentionDays(),
+					config.getHourRetentionDays(), config.getMaxMemoryBytes(), config.getCompactionIntervalMs());
+		}
+		if (config.getFlushIntervalMs() > 0) {
+			return new BufferedAggregateCounterRepository(repository, config.getFlushIntervalMs(),
+					config.getFlushThreshold(), config.getMaxBufferSize());
+		}
+		if (config.getAsyncWriters() > 0) {
+			return new AsyncAggregateCounterRepository(repository, config.getAsyncWriters(), config.getMaxInFlight(),
+					config.getWriteTimeoutMs());
 		}
+		return repository;
+	}
+
+	@Bean
+	@ConditionalOnProperty("valueExpression")
+	public AggregateHistogramRepository aggregateHistogramRepository() {
+		if (config.getStore().equals(MetricProperties.REDIS_STORE_VALUE)) {
+			return new RedisAggregateHistogramRepository(redisConnectionFactory, retryOperations(),
+					config.isRedisClusterHashTags());
+		}
+		return new InMemoryAggregateHistogramRepository();
+	}
+
+	@Bean
+	@ConditionalOnExpression("${allowedLatenessMs:0} > 0")
+	public EventTimeAggregator eventTimeAggregator() {
+		return new EventTimeAggregator(aggregateCounterRepository(), config.getAllowedLatenessMs(),
+				config.getMaxPendingBuckets());
+	}
+
+	@Bean
+	public PublicMetrics aggregateCounterBufferMetrics() {
+		return new AggregateCounterBufferMetrics(aggregateCounterRepository());
 	}
 
 	@Bean
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import java.util.Date;
+
+import org.joda.time.DateTime;
+import org.joda.time.ReadableInstant;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+/**
+ * Converts the values of the time field of messages to {@link DateTime}s.
+ * <p>
+ * Numbers are read as milliseconds since the epoch, and dates and instants are taken as is. Other values are parsed
+ * with the date format, compiled once. Text in the default format, {@value #ISO_PATTERN}, is read digit by digit
+ * without going through the formatter, and yields the same result: as the {@code Z} of that pattern is a literal, the
+ * time is read in the default time zone.
+ */
+final class TimestampParser {
+
+	static final String ISO_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+
+	private static final int ISO_LENGTH = 24;
+
+	private final DateTimeFormatter formatter;
+
+	private final boolean iso;
+
+	TimestampParser(String pattern) {
+		this.formatter = DateTimeFormat.forPattern(pattern);
+		this.iso = ISO_PATTERN.equals(pattern);
+	}
+
+	DateTimeFormatter getFormatter() {
+		return formatter;
+	}
+
+	DateTime parse(Object value) {
+		if (value instanceof Number) {
+			return new DateTime(((Number) value).longValue());
+		}
+		else if (value instanceof ReadableInstant) {
+			ReadableInstant instant = (ReadableInstant) value;
+			return value instanceof DateTime ? (DateTime) value : new DateTime(instant.getMillis(), instant.getZone());
+		}
+		else if (value instanceof Date) {
+			return new DateTime(((Date) value).getTime());
+		}
+		else if (value == null) {
+			throw new IllegalArgumentException("The time field of the message is null");
+		}
+		else if (iso && value instanceof CharSequence && isIso((CharSequence) value)) {
+			CharSequence text = (CharSequence) value;
+			return new DateTime(digits(text, 0, 4), digits(text, 5, 2), digits(text, 8, 2), digits(text, 11, 2),
+					digits(text, 14, 2), digits(text, 17, 2), digits(text, 20, 3));
+		}
+		return formatter.parseDateTime(value.toString());
+	}
+
+	/**
+	 * Whether the text is made of digits and separators at the positions of the default format, leaving anything else
+	 * to the formatter.
+	 */
+	private static boolean isIso(CharSequence text) {
+		if (text.length() != ISO_LENGTH) {
+			return false;
+		}
+		for (int i = 0; i < ISO_LENGTH; i++) {
+			char c = text.charAt(i);
+			switch (i) {
+				case 4:
+				case 7:
+					if (c != '-') {
+						return false;
+					}
+					break;
+				case 10:
+					if (c != 'T') {
+						return false;
+					}
+					break;
+				case 13:
+				case 16:
+					if (c != ':') {
+						return false;
+					}
+					break;
+				case 19:
+					if (c != '.') {
+						return false;
+					}
+					break;
+				case 23:
+					if (c != 'Z') {
+						return false;
+					}
+					break;
+				default:
+					if (c < '0' || c > '9') {
+						return false;
+					}
+			}
+		}
+		return true;
+	}
+
+	private static int digits(CharSequence text, int start, int length) {
+		int result = 0;
+		for (int i = start; i < start + length; i++) {
+			result = result * 10 + (text.charAt(i) - '0');
+		}
+		return result;
+	}
+
+}
@@ -17,9 +17,11 @@
 package org.springframework.cloud.stream.module;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 import org.joda.time.DateTime;
 import org.junit.After;
@@ -39,8 +41,21 @@ import org.springframework.cloud.stream.module.metrics.AggregateCounterRepositor
 import org.springframework.cloud.stream.module.metrics.AggregateCounterResolution;
 import org.springframework.cloud.stream.module.metrics.AggregateCounterSink;
 import org.springframework.cloud.stream.module.metrics.AggregateCounterSinkApplication;
+import org.springframework.cloud.stream.module.metrics.AggregateCounterSinkChannels;
+import org.springframework.cloud.stream.module.metrics.AggregateHistogram;
+import org.springframework.cloud.stream.module.metrics.AggregateHistogramRepository;
+import org.springframework.cloud.stream.module.metrics.buffer.AsyncAggregateCounterRepository;
+import org.springframework.cloud.stream.module.metrics.buffer.BufferedAggregateCounterRepository;
+import org.springframework.cloud.stream.module.metrics.buffer.EventTimeAggregator;
+import org.springframework.cloud.stream.module.metrics.redis.PackedRedisAggregateCounterRepository;
+import org.springframework.cloud.stream.module.metrics.redis.RedisAggregateCounterRepository;
+import org.springframework.cloud.stream.test.binder.MessageCollector;
 import org.springframework.cloud.stream.test.junit.redis.RedisTestSupport;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.messaging.Message;
 import org.springframework.messaging.support.GenericMessage;
+import org.springframework.retry.support.RetryTemplate;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 
@@ -100,6 +115,20 @@ public abstract class AggregateCounterTests {
 		}
 	}
 
+	@WebIntegrationTest({"name="+ AGGREGATE_COUNTER_NAME, "timeField=payload.ts"})
+	public static class CountWithEpochTimestampInMessageTests extends AggregateCounterTests {
+
+		@Test
+		public void testCountWithEpochTimestampInMessage() {
+			DateTime timestamp = new DateTime(1978, 10, 14, 13, 37);
+			this.sink.input().send(new GenericMessage<Object>(
+					Collections.singletonMap("ts", timestamp.getMillis())));
+			AggregateCounter counts = this.aggregateCounterRepository.getCounts(AGGREGATE_COUNTER_NAME, 3,
+					timestamp.plusMinutes(1), AggregateCounterResolution.minute);
+			assertThat(counts.getCounts(), equalTo(new long[] {0, 1, 0}));
+		}
+	}
+
 	@WebIntegrationTest({"name="+ AGGREGATE_COUNTER_NAME, "incrementExpression=payload"})
 	public static class CountWithCustomIncrementTests extends AggregateCounterTests {
 
@@ -124,4 +153,178 @@ public abstract class AggregateCounterTests {
 			assertThat(counts.getCounts(), equalTo(new long[] {0, 0, 0, 0, 1}));
 		}
 	}
+
+	@WebIntegrationTest({"name="+ AGGREGATE_COUNTER_NAME, "flushIntervalMs=60000"})
+	public static class BufferedCountTests extends AggregateCounterTests {
+
+		@Test
+		public void testCountIsWrittenOnFlush() {
+			for (int i = 0; i < 3; i++) {
+				this.sink.input().send(new GenericMessage<Object>(""));
+			}
+			AggregateCounter counts = this.aggregateCounterRepository.getCounts(AGGREGATE_COUNTER_NAME, 5,
+					AggregateCounterResolution.hour);
+			assertThat(counts.getCounts(), equalTo(new long[] {0, 0, 0, 0, 0}));
+			((BufferedAggregateCounterRepository) this.aggregateCounterRepository).flush();
+			counts = this.aggregateCounterRepository.getCounts(AGGREGATE_COUNTER_NAME, 5,
+					AggregateCounterResolution.hour);
+			assertThat(counts.getCounts(), equalTo(new long[] {0, 0, 0, 0, 3}));
+		}
+	}
+
+	@WebIntegrationTest({"name="+ AGGREGATE_COUNTER_NAME, "asyncWriters=2"})
+	public static class AsyncCountTests extends AggregateCounterTests {
+
+		@Test
+		public void testCountIsWrittenWhenSendReturns() throws Exception {
+			for (int i = 0; i < 3; i++) {
+				this.sink.input().send(new GenericMessage<Object>(""));
+			}
+			AggregateCounter counts = this.aggregateCounterRepository.getCounts(AGGREGATE_COUNTER_NAME, 5,
+					AggregateCounterResolution.hour);
+			assertThat(counts.getCounts(), equalTo(new long[] {0, 0, 0, 0, 3}));
+			AsyncAggregateCounterRepository async = (AsyncAggregateCounterRepository) this.aggregateCounterRepository;
+			assertThat(async.incrementAsync(AGGREGATE_COUNTER_NAME, 2, new DateTime()).get(), equalTo(5L));
+		}
+	}
+
+	@WebIntegrationTest({"name="+ AGGREGATE_COUNTER_NAME, "timeField=payload.ts", "dateFormat=dd/MM/yyyy",
+			"allowedLatenessMs=86400000"})
+	public static class EventTimeCountTests extends AggregateCounterTests {
+
+		@Autowired
+		@Bindings(AggregateCounterSink.class)
+		private AggregateCounterSinkChannels channels;
+
+		@Autowired
+		private EventTimeAggregator eventTimeAggregator;
+
+		@Autowired
+		private MessageCollector collector;
+
+		@Test
+		public void testMinutesAreWrittenOncePastTheWatermark() throws InterruptedException {
+			this.sink.input().send(new GenericMessage<Object>(Collections.singletonMap("ts", "14/10/1978")));
+			this.sink.input().send(new GenericMessage<Object>(Collections.singletonMap("ts", "14/10/1978")));
+			DateTime endDate = new DateTime(1978, 10, 17, 0, 0);
+			AggregateCounter counts = this.aggregateCounterRepository.getCounts(AGGREGATE_COUNTER_NAME, 4, endDate,
+					AggregateCounterResolution.day);
+			assertThat(counts.getCounts(), equalTo(new long[] {0, 0, 0, 0}));
+
+			// Moves the watermark to the 15th, past the minute of the first two events
+			this.sink.input().send(new GenericMessage<Object>(Collections.singletonMap("ts", "16/10/1978")));
+			counts = this.aggregateCounterRepository.getCounts(AGGREGATE_COUNTER_NAME, 4, endDate,
+					AggregateCounterResolution.day);
+			assertThat(counts.getCounts(), equalTo(new long[] {2, 0, 0, 0}));
+
+			// Older than the watermark
+			this.sink.input().send(new GenericMessage<Object>(Collections.singletonMap("ts", "13/10/1978")));
+			Message<?> late = this.collector.forChannel(this.channels.late()).poll(1, TimeUnit.SECONDS);
+			assertThat(late.getPayload(), equalTo((Object) Collections.singletonMap("ts", "13/10/1978")));
+			assertThat(this.eventTimeAggregator.getLateEvents(), equalTo(1L));
+
+			this.eventTimeAggregator.flush();
+			counts = this.aggregateCounterRepository.getCounts(AGGREGATE_COUNTER_NAME, 4, endDate,
+					AggregateCounterResolution.day);
+			assertThat(counts.getCounts(), equalTo(new long[] {2, 0, 1, 0}));
+			assertThat(this.collector.forChannel(this.channels.late()).poll(10, TimeUnit.MILLISECONDS),
+					nullValue());
+		}
+	}
+
+	@WebIntegrationTest({"name="+ AGGREGATE_COUNTER_NAME, "valueExpression=payload.latency"})
+	public static class HistogramTests extends AggregateCounterTests {
+
+		@Autowired
+		private AggregateHistogramRepository aggregateHistogramRepository;
+
+		@Before
+		@After
+		public void clearHistogram() {
+			aggregateHistogramRepository.reset(AGGREGATE_COUNTER_NAME);
+		}
+
+		@Test
+		public void testValuesRecordedAlongsideCounts() {
+			for (int i = 1; i <= 100; i++) {
+				this.sink.input().send(new GenericMessage<Object>(Collections.singletonMap("latency", i)));
+			}
+			AggregateCounter counts = this.aggregateCounterRepository.getCounts(AGGREGATE_COUNTER_NAME, 2,
+					AggregateCounterResolution.hour);
+			assertThat(counts.getCounts(), equalTo(new long[] {0, 100}));
+			AggregateHistogram histograms = this.aggregateHistogramRepository.getHistograms(AGGREGATE_COUNTER_NAME, 2,
+					AggregateCounterResolution.hour);
+			assertThat(histograms.getCounts(), equalTo(new long[] {0, 100}));
+			assertThat(histograms.getValuesAtPercentile(100), equalTo(new long[] {0, 100}));
+			assertThat(histograms.getBuckets()[1].getMin(), equalTo(1L));
+			assertThat(histograms.getBuckets()[1].getSum(), equalTo(5050L));
+		}
+	}
+
+	@WebIntegrationTest({"name="+ AGGREGATE_COUNTER_NAME, "redisClusterHashTags=true", "flushIntervalMs=60000"})
+	public static class ClusterHashTagsCountTests extends AggregateCounterTests {
+
+		@Autowired
+		private RedisConnectionFactory redisConnectionFactory;
+
+		@Test
+		public void testCountIsWrittenUnderHashTaggedKeys() {
+			for (int i = 0; i < 3; i++) {
+				this.sink.input().send(new GenericMessage<Object>(""));
+			}
+			((BufferedAggregateCounterRepository) this.aggregateCounterRepository).flush();
+			AggregateCounter counts = this.aggregateCounterRepository.getCounts(AGGREGATE_COUNTER_NAME, 5,
+					AggregateCounterResolution.hour);
+			assertThat(counts.getCounts(), equalTo(new long[] {0, 0, 0, 0, 3}));
+			StringRedisTemplate template = new StringRedisTemplate(redisConnectionFactory);
+			assertThat(template.opsForValue().get("aggregate-counters.{" + AGGREGATE_COUNTER_NAME + "}"),
+					equalTo("3"));
+			assertThat(template.hasKey("aggregate-counters." + AGGREGATE_COUNTER_NAME), equalTo(false));
+		}
+	}
+
+	@WebIntegrationTest({"name="+ AGGREGATE_COUNTER_NAME, "redisEncoding=packed"})
+	public static class PackedCountTests extends AggregateCounterTests {
+
+		@Autowired
+		private RedisConnectionFactory redisConnectionFactory;
+
+		@Test
+		public void testCountWithPackedEncoding() {
+			this.sink.input().send(new GenericMessage<Object>("43"));
+			this.sink.input().send(new GenericMessage<Object>("43"));
+			AggregateCounter counts = this.aggregateCounterRepository.getCounts(AGGREGATE_COUNTER_NAME, 5,
+					AggregateCounterResolution.hour);
+			assertThat(counts.getCounts(), equalTo(new long[] {0, 0, 0, 0, 2}));
+			counts = this.aggregateCounterRepository.getCounts(AGGREGATE_COUNTER_NAME, 3,
+					AggregateCounterResolution.minute);
+			assertThat(counts.getCounts(), equalTo(new long[] {0, 0, 2}));
+		}
+
+		@Test
+		public void testMigrateFromHashEncoding() {
+			RedisAggregateCounterRepository hashRepository = new RedisAggregateCounterRepository(
+					redisConnectionFactory, new RetryTemplate());
+			DateTime dateTime = new DateTime(2016, 2, 29, 13, 37);
+			hashRepository.increment(AGGREGATE_COUNTER_NAME, 5, dateTime);
+			hashRepository.increment(AGGREGATE_COUNTER_NAME, 2, dateTime.plusDays(1));
+			this.aggregateCounterRepository.increment(AGGREGATE_COUNTER_NAME, 1, dateTime);
+
+			PackedRedisAggregateCounterRepository packedRepository =
+					(PackedRedisAggregateCounterRepository) this.aggregateCounterRepository;
+			assertThat(packedRepository.migrate(AGGREGATE_COUNTER_NAME), equalTo(8));
+			assertThat(packedRepository.migrate(AGGREGATE_COUNTER_NAME), equalTo(0));
+
+			AggregateCounter counts = packedRepository.getCounts(AGGREGATE_COUNTER_NAME, 3, dateTime.plusDays(1),
+					AggregateCounterResolution.day);
+			assertThat(counts.getCounts(), equalTo(new long[] {0, 6, 2}));
+			counts = packedRepository.getCounts(AGGREGATE_COUNTER_NAME, 2, dateTime.plusMinutes(1),
+					AggregateCounterResolution.minute);
+			assertThat(counts.getCounts(), equalTo(new long[] {6, 0}));
+			counts = packedRepository.getCounts(AGGREGATE_COUNTER_NAME, 1, dateTime,
+					AggregateCounterResolution.year);
+			assertThat(counts.getCounts(), equalTo(new long[] {8}));
+			hashRepository.reset(AGGREGATE_COUNTER_NAME);
+		}
+	}
 }
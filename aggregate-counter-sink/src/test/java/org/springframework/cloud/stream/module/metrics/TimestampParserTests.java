@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Date;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.IllegalFieldValueException;
+import org.joda.time.Instant;
+import org.joda.time.format.DateTimeFormat;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TimestampParser}.
+ */
+public class TimestampParserTests {
+
+	private final TimestampParser parser = new TimestampParser(TimestampParser.ISO_PATTERN);
+
+	@Test
+	public void testIsoTextParsedAsTheFormatterWould() {
+		String[] values = {"2016-02-29T13:37:42.123Z", "1970-01-01T00:00:00.000Z", "1969-12-31T23:59:59.999Z",
+				"0001-01-01T00:00:00.000Z", "9999-12-31T23:59:59.999Z"};
+		for (String value : values) {
+			assertEquals(value, DateTimeFormat.forPattern(TimestampParser.ISO_PATTERN).parseDateTime(value),
+					parser.parse(value));
+			assertEquals(value, DateTimeFormat.forPattern(TimestampParser.ISO_PATTERN).parseDateTime(value),
+					parser.parse(new StringBuilder(value)));
+		}
+	}
+
+	@Test
+	public void testIsoTextParsedInTheDefaultZone() {
+		DateTimeZone defaultZone = DateTimeZone.getDefault();
+		try {
+			DateTimeZone.setDefault(DateTimeZone.forID("America/New_York"));
+			TimestampParser parser = new TimestampParser(TimestampParser.ISO_PATTERN);
+			// The day daylight saving time ends, 1:30 happens twice
+			String value = "2015-11-01T01:30:00.000Z";
+			assertEquals(DateTimeFormat.forPattern(TimestampParser.ISO_PATTERN).parseDateTime(value),
+					parser.parse(value));
+		}
+		finally {
+			DateTimeZone.setDefault(defaultZone);
+		}
+	}
+
+	@Test
+	public void testOtherTextLeftToTheFormatter() {
+		// Parsing is lenient as to the number of digits
+		assertEquals(new DateTime(2016, 2, 9, 3, 7, 4, 500), parser.parse("2016-2-9T3:7:4.5Z"));
+		TimestampParser custom = new TimestampParser("dd/MM/yyyy");
+		assertEquals(new DateTime(1978, 10, 14, 0, 0), custom.parse("14/10/1978"));
+	}
+
+	@Test(expected = IllegalFieldValueException.class)
+	public void testInvalidIsoText() {
+		parser.parse("2016-02-30T13:37:42.123Z");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMalformedText() {
+		parser.parse("2016-02-29 13:37:42");
+	}
+
+	@Test
+	public void testEpochAndInstants() {
+		long millis = 1456753062123L;
+		assertEquals(new DateTime(millis), parser.parse(millis));
+		assertEquals(new DateTime(1000000L), parser.parse(1000 * 1000));
+		assertEquals(new DateTime(millis), parser.parse(new Date(millis)));
+		assertEquals(new DateTime(millis, DateTimeZone.UTC), parser.parse(new DateTime(millis, DateTimeZone.UTC)));
+		assertEquals(new DateTime(millis, DateTimeZone.UTC), parser.parse(new Instant(millis)));
+	}
+
+}
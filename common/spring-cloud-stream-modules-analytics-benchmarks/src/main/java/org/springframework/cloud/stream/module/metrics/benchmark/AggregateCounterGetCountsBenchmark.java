@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.stream.module.metrics.AggregateCounter;
+import org.springframework.cloud.stream.module.metrics.AggregateCounterRepository;
+import org.springframework.cloud.stream.module.metrics.AggregateCounterResolution;
+
+/**
+ * Measures {@link AggregateCounterRepository#getCounts(String, int, DateTime, AggregateCounterResolution)} at every
+ * resolution, on a counter incremented every half hour over the two years preceding the end of the queries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AggregateCounterGetCountsBenchmark {
+
+	private static final String NAME = "benchmark";
+
+	private static final DateTime END = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC);
+
+	private static final long FILL_STEP_MS = 30 * 60 * 1000L;
+
+	@Param({Repositories.MEMORY, Repositories.REDIS, Repositories.PACKED})
+	private String store;
+
+	@Param({"minute", "hour", "day", "month", "year"})
+	private AggregateCounterResolution resolution;
+
+	@Param("60")
+	private int nCounts;
+
+	private final Repositories repositories = new Repositories();
+
+	private AggregateCounterRepository repository;
+
+	@Setup
+	public void setUp() throws Exception {
+		repository = repositories.aggregateCounterRepository(store);
+		repository.reset(NAME);
+		for (long t = END.minusYears(2).getMillis(); t <= END.getMillis(); t += FILL_STEP_MS) {
+			repository.increment(NAME, 1L, new DateTime(t, DateTimeZone.UTC));
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		repository.reset(NAME);
+		repositories.close();
+	}
+
+	@Benchmark
+	public AggregateCounter getCounts() {
+		return repository.getCounts(NAME, nCounts, END, resolution);
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.stream.module.metrics.AggregateCounterRepository;
+
+/**
+ * Measures {@link AggregateCounterRepository#increment(String, long, DateTime)}, with timestamps moving forward by a
+ * second on every call, as when counting a live stream of messages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AggregateCounterIncrementBenchmark {
+
+	private static final String NAME = "benchmark";
+
+	private static final long START = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+
+	@Param({Repositories.MEMORY, Repositories.REDIS, Repositories.PACKED, Repositories.BUFFERED})
+	private String store;
+
+	private final Repositories repositories = new Repositories();
+
+	private AggregateCounterRepository repository;
+
+	@Setup
+	public void setUp() throws Exception {
+		repository = repositories.aggregateCounterRepository(store);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		repository.reset(NAME);
+		repositories.close();
+	}
+
+	@Benchmark
+	public long increment(Clock clock) {
+		return repository.increment(NAME, 1L, clock.next());
+	}
+
+	@Benchmark
+	@Threads(4)
+	public long incrementContended(Clock clock) {
+		return repository.increment(NAME, 1L, clock.next());
+	}
+
+	/**
+	 * The timestamps of the increments of a thread.
+	 */
+	@State(Scope.Thread)
+	public static class Clock {
+
+		private long timestamp = START;
+
+		DateTime next() {
+			timestamp += 1000L;
+			return new DateTime(timestamp, DateTimeZone.UTC);
+		}
+	}
+
+}
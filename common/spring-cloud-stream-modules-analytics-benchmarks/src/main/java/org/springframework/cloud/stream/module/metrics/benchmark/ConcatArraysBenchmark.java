@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.stream.module.metrics.MetricUtils;
+
+/**
+ * Measures {@link MetricUtils#concatArrays(List, int, int)} on bucket arrays the size of those of the minute
+ * resolution, one per hour, starting half way through the first one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcatArraysBenchmark {
+
+	private static final int BUCKET_SIZE = 60;
+
+	@Param({"60", "1440", "10080"})
+	private int size;
+
+	private List<long[]> arrays;
+
+	@Setup
+	public void setUp() {
+		int count = size / BUCKET_SIZE + 2;
+		arrays = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			long[] array = new long[BUCKET_SIZE];
+			for (int j = 0; j < BUCKET_SIZE; j++) {
+				array[j] = i * BUCKET_SIZE + j;
+			}
+			arrays.add(array);
+		}
+	}
+
+	@Benchmark
+	public long[] concatArrays() {
+		return MetricUtils.concatArrays(arrays, BUCKET_SIZE / 2, size);
+	}
+
+}
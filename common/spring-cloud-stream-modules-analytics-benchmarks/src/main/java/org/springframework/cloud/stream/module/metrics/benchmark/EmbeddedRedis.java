@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.benchmark;
+
+import java.io.IOException;
+
+import redis.embedded.RedisServer;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.retry.RetryOperations;
+import org.springframework.retry.support.RetryTemplate;
+
+/**
+ * Gives benchmarks access to a Redis server, started in process unless {@code -Dredis.embedded=false} is passed, in
+ * which case the server listening on {@code redis.host} and {@code redis.port} is used instead.
+ * <p>
+ * Benchmarks against the embedded server measure the cost of the client side and of the commands issued, on the
+ * loopback interface. Latencies of a remote server come on top of that.
+ * <p>
+ * Only the embedded server is flushed, before and after use. Data of an existing server is left alone, benchmarks
+ * resetting the counters they write to.
+ */
+final class EmbeddedRedis {
+
+	private final RedisServer server;
+
+	private final JedisConnectionFactory connectionFactory;
+
+	private final RetryOperations retryOperations = new RetryTemplate();
+
+	EmbeddedRedis() throws IOException {
+		String host = System.getProperty("redis.host", "localhost");
+		int port = Integer.getInteger("redis.port", 6399);
+		if (Boolean.parseBoolean(System.getProperty("redis.embedded", "true"))) {
+			server = new RedisServer(port);
+			server.start();
+		}
+		else {
+			server = null;
+		}
+		connectionFactory = new JedisConnectionFactory();
+		connectionFactory.setHostName(host);
+		connectionFactory.setPort(port);
+		connectionFactory.afterPropertiesSet();
+		flushDb();
+	}
+
+	JedisConnectionFactory getConnectionFactory() {
+		return connectionFactory;
+	}
+
+	RetryOperations getRetryOperations() {
+		return retryOperations;
+	}
+
+	void stop() {
+		flushDb();
+		connectionFactory.destroy();
+		if (server != null) {
+			server.stop();
+		}
+	}
+
+	private void flushDb() {
+		if (server == null) {
+			return;
+		}
+		RedisConnection connection = connectionFactory.getConnection();
+		try {
+			connection.flushDb();
+		}
+		finally {
+			connection.close();
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.stream.module.metrics.FieldValueCounterRepository;
+
+/**
+ * Measures {@link FieldValueCounterRepository#increment(String, String, double)} by one and several threads, which
+ * cycle through {@code cardinality} field values of a single counter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldValueCounterIncrementBenchmark {
+
+	private static final String NAME = "benchmark";
+
+	@Param({Repositories.MEMORY, Repositories.REDIS, Repositories.BUFFERED})
+	private String store;
+
+	@Param({"10", "10000"})
+	private int cardinality;
+
+	private final Repositories repositories = new Repositories();
+
+	private FieldValueCounterRepository repository;
+
+	private String[] values;
+
+	@Setup
+	public void setUp() throws Exception {
+		repository = repositories.fieldValueCounterRepository(store);
+		values = new String[cardinality];
+		for (int i = 0; i < cardinality; i++) {
+			values[i] = "value-" + i;
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		repository.reset(NAME);
+		repositories.close();
+	}
+
+	@Benchmark
+	public void increment(Cursor cursor) {
+		repository.increment(NAME, cursor.next(values), 1.0);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void incrementContended(Cursor cursor) {
+		repository.increment(NAME, cursor.next(values), 1.0);
+	}
+
+	/**
+	 * The position of a thread in the field values.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private int index;
+
+		String next(String[] values) {
+			index = (index + 1) % values.length;
+			return values[index];
+		}
+	}
+
+}
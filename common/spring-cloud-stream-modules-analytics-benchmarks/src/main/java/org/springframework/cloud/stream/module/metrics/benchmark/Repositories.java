@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.stream.module.metrics.AggregateCounterRepository;
+import org.springframework.cloud.stream.module.metrics.FieldValueCounterRepository;
+import org.springframework.cloud.stream.module.metrics.buffer.BufferedAggregateCounterRepository;
+import org.springframework.cloud.stream.module.metrics.buffer.BufferedFieldValueCounterRepository;
+import org.springframework.cloud.stream.module.metrics.memory.InMemoryAggregateCounterRepository;
+import org.springframework.cloud.stream.module.metrics.memory.InMemoryFieldValueCounterRepository;
+import org.springframework.cloud.stream.module.metrics.redis.PackedRedisAggregateCounterRepository;
+import org.springframework.cloud.stream.module.metrics.redis.RedisAggregateCounterRepository;
+import org.springframework.cloud.stream.module.metrics.redis.RedisFieldValueCounterRepository;
+
+/**
+ * Creates the repositories benchmarked, by store name, and releases them once done.
+ */
+final class Repositories {
+
+	static final String MEMORY = "memory";
+
+	static final String REDIS = "redis";
+
+	/**
+	 * Aggregate counters in the packed Redis encoding.
+	 */
+	static final String PACKED = "packed";
+
+	/**
+	 * Redis repositories behind a write buffer.
+	 */
+	static final String BUFFERED = "buffered";
+
+	private static final long FLUSH_INTERVAL_MS = 1000L;
+
+	private static final int FLUSH_THRESHOLD = 10000;
+
+	private static final int MAX_BUFFER_SIZE = 10000;
+
+	private final List<DisposableBean> disposables = new ArrayList<>();
+
+	private EmbeddedRedis redis;
+
+	AggregateCounterRepository aggregateCounterRepository(String store) throws IOException {
+		switch (store) {
+			case MEMORY:
+				return register(new InMemoryAggregateCounterRepository());
+			case REDIS:
+				return new RedisAggregateCounterRepository(redis().getConnectionFactory(),
+						redis().getRetryOperations());
+			case PACKED:
+				return new PackedRedisAggregateCounterRepository(redis().getConnectionFactory(),
+						redis().getRetryOperations());
+			case BUFFERED:
+				return register(new BufferedAggregateCounterRepository(
+						aggregateCounterRepository(REDIS), FLUSH_INTERVAL_MS, FLUSH_THRESHOLD, MAX_BUFFER_SIZE));
+			default:
+				throw new IllegalArgumentException("Unknown store: " + store);
+		}
+	}
+
+	FieldValueCounterRepository fieldValueCounterRepository(String store) throws IOException {
+		switch (store) {
+			case MEMORY:
+				return new InMemoryFieldValueCounterRepository();
+			case REDIS:
+				return new RedisFieldValueCounterRepository(redis().getConnectionFactory(),
+						redis().getRetryOperations());
+			case BUFFERED:
+				return register(new BufferedFieldValueCounterRepository(
+						fieldValueCounterRepository(REDIS), FLUSH_INTERVAL_MS, FLUSH_THRESHOLD, MAX_BUFFER_SIZE));
+			default:
+				throw new IllegalArgumentException("Unknown store: " + store);
+		}
+	}
+
+	void close() throws Exception {
+		for (DisposableBean disposable : disposables) {
+			disposable.destroy();
+		}
+		disposables.clear();
+		if (redis != null) {
+			redis.stop();
+			redis = null;
+		}
+	}
+
+	private EmbeddedRedis redis() throws IOException {
+		if (redis == null) {
+			redis = new EmbeddedRedis();
+		}
+		return redis;
+	}
+
+	private <T extends DisposableBean> T register(T disposable) {
+		disposables.add(disposable);
+		return disposable;
+	}
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import java.util.List;
+
+/**
+ * Implemented by {@link AggregateCounterWriter}s able to apply several increments at once more cheaply than one by
+ * one, such as by pipelining them.
+ */
+public interface AggregateCounterBatchWriter {
+
+	/**
+	 * Apply the given increments, which may be of different counters.
+	 *
+	 * @return the new total of the counter of each increment, in the order of the increments
+	 */
+	long[] increment(List<AggregateCounterIncrement> increments);
+}
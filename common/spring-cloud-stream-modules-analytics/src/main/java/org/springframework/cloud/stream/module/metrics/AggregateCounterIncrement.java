@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import org.joda.time.DateTime;
+
+import org.springframework.util.Assert;
+
+/**
+ * An increment of an aggregate counter, as written in batches by an {@link AggregateCounterBatchWriter}.
+ */
+public final class AggregateCounterIncrement {
+
+	private final String name;
+
+	private final long amount;
+
+	private final DateTime dateTime;
+
+	public AggregateCounterIncrement(String name, long amount, DateTime dateTime) {
+		Assert.notNull(name, "name cannot be null");
+		Assert.notNull(dateTime, "dateTime cannot be null");
+		this.name = name;
+		this.amount = amount;
+		this.dateTime = dateTime;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getAmount() {
+		return amount;
+	}
+
+	public DateTime getDateTime() {
+		return dateTime;
+	}
+
+	@Override
+	public String toString() {
+		return name + "+" + amount + "@" + dateTime;
+	}
+
+}
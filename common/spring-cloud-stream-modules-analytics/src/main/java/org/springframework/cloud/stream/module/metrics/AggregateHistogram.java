@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import java.util.Arrays;
+
+import org.joda.time.Interval;
+
+/**
+ * Represents the data returned from an aggregate histogram query: the distribution of the values recorded in each
+ * bucket of the interval.
+ */
+public class AggregateHistogram {
+
+	private final String name;
+
+	private final Interval interval;
+
+	private final HistogramBucket[] buckets;
+
+	private final AggregateCounterResolution resolution;
+
+	public AggregateHistogram(String name, Interval interval, HistogramBucket[] buckets,
+			AggregateCounterResolution resolution) {
+		this.name = name;
+		this.interval = interval;
+		this.buckets = buckets.clone();
+		this.resolution = resolution;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Interval getInterval() {
+		return interval;
+	}
+
+	public HistogramBucket[] getBuckets() {
+		return buckets;
+	}
+
+	public AggregateCounterResolution getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * @return the number of values recorded in each bucket.
+	 */
+	public long[] getCounts() {
+		long[] counts = new long[buckets.length];
+		for (int i = 0; i < buckets.length; i++) {
+			counts[i] = buckets[i].getCount();
+		}
+		return counts;
+	}
+
+	/**
+	 * @return the estimated value at the given percentile in each bucket, 0 for buckets without values.
+	 */
+	public long[] getValuesAtPercentile(double percentile) {
+		long[] values = new long[buckets.length];
+		for (int i = 0; i < buckets.length; i++) {
+			values[i] = buckets[i].getValueAtPercentile(percentile);
+		}
+		return values;
+	}
+
+	/**
+	 * @return the distribution of all the values recorded in the interval.
+	 */
+	public HistogramBucket getTotal() {
+		HistogramBucket total = new HistogramBucket();
+		for (HistogramBucket bucket : buckets) {
+			total.merge(bucket);
+		}
+		return total;
+	}
+
+	@Override
+	public String toString() {
+		return "AggregateHistogram{" +
+				"name='" + name +
+				"', interval=" + interval +
+				", buckets=" + Arrays.toString(buckets) +
+				", resolution=" + resolution +
+				'}';
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import org.springframework.util.Assert;
+
+/**
+ * A Count-Min Sketch, estimating the count of any value in a fixed amount of memory.
+ * <p>
+ * Estimates never undercount. With a {@code width} of w and a {@code depth} of d, they overcount by more than
+ * e/w times the total of all counts with a probability of at most e<sup>-d</sup>.
+ * <p>
+ * This class is not thread safe.
+ *
+ * For internal use only.
+ */
+public final class CountMinSketch {
+
+	private final int width;
+
+	private final int depth;
+
+	private final double[][] counts;
+
+	public CountMinSketch(int width, int depth) {
+		Assert.isTrue(width > 0, "width must be positive");
+		Assert.isTrue(depth > 0, "depth must be positive");
+		this.width = width;
+		this.depth = depth;
+		this.counts = new double[depth][width];
+	}
+
+	/**
+	 * Add the given amount to the count of a value, returning the new estimate for that value.
+	 */
+	public double add(String value, double amount) {
+		Assert.isTrue(amount >= 0, "Count-Min Sketches only support positive increments");
+		int[] cells = cells(value, width, depth);
+		double estimate = Double.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			double count = counts[row][cells[row]] += amount;
+			estimate = Math.min(estimate, count);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Return the estimated count of the given value.
+	 */
+	public double estimate(String value) {
+		int[] cells = cells(value, width, depth);
+		double estimate = Double.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			estimate = Math.min(estimate, counts[row][cells[row]]);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Return, for each row of a sketch of the given dimensions, the column that counts the given value.
+	 */
+	public static int[] cells(String value, int width, int depth) {
+		// 64 bit FNV-1a, split in two independent hashes combined as per Kirsch and Mitzenmacher
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash = mix(hash);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		int[] cells = new int[depth];
+		for (int row = 0; row < depth; row++) {
+			cells[row] = ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+		}
+		return cells;
+	}
+
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+}
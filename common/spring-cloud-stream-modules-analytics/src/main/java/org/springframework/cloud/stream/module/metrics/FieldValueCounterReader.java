@@ -30,6 +30,13 @@ public interface FieldValueCounterReader {
 	 */
 	FieldValueCounter findOne(String name);
 
+	/**
+	 * Retrieve the {@code k} field values of a counter that have the highest counts, without loading the others.
+	 *
+	 * @return a counter whose values are ordered by decreasing count, or {@code null} if there is no such counter
+	 */
+	FieldValueCounter findTopK(String name, int k);
+
 	/**
 	 * List the names of all available counters.
 	 */
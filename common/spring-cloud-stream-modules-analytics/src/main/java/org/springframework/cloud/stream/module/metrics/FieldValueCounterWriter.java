@@ -15,6 +15,8 @@
  */
 package org.springframework.cloud.stream.module.metrics;
 
+import java.util.Map;
+
 /**
  * Contains operations to modify and reset FieldValueCounter instances.
  * 
@@ -35,6 +37,15 @@ public interface FieldValueCounterWriter {
 	 */
 	void increment(String name, String fieldName, double score);
 
+	/**
+	 * Increment the FieldValueCounter for several field names at once, creating missing counters.
+	 *
+	 * @param name the FieldValueCounter name
+	 * @param scores the incremental value of each field name
+	 * @throws IllegalArgumentException in case the given name is null
+	 */
+	void increment(String name, Map<String, Double> scores);
+
 	/**
 	 * Decrement the FieldValueCounter for a given field name by score, creating missing counters.
 	 * 
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.springframework.util.Assert;
+
+/**
+ * The distribution of the values recorded within a time bucket: their number, sum, minimum and maximum, along with
+ * counts per log-linear bin from which percentiles are estimated.
+ * <p>
+ * Values are binned the same way whatever the bucket or the store, so that buckets can be merged by adding up the
+ * counts of their bins. Values below {@value #SUB_BINS} get a bin of their own, while larger values share bins
+ * spanning a {@code 1/}{@value #SUB_BINS} fraction of their power of two, which bounds the relative error of
+ * percentiles to about 6%. Negative values are recorded as 0.
+ */
+public class HistogramBucket {
+
+	/**
+	 * The number of bins each power of two is split into.
+	 */
+	public static final int SUB_BINS = 16;
+
+	private static final int SUB_BIN_BITS = 4;
+
+	private long count;
+
+	private long sum;
+
+	private long min = Long.MAX_VALUE;
+
+	private long max = Long.MIN_VALUE;
+
+	private final SortedMap<Integer, Long> bins = new TreeMap<Integer, Long>();
+
+	public HistogramBucket() {
+	}
+
+	/**
+	 * Create a bucket out of its stored state.
+	 */
+	public HistogramBucket(long count, long sum, long min, long max, Map<Integer, Long> bins) {
+		this.count = count;
+		this.sum = sum;
+		this.min = count > 0 ? min : Long.MAX_VALUE;
+		this.max = count > 0 ? max : Long.MIN_VALUE;
+		this.bins.putAll(bins);
+	}
+
+	/**
+	 * Return the bin the given value falls into.
+	 */
+	public static int binOf(long value) {
+		if (value < SUB_BINS) {
+			return value < 0 ? 0 : (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BIN_BITS;
+		int mantissa = (int) (value >>> shift) - SUB_BINS;
+		return SUB_BINS + shift * SUB_BINS + mantissa;
+	}
+
+	/**
+	 * Return the highest value falling into the given bin.
+	 */
+	public static long highestValueOf(int bin) {
+		if (bin < SUB_BINS) {
+			return bin;
+		}
+		int shift = (bin - SUB_BINS) / SUB_BINS;
+		int mantissa = (bin - SUB_BINS) % SUB_BINS;
+		long next = (long) (SUB_BINS + mantissa + 1) << shift;
+		// The bin of Long.MAX_VALUE ends past the range of longs
+		return next <= 0 ? Long.MAX_VALUE : next - 1;
+	}
+
+	public void record(long value) {
+		long recorded = Math.max(value, 0L);
+		count++;
+		sum += recorded;
+		min = Math.min(min, recorded);
+		max = Math.max(max, recorded);
+		int bin = binOf(recorded);
+		Long binCount = bins.get(bin);
+		bins.put(bin, binCount == null ? 1L : binCount + 1);
+	}
+
+	/**
+	 * Add the values recorded by the given bucket to this one.
+	 */
+	public void merge(HistogramBucket other) {
+		Assert.notNull(other, "other cannot be null");
+		count += other.count;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		for (Map.Entry<Integer, Long> bin : other.bins.entrySet()) {
+			Long binCount = bins.get(bin.getKey());
+			bins.put(bin.getKey(), binCount == null ? bin.getValue() : binCount + bin.getValue());
+		}
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getSum() {
+		return sum;
+	}
+
+	/**
+	 * Return the smallest value recorded, 0 if none was.
+	 */
+	public long getMin() {
+		return count > 0 ? min : 0L;
+	}
+
+	/**
+	 * Return the largest value recorded, 0 if none was.
+	 */
+	public long getMax() {
+		return count > 0 ? max : 0L;
+	}
+
+	/**
+	 * Return the mean of the values recorded, 0 if none was.
+	 */
+	public double getMean() {
+		return count > 0 ? (double) sum / count : 0.0;
+	}
+
+	/**
+	 * Return the number of values recorded per bin, by increasing bin.
+	 */
+	public SortedMap<Integer, Long> getBins() {
+		return Collections.unmodifiableSortedMap(bins);
+	}
+
+	/**
+	 * Estimate the value below which the given percentage of the recorded values fall, as the highest value of the
+	 * bin holding that rank, or 0 if no value was recorded.
+	 *
+	 * @param percentile the percentage, between 0 and 100
+	 */
+	public long getValueAtPercentile(double percentile) {
+		Assert.isTrue(percentile >= 0.0 && percentile <= 100.0, "percentile must be between 0 and 100");
+		if (count == 0) {
+			return 0L;
+		}
+		long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * count));
+		long seen = 0L;
+		for (Map.Entry<Integer, Long> bin : bins.entrySet()) {
+			seen += bin.getValue();
+			if (seen >= rank) {
+				return Math.max(min, Math.min(max, highestValueOf(bin.getKey())));
+			}
+		}
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return "HistogramBucket{count=" + count + ", sum=" + sum + ", min=" + getMin() + ", max=" + getMax() + '}';
+	}
+
+}
@@ -16,7 +16,13 @@
 
 package org.springframework.cloud.stream.module.metrics;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 
 /**
  * Utility class, primarily to avoid exposing mutable objects beyond the core package.
@@ -28,6 +34,14 @@ import java.util.List;
  */
 public final class MetricUtils {
 
+	private static final Comparator<Map.Entry<String, Double>> BY_VALUE = new Comparator<Map.Entry<String, Double>>() {
+
+		@Override
+		public int compare(Map.Entry<String, Double> o1, Map.Entry<String, Double> o2) {
+			return Double.compare(o1.getValue(), o2.getValue());
+		}
+	};
+
 	/**
 	 * Concatenate {@code size} many values from the passed in arrays, starting at offset {@code start}.
 	 */
@@ -63,6 +77,31 @@ public final class MetricUtils {
 		return result;
 	}
 
+	/**
+	 * Return the {@code k} entries of the given map that have the highest values, ordered by decreasing value. Only
+	 * {@code k} entries are retained while scanning the map.
+	 */
+	public static Map<String, Double> topK(Map<String, Double> counts, int k) {
+		PriorityQueue<Map.Entry<String, Double>> heap = new PriorityQueue<Map.Entry<String, Double>>(Math.max(1, k),
+				BY_VALUE);
+		for (Map.Entry<String, Double> entry : counts.entrySet()) {
+			if (heap.size() < k) {
+				heap.add(entry);
+			}
+			else if (k > 0 && BY_VALUE.compare(entry, heap.peek()) > 0) {
+				heap.poll();
+				heap.add(entry);
+			}
+		}
+		List<Map.Entry<String, Double>> sorted = new ArrayList<Map.Entry<String, Double>>(heap);
+		Collections.sort(sorted, Collections.reverseOrder(BY_VALUE));
+		Map<String, Double> result = new LinkedHashMap<String, Double>(sorted.size() * 2);
+		for (Map.Entry<String, Double> entry : sorted) {
+			result.put(entry.getKey(), entry.getValue());
+		}
+		return result;
+	}
+
 	public static long sum(long[] array) {
 		if (array == null) {
 			return 0L;
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import org.joda.time.Chronology;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.chrono.ISOChronology;
+
+/**
+ * The calendar minute an instant falls in, as seen from a given time zone, along with the fields and textual values
+ * aggregate counters use to locate the buckets of the instant.
+ * <p>
+ * Instances are immutable, and are valid for all the instants between {@link #getStart()} (inclusive) and
+ * {@link #getEnd()} (exclusive), which makes them suitable for caching.
+ *
+ * @see TimeBucketCalculator
+ */
+public final class TimeBucket {
+
+	private static final Chronology UTC = ISOChronology.getInstanceUTC();
+
+	private static final String[] TWO_DIGITS = new String[60];
+
+	static {
+		for (int i = 0; i < TWO_DIGITS.length; i++) {
+			TWO_DIGITS[i] = i < 10 ? "0" + i : Integer.toString(i);
+		}
+	}
+
+	private final long start;
+
+	private final long end;
+
+	private final int year;
+
+	private final int monthOfYear;
+
+	private final int dayOfMonth;
+
+	private final int dayOfYear;
+
+	private final int hourOfDay;
+
+	private final int minuteOfHour;
+
+	private final String yearText;
+
+	private TimeBucket(long start, long end, long local, String previousYearText, int previousYear) {
+		this.start = start;
+		this.end = end;
+		this.year = UTC.year().get(local);
+		this.monthOfYear = UTC.monthOfYear().get(local);
+		this.dayOfMonth = UTC.dayOfMonth().get(local);
+		this.dayOfYear = UTC.dayOfYear().get(local);
+		this.hourOfDay = UTC.hourOfDay().get(local);
+		this.minuteOfHour = UTC.minuteOfHour().get(local);
+		this.yearText = previousYearText != null && previousYear == year ? previousYearText : yearText(year);
+	}
+
+	/**
+	 * Compute the bucket of the given instant, expressed in epoch millis, in the given time zone.
+	 */
+	public static TimeBucket of(long timestamp, DateTimeZone zone) {
+		return of(timestamp, zone, null);
+	}
+
+	/**
+	 * Compute the bucket of the given instant, reusing what can be from the given bucket of the same zone.
+	 */
+	static TimeBucket of(long timestamp, DateTimeZone zone, TimeBucket previous) {
+		long local = timestamp + zone.getOffset(timestamp);
+		long start = timestamp - mod(local, DateTimeConstants.MILLIS_PER_MINUTE);
+		long end = start + DateTimeConstants.MILLIS_PER_MINUTE;
+		// Do not let the bucket span an offset transition, for zones with offsets that are not whole minutes.
+		// Note that Joda returns the last instant before the previous transition, or the given instant if none
+		long previousTransition = zone.previousTransition(timestamp + 1) + 1;
+		if (previousTransition <= timestamp && previousTransition > start) {
+			start = previousTransition;
+		}
+		long nextTransition = zone.nextTransition(timestamp);
+		if (nextTransition > timestamp && nextTransition < end) {
+			end = nextTransition;
+		}
+		return new TimeBucket(start, end, local, previous != null ? previous.yearText : null,
+				previous != null ? previous.year : 0);
+	}
+
+	/**
+	 * Return whether the given instant, expressed in epoch millis, falls in this bucket.
+	 */
+	public boolean contains(long timestamp) {
+		return timestamp >= start && timestamp < end;
+	}
+
+	/**
+	 * Return the first instant of this bucket, in epoch millis.
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * Return the first instant past this bucket, in epoch millis.
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	public int getYear() {
+		return year;
+	}
+
+	public int getMonthOfYear() {
+		return monthOfYear;
+	}
+
+	public int getDayOfMonth() {
+		return dayOfMonth;
+	}
+
+	public int getDayOfYear() {
+		return dayOfYear;
+	}
+
+	public int getHourOfDay() {
+		return hourOfDay;
+	}
+
+	public int getMinuteOfHour() {
+		return minuteOfHour;
+	}
+
+	public int getMinuteOfDay() {
+		return hourOfDay * 60 + minuteOfHour;
+	}
+
+	/**
+	 * Return the year, as formatted by the {@code yyyy} pattern.
+	 */
+	public String getYearText() {
+		return yearText;
+	}
+
+	/**
+	 * Return the month of the year, as formatted by the {@code MM} pattern.
+	 */
+	public String getMonthText() {
+		return TWO_DIGITS[monthOfYear];
+	}
+
+	/**
+	 * Return the day of the month, as formatted by the {@code dd} pattern.
+	 */
+	public String getDayText() {
+		return TWO_DIGITS[dayOfMonth];
+	}
+
+	/**
+	 * Return the hour of the day, as formatted by the {@code HH} pattern.
+	 */
+	public String getHourText() {
+		return TWO_DIGITS[hourOfDay];
+	}
+
+	/**
+	 * Return the minute of the hour, as formatted by the {@code mm} pattern.
+	 */
+	public String getMinuteText() {
+		return TWO_DIGITS[minuteOfHour];
+	}
+
+	private static String yearText(int year) {
+		String text = Integer.toString(Math.abs(year));
+		while (text.length() < 4) {
+			text = "0" + text;
+		}
+		return year < 0 ? "-" + text : text;
+	}
+
+	private static long mod(long value, long divisor) {
+		long result = value % divisor;
+		return result < 0 ? result + divisor : result;
+	}
+
+	@Override
+	public String toString() {
+		return yearText + getMonthText() + getDayText() + getHourText() + getMinuteText();
+	}
+
+	/**
+	 * Return the fields of this bucket down to the given resolution, as formatted by the matching prefix of the
+	 * {@code yyyyMMddHHmm} pattern.
+	 */
+	public String toString(AggregateCounterResolution resolution) {
+		switch (resolution) {
+			case year:
+				return yearText;
+			case month:
+				return yearText + getMonthText();
+			case day:
+				return yearText + getMonthText() + getDayText();
+			case hour:
+				return yearText + getMonthText() + getDayText() + getHourText();
+			default:
+				return toString();
+		}
+	}
+
+}
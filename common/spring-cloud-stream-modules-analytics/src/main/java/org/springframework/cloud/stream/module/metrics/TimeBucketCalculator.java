@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.ReadableInstant;
+
+import org.springframework.util.Assert;
+
+/**
+ * Computes the {@link TimeBucket}s of instants in a fixed time zone, caching the last one.
+ * <p>
+ * Counters mostly see instants close to each other, typically the current time, so that consecutive instants
+ * usually fall in the same minute: the cached bucket is then returned as is, without computing calendar fields nor
+ * allocating anything. This class is thread safe.
+ */
+public class TimeBucketCalculator {
+
+	private final DateTimeZone zone;
+
+	private volatile TimeBucket last;
+
+	/**
+	 * Create a calculator for the default time zone.
+	 */
+	public TimeBucketCalculator() {
+		this(DateTimeZone.getDefault());
+	}
+
+	public TimeBucketCalculator(DateTimeZone zone) {
+		Assert.notNull(zone, "zone cannot be null");
+		this.zone = zone;
+	}
+
+	public DateTimeZone getZone() {
+		return zone;
+	}
+
+	/**
+	 * Return the bucket of the given instant, expressed in epoch millis, in the zone of this calculator.
+	 */
+	public TimeBucket bucketOf(long timestamp) {
+		TimeBucket bucket = last;
+		if (bucket != null && bucket.contains(timestamp)) {
+			return bucket;
+		}
+		bucket = TimeBucket.of(timestamp, zone, bucket);
+		last = bucket;
+		return bucket;
+	}
+
+	/**
+	 * Return the bucket of the given instant in its own zone, which is only cached if it is the zone of this
+	 * calculator.
+	 */
+	public TimeBucket bucketOf(ReadableInstant instant) {
+		DateTimeZone instantZone = instant.getZone();
+		if (instantZone == zone || instantZone.equals(zone)) {
+			return bucketOf(instant.getMillis());
+		}
+		return TimeBucket.of(instant.getMillis(), instantZone);
+	}
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.buffer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.stream.module.metrics.AggregateCounter;
+import org.springframework.cloud.stream.module.metrics.AggregateCounterBatchWriter;
+import org.springframework.cloud.stream.module.metrics.AggregateCounterIncrement;
+import org.springframework.cloud.stream.module.metrics.AggregateCounterRepository;
+import org.springframework.cloud.stream.module.metrics.AggregateCounterResolution;
+import org.springframework.util.Assert;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+/**
+ * An {@link AggregateCounterRepository} that hands increments over to writer threads, which group the increments
+ * submitted concurrently into as few writes to a backing repository as possible.
+ * <p>
+ * Increments of the same counter within the same minute that are queued together are summed and written once, all
+ * of them completing with the total returned by that write. {@link #incrementAsync(String, long, DateTime)} returns
+ * as soon as the increment is queued, while {@link #increment(String, long, DateTime)} waits for it to be written,
+ * failing with the error of the backing repository if any. Up to {@code maxInFlight} increments are queued: past
+ * that, callers wait for the writers to catch up. Callers give up after {@code timeoutMs}, whether waiting to queue
+ * an increment or for it to be written. Reads are delegated to the backing repository.
+ * <p>
+ * If the backing repository is an {@link AggregateCounterBatchWriter}, the sums of a batch are written with a single
+ * call, and all the increments of the batch fail if that call fails.
+ */
+public class AsyncAggregateCounterRepository extends GroupCommitQueue<AsyncAggregateCounterRepository.Increment>
+		implements AggregateCounterRepository {
+
+	private final AggregateCounterRepository delegate;
+
+	private final AtomicLong writeCount = new AtomicLong();
+
+	/**
+	 * Create a repository writing to the given delegate, waiting for writes for 30 seconds at most.
+	 *
+	 * @param delegate the repository increments are written to
+	 * @param writerThreads the number of threads writing to the delegate concurrently
+	 * @param maxInFlight the maximum number of increments waiting to be written
+	 */
+	public AsyncAggregateCounterRepository(AggregateCounterRepository delegate, int writerThreads, int maxInFlight) {
+		this(delegate, writerThreads, maxInFlight, DEFAULT_TIMEOUT_MS);
+	}
+
+	/**
+	 * Create a repository writing to the given delegate.
+	 *
+	 * @param delegate the repository increments are written to
+	 * @param writerThreads the number of threads writing to the delegate concurrently
+	 * @param maxInFlight the maximum number of increments waiting to be written
+	 * @param timeoutMs how long callers wait to queue a write, and then for it to be written, in milliseconds
+	 */
+	public AsyncAggregateCounterRepository(AggregateCounterRepository delegate, int writerThreads, int maxInFlight,
+			long timeoutMs) {
+		super("aggregate-counter-writer", writerThreads, maxInFlight, timeoutMs);
+		Assert.notNull(delegate, "delegate cannot be null");
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Queue the increment, returning a future completed with the new total of the counter once it is written.
+	 */
+	public ListenableFuture<Long> incrementAsync(String name, long amount, DateTime dateTime) {
+		Assert.notNull(name, "name cannot be null");
+		Increment increment = new Increment(new MinuteBucket(name, dateTime), amount);
+		enqueue(increment);
+		return increment.future;
+	}
+
+	@Override
+	public long increment(String name, long amount, DateTime dateTime) {
+		return await(incrementAsync(name, amount, dateTime));
+	}
+
+	@Override
+	public void reset(String name) {
+		delegate.reset(name);
+	}
+
+	@Override
+	public AggregateCounter getCounts(String name, int nCounts, AggregateCounterResolution resolution) {
+		return delegate.getCounts(name, nCounts, resolution);
+	}
+
+	@Override
+	public AggregateCounter getCounts(String name, Interval interval, AggregateCounterResolution resolution) {
+		return delegate.getCounts(name, interval, resolution);
+	}
+
+	@Override
+	public AggregateCounter getCounts(String name, int nCounts, DateTime end, AggregateCounterResolution resolution) {
+		return delegate.getCounts(name, nCounts, end, resolution);
+	}
+
+	/**
+	 * Write the queued increments, then destroy the backing repository if it is a {@link DisposableBean}.
+	 */
+	@Override
+	public void destroy() throws Exception {
+		try {
+			super.destroy();
+		}
+		finally {
+			if (delegate instanceof DisposableBean) {
+				((DisposableBean) delegate).destroy();
+			}
+		}
+	}
+
+	/**
+	 * Return the number of writes issued to the backing repository so far.
+	 */
+	public long getWriteCount() {
+		return writeCount.get();
+	}
+
+	@Override
+	protected void write(List<Increment> batch) {
+		Map<MinuteBucket, List<Increment>> groups = new LinkedHashMap<>();
+		for (Increment increment : batch) {
+			List<Increment> group = groups.get(increment.bucket);
+			if (group == null) {
+				group = new ArrayList<>(1);
+				groups.put(increment.bucket, group);
+			}
+			group.add(increment);
+		}
+		if (delegate instanceof AggregateCounterBatchWriter) {
+			writeBatch(groups);
+			return;
+		}
+		for (Map.Entry<MinuteBucket, List<Increment>> entry : groups.entrySet()) {
+			MinuteBucket bucket = entry.getKey();
+			long amount = 0L;
+			for (Increment increment : entry.getValue()) {
+				amount += increment.amount;
+			}
+			try {
+				long total = delegate.increment(bucket.name, amount, bucket.toDateTime());
+				writeCount.incrementAndGet();
+				for (Increment increment : entry.getValue()) {
+					increment.future.set(total);
+				}
+			}
+			catch (RuntimeException e) {
+				for (Increment increment : entry.getValue()) {
+					increment.future.setException(e);
+				}
+			}
+		}
+	}
+
+	private void writeBatch(Map<MinuteBucket, List<Increment>> groups) {
+		List<AggregateCounterIncrement> sums = new ArrayList<>(groups.size());
+		for (Map.Entry<MinuteBucket, List<Increment>> entry : groups.entrySet()) {
+			long amount = 0L;
+			for (Increment increment : entry.getValue()) {
+				amount += increment.amount;
+			}
+			sums.add(new AggregateCounterIncrement(entry.getKey().name, amount, entry.getKey().toDateTime()));
+		}
+		long[] totals;
+		try {
+			totals = ((AggregateCounterBatchWriter) delegate).increment(sums);
+			writeCount.addAndGet(sums.size());
+		}
+		catch (RuntimeException e) {
+			for (List<Increment> group : groups.values()) {
+				for (Increment increment : group) {
+					increment.future.setException(e);
+				}
+			}
+			return;
+		}
+		int i = 0;
+		for (List<Increment> group : groups.values()) {
+			for (Increment increment : group) {
+				increment.future.set(totals[i]);
+			}
+			i++;
+		}
+	}
+
+	/**
+	 * An increment waiting to be written.
+	 */
+	static final class Increment {
+
+		private final MinuteBucket bucket;
+
+		private final long amount;
+
+		private final SettableListenableFuture<Long> future = new SettableListenableFuture<>();
+
+		private Increment(MinuteBucket bucket, long amount) {
+			this.bucket = bucket;
+			this.amount = amount;
+		}
+	}
+
+}
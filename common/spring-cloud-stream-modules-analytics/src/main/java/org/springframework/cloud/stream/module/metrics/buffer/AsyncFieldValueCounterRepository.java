@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.buffer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.cloud.stream.module.metrics.FieldValueCounter;
+import org.springframework.cloud.stream.module.metrics.FieldValueCounterRepository;
+import org.springframework.util.Assert;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+/**
+ * A {@link FieldValueCounterRepository} that hands increments over to writer threads, which group the increments
+ * submitted concurrently into as few writes to a backing repository as possible.
+ * <p>
+ * The increments of the same counter that are queued together are summed per field value and written with a single
+ * call to {@link FieldValueCounterRepository#increment(String, Map)}. {@link #incrementAsync(String, Map)} returns
+ * as soon as the increments are queued, while the other write operations wait for them to be written, failing with
+ * the error of the backing repository if any. Up to {@code maxInFlight} writes are queued: past that, callers wait
+ * for the writers to catch up. Callers give up after {@code timeoutMs}, whether waiting to queue a write or for it to
+ * be written. Reads are delegated to the backing repository.
+ */
+public class AsyncFieldValueCounterRepository extends GroupCommitQueue<AsyncFieldValueCounterRepository.Increment>
+		implements FieldValueCounterRepository {
+
+	private final FieldValueCounterRepository delegate;
+
+	private final AtomicLong writeCount = new AtomicLong();
+
+	/**
+	 * Create a repository writing to the given delegate, waiting for writes for 30 seconds at most.
+	 *
+	 * @param delegate the repository increments are written to
+	 * @param writerThreads the number of threads writing to the delegate concurrently
+	 * @param maxInFlight the maximum number of writes waiting to be written
+	 */
+	public AsyncFieldValueCounterRepository(FieldValueCounterRepository delegate, int writerThreads, int maxInFlight) {
+		this(delegate, writerThreads, maxInFlight, DEFAULT_TIMEOUT_MS);
+	}
+
+	/**
+	 * Create a repository writing to the given delegate.
+	 *
+	 * @param delegate the repository increments are written to
+	 * @param writerThreads the number of threads writing to the delegate concurrently
+	 * @param maxInFlight the maximum number of writes waiting to be written
+	 * @param timeoutMs how long callers wait to queue a write, and then for it to be written, in milliseconds
+	 */
+	public AsyncFieldValueCounterRepository(FieldValueCounterRepository delegate, int writerThreads, int maxInFlight,
+			long timeoutMs) {
+		super("field-value-counter-writer", writerThreads, maxInFlight, timeoutMs);
+		Assert.notNull(delegate, "delegate cannot be null");
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Queue the increments, returning a future completed once they are written.
+	 */
+	public ListenableFuture<Void> incrementAsync(String name, Map<String, Double> scores) {
+		Assert.notNull(name, "name cannot be null");
+		Increment increment = new Increment(name, scores);
+		enqueue(increment);
+		return increment.future;
+	}
+
+	@Override
+	public void increment(String name, String fieldName, double score) {
+		await(incrementAsync(name, Collections.singletonMap(fieldName, score)));
+	}
+
+	@Override
+	public void increment(String name, Map<String, Double> scores) {
+		await(incrementAsync(name, scores));
+	}
+
+	@Override
+	public void decrement(String name, String fieldName, double score) {
+		await(incrementAsync(name, Collections.singletonMap(fieldName, -score)));
+	}
+
+	@Override
+	public void reset(String name) {
+		delegate.reset(name);
+	}
+
+	@Override
+	public FieldValueCounter findOne(String name) {
+		return delegate.findOne(name);
+	}
+
+	@Override
+	public FieldValueCounter findTopK(String name, int k) {
+		return delegate.findTopK(name, k);
+	}
+
+	@Override
+	public Collection<String> list() {
+		return delegate.list();
+	}
+
+	/**
+	 * Return the number of writes issued to the backing repository so far.
+	 */
+	public long getWriteCount() {
+		return writeCount.get();
+	}
+
+	@Override
+	protected void write(List<Increment> batch) {
+		Map<String, List<Increment>> groups = new LinkedHashMap<>();
+		for (Increment increment : batch) {
+			List<Increment> group = groups.get(increment.name);
+			if (group == null) {
+				group = new ArrayList<>(1);
+				groups.put(increment.name, group);
+			}
+			group.add(increment);
+		}
+		for (Map.Entry<String, List<Increment>> entry : groups.entrySet()) {
+			List<Increment> group = entry.getValue();
+			Map<String, Double> scores = group.size() == 1 ? group.get(0).scores : sum(group);
+			try {
+				delegate.increment(entry.getKey(), scores);
+				writeCount.incrementAndGet();
+				for (Increment increment : group) {
+					increment.future.set(null);
+				}
+			}
+			catch (RuntimeException e) {
+				for (Increment increment : group) {
+					increment.future.setException(e);
+				}
+			}
+		}
+	}
+
+	private static Map<String, Double> sum(List<Increment> group) {
+		Map<String, Double> scores = new HashMap<>();
+		for (Increment increment : group) {
+			for (Map.Entry<String, Double> score : increment.scores.entrySet()) {
+				Double previous = scores.get(score.getKey());
+				scores.put(score.getKey(), previous == null ? score.getValue() : previous + score.getValue());
+			}
+		}
+		return scores;
+	}
+
+	/**
+	 * Increments of a counter waiting to be written.
+	 */
+	static final class Increment {
+
+		private final String name;
+
+		private final Map<String, Double> scores;
+
+		private final SettableListenableFuture<Void> future = new SettableListenableFuture<>();
+
+		private Increment(String name, Map<String, Double> scores) {
+			this.name = name;
+			this.scores = scores;
+		}
+	}
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.stream.module.metrics.AggregateCounter;
+import org.springframework.cloud.stream.module.metrics.AggregateCounterBatchWriter;
+import org.springframework.cloud.stream.module.metrics.AggregateCounterIncrement;
+import org.springframework.cloud.stream.module.metrics.AggregateCounterRepository;
+import org.springframework.cloud.stream.module.metrics.AggregateCounterResolution;
+import org.springframework.util.Assert;
+
+/**
+ * An {@link AggregateCounterRepository} that coalesces increments in memory and writes them behind to a backing
+ * repository.
+ * <p>
+ * Pending deltas are keyed by counter name and minute. As the backing stores update every resolution of a counter
+ * from a single instant, writing the sum of a minute as one increment dated at the start of that minute yields the
+ * exact same data, while the number of writes now depends on the number of distinct buckets rather than on the number
+ * of messages.
+ * <p>
+ * Deltas are flushed, capped and retried as described in {@link WriteBehindBuffer}, {@code maxBufferSize} bounding
+ * the number of pending buckets. Reads are delegated to the backing repository and hence do not reflect deltas that
+ * have not been written yet.
+ * <p>
+ * If the backing repository is an {@link AggregateCounterBatchWriter}, all the deltas of a flush are written with a
+ * single call.
+ */
+public class BufferedAggregateCounterRepository extends WriteBehindBuffer<MinuteBucket>
+		implements AggregateCounterRepository {
+
+	private final AggregateCounterRepository delegate;
+
+	/**
+	 * Create a repository buffering writes to the given delegate.
+	 *
+	 * @param delegate the repository to eventually write to, and to read from
+	 * @param flushIntervalMs the maximum time a delta stays in memory, in milliseconds
+	 * @param flushThreshold the number of buffered increments that triggers an early flush
+	 * @param maxBufferSize the maximum number of distinct pending buckets
+	 */
+	public BufferedAggregateCounterRepository(AggregateCounterRepository delegate, long flushIntervalMs,
+			int flushThreshold, int maxBufferSize) {
+		super("aggregate-counter", flushIntervalMs, flushThreshold, maxBufferSize);
+		Assert.notNull(delegate, "delegate cannot be null");
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Buffers the increment. As the new total is not known until the delta is written, this returns the amount
+	 * currently pending for the bucket the increment fell into.
+	 *
+	 * @throws IllegalStateException if the increment falls into a new bucket while the buffer is full and cannot be
+	 * flushed
+	 */
+	@Override
+	public long increment(String name, long amount, DateTime dateTime) {
+		return buffer(new MinuteBucket(name, dateTime), amount);
+	}
+
+	@Override
+	public void reset(String name) {
+		for (MinuteBucket bucket : getKeys()) {
+			if (bucket.name.equals(name)) {
+				discard(bucket);
+			}
+		}
+		delegate.reset(name);
+	}
+
+	@Override
+	public AggregateCounter getCounts(String name, int nCounts, AggregateCounterResolution resolution) {
+		return delegate.getCounts(name, nCounts, resolution);
+	}
+
+	@Override
+	public AggregateCounter getCounts(String name, Interval interval, AggregateCounterResolution resolution) {
+		return delegate.getCounts(name, interval, resolution);
+	}
+
+	@Override
+	public AggregateCounter getCounts(String name, int nCounts, DateTime end, AggregateCounterResolution resolution) {
+		return delegate.getCounts(name, nCounts, end, resolution);
+	}
+
+	/**
+	 * Write the pending deltas, then destroy the backing repository if it is a {@link DisposableBean}.
+	 */
+	@Override
+	public void destroy() throws Exception {
+		try {
+			super.destroy();
+		}
+		finally {
+			if (delegate instanceof DisposableBean) {
+				((DisposableBean) delegate).destroy();
+			}
+		}
+	}
+
+	/**
+	 * Return the number of distinct buckets waiting to be written.
+	 */
+	public int getBufferedBuckets() {
+		return getBufferedKeys();
+	}
+
+	@Override
+	protected long combine(long pending, long amount) {
+		return pending + amount;
+	}
+
+	/**
+	 * Write the deltas with a single call if the backing repository supports it, or one by one otherwise, stopping
+	 * at the first failure.
+	 */
+	@Override
+	protected void write(List<MinuteBucket> buckets, long[] amounts) {
+		if (delegate instanceof AggregateCounterBatchWriter) {
+			List<AggregateCounterIncrement> increments = new ArrayList<>(buckets.size());
+			for (int i = 0; i < buckets.size(); i++) {
+				increments.add(new AggregateCounterIncrement(buckets.get(i).name, amounts[i],
+						buckets.get(i).toDateTime()));
+			}
+			try {
+				((AggregateCounterBatchWriter) delegate).increment(increments);
+				recordWrites(increments.size());
+			}
+			catch (RuntimeException e) {
+				rebuffer(buckets, amounts, 0);
+				throw e;
+			}
+			return;
+		}
+		for (int i = 0; i < buckets.size(); i++) {
+			MinuteBucket bucket = buckets.get(i);
+			try {
+				delegate.increment(bucket.name, amounts[i], bucket.toDateTime());
+				recordWrites(1);
+			}
+			catch (RuntimeException e) {
+				rebuffer(buckets, amounts, i);
+				throw e;
+			}
+		}
+	}
+
+	private void rebuffer(List<MinuteBucket> buckets, long[] amounts, int from) {
+		for (int i = from; i < buckets.size(); i++) {
+			rebuffer(buckets.get(i), amounts[i]);
+		}
+	}
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.buffer;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.stream.module.metrics.FieldValueCounter;
+import org.springframework.cloud.stream.module.metrics.FieldValueCounterRepository;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link FieldValueCounterRepository} that sums increments in memory and writes them behind to a backing
+ * repository.
+ * <p>
+ * Pending scores are keyed by counter name and field value, and each flush writes all the pending scores of a counter
+ * with a single {@link #increment(String, Map)} call. The number of writes hence depends on the number of distinct
+ * field values per flush interval rather than on the number of messages.
+ * <p>
+ * Scores are flushed, capped and retried as described in {@link WriteBehindBuffer}, {@code maxBufferSize} bounding
+ * the number of pending (counter, value) pairs, so that high cardinality fields spill early. Decrements and reads go
+ * straight to the backing repository, hence reads do not reflect scores that have not been written yet.
+ */
+public class BufferedFieldValueCounterRepository extends WriteBehindBuffer<BufferedFieldValueCounterRepository.Entry>
+		implements FieldValueCounterRepository {
+
+	private final FieldValueCounterRepository delegate;
+
+	/**
+	 * Create a repository buffering writes to the given delegate.
+	 *
+	 * @param delegate the repository to eventually write to, and to read from
+	 * @param flushIntervalMs the maximum time a score stays in memory, in milliseconds
+	 * @param flushThreshold the number of buffered increments that triggers an early flush
+	 * @param maxBufferSize the maximum number of distinct pending (counter, value) pairs
+	 */
+	public BufferedFieldValueCounterRepository(FieldValueCounterRepository delegate, long flushIntervalMs,
+			int flushThreshold, int maxBufferSize) {
+		super("field-value-counter", flushIntervalMs, flushThreshold, maxBufferSize);
+		Assert.notNull(delegate, "delegate cannot be null");
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Buffers the increment.
+	 *
+	 * @throws IllegalStateException if the increment adds a field value while the buffer is full and cannot be
+	 * flushed
+	 */
+	@Override
+	public void increment(String name, String fieldName, double score) {
+		Assert.notNull(name, "The name of the FieldValueCounter must not be null");
+		buffer(new Entry(name, fieldName), bits(score));
+	}
+
+	@Override
+	public void increment(String name, Map<String, Double> scores) {
+		for (Map.Entry<String, Double> entry : scores.entrySet()) {
+			increment(name, entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public void decrement(String name, String fieldName, double score) {
+		delegate.decrement(name, fieldName, score);
+	}
+
+	@Override
+	public void reset(String name) {
+		for (Entry entry : getKeys()) {
+			if (entry.name.equals(name)) {
+				discard(entry);
+			}
+		}
+		delegate.reset(name);
+	}
+
+	@Override
+	public FieldValueCounter findOne(String name) {
+		return delegate.findOne(name);
+	}
+
+	@Override
+	public FieldValueCounter findTopK(String name, int k) {
+		return delegate.findTopK(name, k);
+	}
+
+	@Override
+	public Collection<String> list() {
+		return delegate.list();
+	}
+
+	/**
+	 * Write the pending scores, then destroy the backing repository if it is a {@link DisposableBean}.
+	 */
+	@Override
+	public void destroy() throws Exception {
+		try {
+			super.destroy();
+		}
+		finally {
+			if (delegate instanceof DisposableBean) {
+				((DisposableBean) delegate).destroy();
+			}
+		}
+	}
+
+	/**
+	 * Return the number of distinct (counter, value) pairs waiting to be written.
+	 */
+	public int getBufferedEntries() {
+		return getBufferedKeys();
+	}
+
+	@Override
+	protected long combine(long pending, long amount) {
+		return bits(Double.longBitsToDouble(pending) + Double.longBitsToDouble(amount));
+	}
+
+	/**
+	 * Write the scores of each counter with a single call. The scores of counters that fail to be written are kept,
+	 * while the other counters are still written.
+	 */
+	@Override
+	protected void write(List<Entry> entries, long[] amounts) {
+		Map<String, Map<String, Double>> byCounter = new HashMap<>();
+		for (int i = 0; i < entries.size(); i++) {
+			Entry entry = entries.get(i);
+			Map<String, Double> counterScores = byCounter.get(entry.name);
+			if (counterScores == null) {
+				counterScores = new HashMap<>();
+				byCounter.put(entry.name, counterScores);
+			}
+			counterScores.put(entry.value, Double.longBitsToDouble(amounts[i]));
+		}
+		RuntimeException failure = null;
+		for (Map.Entry<String, Map<String, Double>> counter : byCounter.entrySet()) {
+			try {
+				delegate.increment(counter.getKey(), counter.getValue());
+				recordWrites(1);
+			}
+			catch (RuntimeException e) {
+				for (Map.Entry<String, Double> score : counter.getValue().entrySet()) {
+					rebuffer(new Entry(counter.getKey(), score.getKey()), bits(score.getValue()));
+				}
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Return the bits of a score. Adding zero turns -0.0, whose bits are those of a retired score, into 0.0.
+	 */
+	private static long bits(double score) {
+		return Double.doubleToLongBits(score + 0.0);
+	}
+
+	/**
+	 * Identifies a field value of a counter.
+	 */
+	static final class Entry {
+
+		private final String name;
+
+		private final String value;
+
+		private Entry(String name, String value) {
+			this.name = name;
+			this.value = value;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Entry)) {
+				return false;
+			}
+			Entry other = (Entry) o;
+			return name.equals(other.name) && value.equals(other.value);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * name.hashCode() + value.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return "'" + value + "' of '" + name + "'";
+		}
+	}
+
+}
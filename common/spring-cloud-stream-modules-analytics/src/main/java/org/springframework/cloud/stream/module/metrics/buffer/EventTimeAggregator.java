@@ -0,0 +1,420 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.buffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.stream.module.metrics.AggregateCounterWriter;
+import org.springframework.util.Assert;
+
+/**
+ * Groups increments by the minute of their event time, and writes each minute once it can no longer receive events.
+ * <p>
+ * The watermark trails the latest event time seen by {@code allowedLatenessMs}. Events older than the watermark are
+ * rejected as late, and are not counted. Minutes that end before the watermark are closed: their increments are
+ * written in time order and counter by counter, so that replaying old data results in sequential writes to a few
+ * buckets at a time rather than in writes scattered over the whole history.
+ * <p>
+ * Pending minutes are also written when more than {@code maxPendingBuckets} (counter, minute) pairs are pending,
+ * oldest first, when no event has been received for {@code allowedLatenessMs} of processing time, and when the
+ * aggregator is destroyed.
+ * <p>
+ * Increments that fail to be written are put back in their minute and retried once a backoff has elapsed: a second
+ * after the first failure, doubling with each consecutive failure up to a minute. While backing off, minutes are only
+ * written by {@link #flush()}, and events are rejected with an {@link IllegalStateException} once
+ * {@code maxPendingBuckets} pairs are pending, rather than growing the buffer.
+ * <p>
+ * The watermark never moves back on its own while events keep coming. It is reset once all minutes have been written
+ * after an idle period, or by {@link #resetWatermark()}, e.g. before replaying older data after live traffic.
+ */
+public class EventTimeAggregator implements DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(EventTimeAggregator.class);
+
+	private static final long MINUTE = 60 * 1000L;
+
+	private static final long MIN_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+	private static final long MAX_BACKOFF_NANOS = TimeUnit.MINUTES.toNanos(1L);
+
+	private final AggregateCounterWriter writer;
+
+	private final long allowedLatenessMs;
+
+	private final int maxPendingBuckets;
+
+	private final ConcurrentNavigableMap<Long, Minute> minutes = new ConcurrentSkipListMap<>();
+
+	private final AtomicLong maxEventTime = new AtomicLong(Long.MIN_VALUE);
+
+	private final AtomicInteger pendingBuckets = new AtomicInteger();
+
+	private final AtomicLong lateEvents = new AtomicLong();
+
+	private final Lock closeLock = new ReentrantLock();
+
+	private final ScheduledExecutorService scheduler;
+
+	private volatile long lastEventNanos = System.nanoTime();
+
+	/**
+	 * The number of consecutive writes that failed, only updated while holding {@link #closeLock}.
+	 */
+	private volatile int failedWrites;
+
+	private volatile long backoffUntilNanos;
+
+	/**
+	 * Create an aggregator writing to the given writer.
+	 *
+	 * @param writer where the increments of closed minutes are written to
+	 * @param allowedLatenessMs how far behind the latest event time events are still counted, in milliseconds
+	 * @param maxPendingBuckets the maximum number of (counter, minute) pairs kept in memory
+	 */
+	public EventTimeAggregator(AggregateCounterWriter writer, long allowedLatenessMs, int maxPendingBuckets) {
+		Assert.notNull(writer, "writer cannot be null");
+		Assert.isTrue(allowedLatenessMs > 0, "allowedLatenessMs must be positive");
+		Assert.isTrue(maxPendingBuckets > 0, "maxPendingBuckets must be positive");
+		this.writer = writer;
+		this.allowedLatenessMs = allowedLatenessMs;
+		this.maxPendingBuckets = maxPendingBuckets;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "event-time-aggregator");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.scheduler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				if (System.nanoTime() - lastEventNanos >= TimeUnit.MILLISECONDS.toNanos(
+						EventTimeAggregator.this.allowedLatenessMs)) {
+					idle();
+				}
+			}
+		}, allowedLatenessMs, allowedLatenessMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Count the given event, unless it is late.
+	 *
+	 * @return whether the event was counted, {@code false} if it is older than the watermark
+	 * @throws IllegalStateException if the buffer is full while writes are failing
+	 */
+	public boolean increment(String name, long amount, DateTime eventTime) {
+		if (pendingBuckets.get() >= maxPendingBuckets && isBackingOff()) {
+			throw new IllegalStateException("The buffer holds " + pendingBuckets.get()
+					+ " buckets that could not be written yet, rejecting an increment of '" + name + "'");
+		}
+		long millis = eventTime.getMillis();
+		long watermark = advance(millis);
+		if (millis < watermark) {
+			lateEvents.incrementAndGet();
+			return false;
+		}
+		lastEventNanos = System.nanoTime();
+		long minute = floorMinute(millis);
+		if (!pending(minute).add(name, eventTime.getZone(), amount)) {
+			// The minute was closed in the meantime, as the watermark moved past it: write through
+			writer.increment(name, amount, new DateTime(minute * MINUTE, eventTime.getZone()));
+		}
+		Map.Entry<Long, Minute> oldest = minutes.firstEntry();
+		if (oldest != null && oldest.getKey() < floorMinute(watermark)) {
+			close(floorMinute(watermark), false, false);
+		}
+		if (pendingBuckets.get() > maxPendingBuckets) {
+			close(Long.MAX_VALUE, false, false);
+		}
+		return true;
+	}
+
+	/**
+	 * Write all pending increments, whatever the watermark, and even while backing off after a failure.
+	 */
+	public void flush() {
+		close(Long.MAX_VALUE, true, true);
+	}
+
+	/**
+	 * Write all pending increments, then forget the latest event time seen, so that events of any time are counted
+	 * again.
+	 */
+	public void resetWatermark() {
+		flush();
+		maxEventTime.set(Long.MIN_VALUE);
+	}
+
+	@Override
+	public void destroy() {
+		scheduler.shutdown();
+		flush();
+		if (pendingBuckets.get() > 0) {
+			logger.warn(pendingBuckets.get() + " buckets could not be written before shutting down");
+		}
+	}
+
+	/**
+	 * Return the instant, in epoch millis, before which events are rejected as late.
+	 */
+	public long getWatermark() {
+		long max = maxEventTime.get();
+		return max == Long.MIN_VALUE ? Long.MIN_VALUE : max - allowedLatenessMs;
+	}
+
+	/**
+	 * Return the number of (counter, minute) pairs waiting to be written.
+	 */
+	public int getPendingBuckets() {
+		return pendingBuckets.get();
+	}
+
+	/**
+	 * Return the number of events rejected as late so far.
+	 */
+	public long getLateEvents() {
+		return lateEvents.get();
+	}
+
+	/**
+	 * Return whether writes are suspended after a failure.
+	 */
+	public boolean isBackingOff() {
+		return failedWrites > 0 && System.nanoTime() - backoffUntilNanos < 0;
+	}
+
+	/**
+	 * Write the pending minutes after a period without events. Once they are all written, nothing is left for the
+	 * watermark to protect, so it is reset unless an event came in meanwhile.
+	 */
+	private void idle() {
+		long max = maxEventTime.get();
+		close(Long.MAX_VALUE, true, false);
+		if (max != Long.MIN_VALUE && minutes.isEmpty() && maxEventTime.compareAndSet(max, Long.MIN_VALUE)) {
+			logger.debug("Reset the watermark after no event was received for {}ms", allowedLatenessMs);
+		}
+	}
+
+	/**
+	 * Return the pending minute starting at the given one, creating it if needed.
+	 */
+	private Minute pending(long minute) {
+		Minute pending = minutes.get(minute);
+		if (pending == null) {
+			Minute created = new Minute(minute);
+			pending = minutes.putIfAbsent(minute, created);
+			if (pending == null) {
+				pending = created;
+			}
+		}
+		return pending;
+	}
+
+	private long advance(long eventTime) {
+		long max = maxEventTime.get();
+		while (eventTime > max) {
+			if (maxEventTime.compareAndSet(max, eventTime)) {
+				max = eventTime;
+				break;
+			}
+			max = maxEventTime.get();
+		}
+		return max - allowedLatenessMs;
+	}
+
+	/**
+	 * Write the minutes before the given one, or only the oldest ones down to the bound of pending buckets when
+	 * called with {@link Long#MAX_VALUE} without waiting. Stops at the first failure.
+	 *
+	 * @param force whether to write even while backing off after a failure
+	 */
+	private void close(long beforeMinute, boolean wait, boolean force) {
+		if (!force && isBackingOff()) {
+			return;
+		}
+		if (wait) {
+			closeLock.lock();
+		}
+		else if (!closeLock.tryLock()) {
+			return;
+		}
+		try {
+			boolean all = wait || beforeMinute != Long.MAX_VALUE;
+			for (Minute minute : minutes.headMap(beforeMinute).values()) {
+				if ((!all && pendingBuckets.get() <= maxPendingBuckets) || (!force && isBackingOff())) {
+					break;
+				}
+				minutes.remove(minute.minute, minute);
+				if (!write(minute)) {
+					break;
+				}
+			}
+		}
+		finally {
+			closeLock.unlock();
+		}
+	}
+
+	/**
+	 * Write the increments of a minute, putting those that could not be written back into a pending minute.
+	 *
+	 * @return whether all the increments were written
+	 */
+	private boolean write(Minute minute) {
+		Map<Bucket, long[]> counts = minute.close();
+		pendingBuckets.addAndGet(-counts.size());
+		List<Bucket> buckets = new ArrayList<>(counts.keySet());
+		Collections.sort(buckets);
+		for (int i = 0; i < buckets.size(); i++) {
+			Bucket bucket = buckets.get(i);
+			try {
+				writer.increment(bucket.name, counts.get(bucket)[0], new DateTime(minute.minute * MINUTE, bucket.zone));
+			}
+			catch (RuntimeException e) {
+				// The messages were acknowledged already, keep the increments for the next attempt
+				for (Bucket unwritten : buckets.subList(i, buckets.size())) {
+					rebuffer(minute.minute, unwritten, counts.get(unwritten)[0]);
+				}
+				failed(e, buckets.size() - i);
+				return false;
+			}
+		}
+		failedWrites = 0;
+		return true;
+	}
+
+	private void rebuffer(long minute, Bucket bucket, long amount) {
+		while (!pending(minute).add(bucket.name, bucket.zone, amount)) {
+			// Closed concurrently, hence already removed: a fresh minute takes its place
+		}
+	}
+
+	private void failed(RuntimeException e, int unwritten) {
+		long backoff = MIN_BACKOFF_NANOS << Math.min(failedWrites, 20);
+		backoffUntilNanos = System.nanoTime()
+				+ (backoff > 0 && backoff < MAX_BACKOFF_NANOS ? backoff : MAX_BACKOFF_NANOS);
+		if (failedWrites++ == 0) {
+			logger.error("Failed to write closed minutes, " + unwritten + " buckets are kept for the next attempt", e);
+		}
+		else {
+			logger.warn("Failed to write closed minutes " + failedWrites + " times in a row, " + unwritten
+					+ " buckets are kept for the next attempt: " + e);
+		}
+	}
+
+	private static long floorMinute(long millis) {
+		return millis >= 0 ? millis / MINUTE : (millis - MINUTE + 1) / MINUTE;
+	}
+
+	/**
+	 * The pending increments of a minute, by counter.
+	 */
+	private final class Minute {
+
+		private final long minute;
+
+		private final Map<Bucket, long[]> counts = new HashMap<>();
+
+		private boolean closed;
+
+		private Minute(long minute) {
+			this.minute = minute;
+		}
+
+		private synchronized boolean add(String name, DateTimeZone zone, long amount) {
+			if (closed) {
+				return false;
+			}
+			Bucket bucket = new Bucket(name, zone);
+			long[] count = counts.get(bucket);
+			if (count == null) {
+				count = new long[1];
+				counts.put(bucket, count);
+				pendingBuckets.incrementAndGet();
+			}
+			count[0] += amount;
+			return true;
+		}
+
+		private synchronized Map<Bucket, long[]> close() {
+			closed = true;
+			return counts;
+		}
+	}
+
+	/**
+	 * Identifies a counter in a given time zone, within a minute.
+	 */
+	private static final class Bucket implements Comparable<Bucket> {
+
+		private final String name;
+
+		private final DateTimeZone zone;
+
+		private Bucket(String name, DateTimeZone zone) {
+			this.name = name;
+			this.zone = zone;
+		}
+
+		@Override
+		public int compareTo(Bucket other) {
+			int result = name.compareTo(other.name);
+			return result != 0 ? result : zone.getID().compareTo(other.zone.getID());
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Bucket)) {
+				return false;
+			}
+			Bucket other = (Bucket) o;
+			return name.equals(other.name) && zone.equals(other.zone);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * name.hashCode() + zone.hashCode();
+		}
+	}
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.Assert;
+
+/**
+ * A bounded queue of writes, drained in batches by a fixed number of writer threads.
+ * <p>
+ * Callers block in {@link #enqueue(Object)} while {@code maxInFlight} writes are waiting, which pushes back on the
+ * producers of writes. Each writer thread takes all the writes queued up at once and hands them over to
+ * {@link #write(List)}, so that the writes submitted while a batch was being written are grouped in the next one.
+ * <p>
+ * Neither queuing a write nor waiting for it blocks for more than {@code timeoutMs}, so that callers fail rather than
+ * hang if the writer threads are stuck, e.g. on an unresponsive store.
+ *
+ * @param <T> the type of the writes
+ */
+abstract class GroupCommitQueue<T> implements DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(GroupCommitQueue.class);
+
+	private static final long POLL_INTERVAL_MS = 100L;
+
+	/**
+	 * How long callers wait for a write by default, in milliseconds.
+	 */
+	static final long DEFAULT_TIMEOUT_MS = 30000L;
+
+	private final BlockingQueue<T> queue;
+
+	private final ExecutorService writers;
+
+	private final long timeoutMs;
+
+	private volatile boolean running = true;
+
+	GroupCommitQueue(String name, int writerThreads, int maxInFlight, long timeoutMs) {
+		Assert.isTrue(writerThreads > 0, "writerThreads must be positive");
+		Assert.isTrue(maxInFlight > 0, "maxInFlight must be positive");
+		Assert.isTrue(timeoutMs > 0, "timeoutMs must be positive");
+		this.timeoutMs = timeoutMs;
+		this.queue = new ArrayBlockingQueue<>(maxInFlight);
+		final String threadPrefix = name + "-";
+		this.writers = Executors.newFixedThreadPool(writerThreads, new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, threadPrefix + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for (int i = 0; i < writerThreads; i++) {
+			this.writers.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					drain();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Write all the given writes, completing each of them.
+	 */
+	protected abstract void write(List<T> batch);
+
+	/**
+	 * Queue the given write, waiting for room if {@code maxInFlight} writes are already queued.
+	 *
+	 * @throws IllegalStateException if there is still no room after {@code timeoutMs}
+	 */
+	protected void enqueue(T write) {
+		Assert.state(running, "No more writes are accepted once destroyed");
+		try {
+			if (!queue.offer(write, timeoutMs, TimeUnit.MILLISECONDS)) {
+				throw new IllegalStateException("Timed out after " + timeoutMs + "ms waiting to queue a write, "
+						+ queue.size() + " writes are queued");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting to queue a write", e);
+		}
+	}
+
+	/**
+	 * Return the number of writes waiting for a writer thread.
+	 */
+	public int getQueuedWrites() {
+		return queue.size();
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		running = false;
+		writers.shutdown();
+		if (!writers.awaitTermination(10, TimeUnit.SECONDS)) {
+			logger.warn("Writer threads did not complete, " + queue.size() + " writes were not written");
+			return;
+		}
+		// Writes queued while the writer threads were stopping
+		List<T> batch = new ArrayList<>();
+		queue.drainTo(batch);
+		if (!batch.isEmpty()) {
+			write(batch);
+		}
+	}
+
+	private void drain() {
+		List<T> batch = new ArrayList<>();
+		while (running || !queue.isEmpty()) {
+			try {
+				T first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch);
+				write(batch);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch (RuntimeException e) {
+				// Implementations fail the writes themselves, this only keeps the writer thread alive
+				logger.error("Failed to write " + batch.size() + " queued writes", e);
+			}
+			finally {
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Wait for the given future, rethrowing the failure of the write as is.
+	 *
+	 * @throws IllegalStateException if the write did not complete within {@code timeoutMs}, in which case it may
+	 * still be written later
+	 */
+	protected <V> V await(Future<V> future) {
+		try {
+			return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException e) {
+			throw new IllegalStateException("Timed out after " + timeoutMs + "ms waiting for a write", e);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a write", e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("Failed to write", cause);
+		}
+	}
+
+}
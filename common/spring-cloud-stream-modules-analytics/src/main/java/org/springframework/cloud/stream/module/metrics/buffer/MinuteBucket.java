@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.buffer;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * Identifies a counter at minute resolution, in a given time zone.
+ */
+final class MinuteBucket {
+
+	private static final long MINUTE = 60 * 1000L;
+
+	final String name;
+
+	private final long minute;
+
+	private final DateTimeZone zone;
+
+	MinuteBucket(String name, DateTime dateTime) {
+		long millis = dateTime.getMillis();
+		this.name = name;
+		this.minute = millis >= 0 ? millis / MINUTE : (millis - MINUTE + 1) / MINUTE;
+		this.zone = dateTime.getZone();
+	}
+
+	DateTime toDateTime() {
+		return new DateTime(minute * MINUTE, zone);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof MinuteBucket)) {
+			return false;
+		}
+		MinuteBucket other = (MinuteBucket) o;
+		return minute == other.minute && name.equals(other.name) && zone.equals(other.zone);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = name.hashCode();
+		result = 31 * result + (int) (minute ^ (minute >>> 32));
+		result = 31 * result + zone.hashCode();
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "'" + name + "' at " + toDateTime();
+	}
+
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.buffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.Assert;
+
+/**
+ * Sums increments in memory by key, and writes the sums behind in batches.
+ * <p>
+ * Pending amounts are held as {@code long}s, combined with {@link #combine(long, long)}. A flush takes all the pending
+ * amounts at once and hands them over to {@link #write(List, long[])}. Amounts taken by a flush are retired, so that
+ * writers racing with it start over with a fresh amount rather than losing their increment.
+ * <p>
+ * Amounts are written every {@code flushIntervalMs}, as soon as {@code flushThreshold} increments have been buffered,
+ * and when destroyed. The number of pending keys is capped to {@code maxBufferSize}: writers that would add a key past
+ * the cap flush the buffer themselves before proceeding.
+ * <p>
+ * Amounts that fail to be written are kept for the next flush, which only happens once a backoff has elapsed: the
+ * {@code flushIntervalMs} after the first failure, doubling with each consecutive failure up to a minute. While
+ * backing off, writers do not flush, and increments that would add a key past the cap are rejected with an
+ * {@link IllegalStateException} rather than growing the buffer.
+ *
+ * @param <K> the type of the keys increments are summed by
+ */
+abstract class WriteBehindBuffer<K> implements DisposableBean {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * Marks an amount that has been taken by a flush. Writers seeing it must start over with a fresh amount.
+	 */
+	private static final long RETIRED = Long.MIN_VALUE;
+
+	private static final long MAX_BACKOFF_NANOS = TimeUnit.MINUTES.toNanos(1L);
+
+	private final int flushThreshold;
+
+	private final int maxBufferSize;
+
+	private final long flushIntervalNanos;
+
+	private final ConcurrentMap<K, AtomicLong> pending = new ConcurrentHashMap<>();
+
+	private final AtomicInteger bufferedKeys = new AtomicInteger();
+
+	private final AtomicInteger pendingIncrements = new AtomicInteger();
+
+	private final Lock flushLock = new ReentrantLock();
+
+	private final ScheduledExecutorService scheduler;
+
+	private final AtomicLong flushCount = new AtomicLong();
+
+	private final AtomicLong writeCount = new AtomicLong();
+
+	private final AtomicLong failedFlushCount = new AtomicLong();
+
+	private volatile long lastFlushNanos;
+
+	private volatile long maxFlushNanos;
+
+	/**
+	 * The number of consecutive flushes that failed, only updated while holding {@link #flushLock}.
+	 */
+	private volatile int failedFlushes;
+
+	private volatile long backoffUntilNanos;
+
+	WriteBehindBuffer(String name, long flushIntervalMs, int flushThreshold, int maxBufferSize) {
+		Assert.isTrue(flushIntervalMs > 0, "flushIntervalMs must be positive");
+		Assert.isTrue(flushThreshold > 0, "flushThreshold must be positive");
+		Assert.isTrue(maxBufferSize > 0, "maxBufferSize must be positive");
+		this.flushThreshold = flushThreshold;
+		this.maxBufferSize = maxBufferSize;
+		this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+		final String threadName = name + "-flush";
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, threadName);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.scheduler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				flush(false, false);
+			}
+		}, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Return the sum of a pending amount and an increment.
+	 */
+	protected abstract long combine(long pending, long amount);
+
+	/**
+	 * Write the given amounts, {@code amounts[i]} being the amount of {@code keys.get(i)}. Amounts that could not be
+	 * written must be handed back to {@link #rebuffer(Object, long)} before throwing the failure.
+	 */
+	protected abstract void write(List<K> keys, long[] amounts);
+
+	/**
+	 * Buffer an increment of the given key, flushing first if that would add a key past the cap.
+	 *
+	 * @return the amount now pending for the key
+	 * @throws IllegalStateException if the increment adds a key while the buffer is full and cannot be flushed
+	 */
+	protected final long buffer(K key, long amount) {
+		if (bufferedKeys.get() >= maxBufferSize && !pending.containsKey(key)) {
+			flush(true, false);
+			if (bufferedKeys.get() >= maxBufferSize) {
+				throw new IllegalStateException("The buffer holds " + bufferedKeys.get()
+						+ " entries that could not be written yet, rejecting an increment of " + key);
+			}
+		}
+		long result = rebuffer(key, amount);
+		if (pendingIncrements.incrementAndGet() >= flushThreshold) {
+			flush(false, false);
+		}
+		return result;
+	}
+
+	/**
+	 * Add an amount back to the buffer, regardless of the cap.
+	 *
+	 * @return the amount now pending for the key
+	 */
+	protected final long rebuffer(K key, long amount) {
+		while (true) {
+			AtomicLong delta = pending.get(key);
+			if (delta == null) {
+				delta = pending.putIfAbsent(key, new AtomicLong(amount));
+				if (delta == null) {
+					bufferedKeys.incrementAndGet();
+					return amount;
+				}
+			}
+			long current = delta.get();
+			while (current != RETIRED) {
+				long next = combine(current, amount);
+				if (delta.compareAndSet(current, next)) {
+					return next;
+				}
+				current = delta.get();
+			}
+		}
+	}
+
+	/**
+	 * Return a live view of the keys that have an amount pending.
+	 */
+	protected final Set<K> getKeys() {
+		return pending.keySet();
+	}
+
+	/**
+	 * Drop the amount pending for the given key, if any. Waits for a concurrent flush to complete, so that no amount
+	 * taken before the call is written after it, and retires the dropped amount like a flush does, so that writers
+	 * racing with the call start over with a fresh amount.
+	 */
+	protected final void discard(K key) {
+		flushLock.lock();
+		try {
+			AtomicLong delta = pending.remove(key);
+			if (delta != null) {
+				bufferedKeys.decrementAndGet();
+				delta.getAndSet(RETIRED);
+			}
+		}
+		finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Record that the given number of writes were issued.
+	 */
+	protected final void recordWrites(int writes) {
+		writeCount.addAndGet(writes);
+	}
+
+	/**
+	 * Return the number of distinct keys waiting to be written.
+	 */
+	protected final int getBufferedKeys() {
+		return bufferedKeys.get();
+	}
+
+	/**
+	 * Write all pending increments, waiting for a concurrent flush to complete if needed.
+	 */
+	public void flush() {
+		flush(true, true);
+	}
+
+	/**
+	 * Stop flushing periodically, then write the pending increments.
+	 */
+	@Override
+	public void destroy() throws Exception {
+		scheduler.shutdown();
+		flush(true, true);
+	}
+
+	/**
+	 * Return the number of increments buffered since the last flush.
+	 */
+	public int getPendingIncrements() {
+		return pendingIncrements.get();
+	}
+
+	/**
+	 * Return the number of flushes performed so far.
+	 */
+	public long getFlushCount() {
+		return flushCount.get();
+	}
+
+	/**
+	 * Return the number of writes issued so far.
+	 */
+	public long getWriteCount() {
+		return writeCount.get();
+	}
+
+	/**
+	 * Return the number of flushes that failed to write some increments so far.
+	 */
+	public long getFailedFlushCount() {
+		return failedFlushCount.get();
+	}
+
+	/**
+	 * Return whether flushes are suspended after a failure.
+	 */
+	public boolean isBackingOff() {
+		return failedFlushes > 0 && System.nanoTime() - backoffUntilNanos < 0;
+	}
+
+	/**
+	 * Return the duration of the last flush, in milliseconds.
+	 */
+	public double getLastFlushDuration() {
+		return lastFlushNanos / 1000000.0;
+	}
+
+	/**
+	 * Return the duration of the longest flush so far, in milliseconds.
+	 */
+	public double getMaxFlushDuration() {
+		return maxFlushNanos / 1000000.0;
+	}
+
+	/**
+	 * Write the pending amounts.
+	 *
+	 * @param wait whether to wait for a concurrent flush to complete rather than skipping this one
+	 * @param force whether to flush even while backing off after a failure
+	 */
+	private void flush(boolean wait, boolean force) {
+		if (!force && isBackingOff()) {
+			return;
+		}
+		if (wait) {
+			flushLock.lock();
+		}
+		else if (!flushLock.tryLock()) {
+			return;
+		}
+		try {
+			if (force || !isBackingOff()) {
+				doFlush();
+			}
+		}
+		finally {
+			flushLock.unlock();
+		}
+	}
+
+	private void doFlush() {
+		long start = System.nanoTime();
+		pendingIncrements.set(0);
+		List<K> keys = new ArrayList<>(bufferedKeys.get());
+		long[] amounts = new long[Math.max(16, bufferedKeys.get())];
+		for (Map.Entry<K, AtomicLong> entry : pending.entrySet()) {
+			K key = entry.getKey();
+			if (pending.remove(key, entry.getValue())) {
+				bufferedKeys.decrementAndGet();
+			}
+			long amount = entry.getValue().getAndSet(RETIRED);
+			if (amount == 0L) {
+				continue;
+			}
+			if (keys.size() == amounts.length) {
+				amounts = Arrays.copyOf(amounts, amounts.length * 2);
+			}
+			amounts[keys.size()] = amount;
+			keys.add(key);
+		}
+		RuntimeException failure = null;
+		if (!keys.isEmpty()) {
+			try {
+				write(keys, Arrays.copyOf(amounts, keys.size()));
+			}
+			catch (RuntimeException e) {
+				failure = e;
+			}
+		}
+		long end = System.nanoTime();
+		long elapsed = end - start;
+		lastFlushNanos = elapsed;
+		if (elapsed > maxFlushNanos) {
+			maxFlushNanos = elapsed;
+		}
+		flushCount.incrementAndGet();
+		if (failure == null) {
+			failedFlushes = 0;
+			return;
+		}
+		failedFlushCount.incrementAndGet();
+		long backoff = flushIntervalNanos << Math.min(failedFlushes, 20);
+		backoffUntilNanos = end + (backoff > 0 && backoff < MAX_BACKOFF_NANOS ? backoff : MAX_BACKOFF_NANOS);
+		if (failedFlushes++ == 0) {
+			logger.error("Failed to write buffered increments, " + bufferedKeys.get()
+					+ " entries are kept for the next flush", failure);
+		}
+		else {
+			logger.warn("Failed to write buffered increments " + failedFlushes + " times in a row, "
+					+ bufferedKeys.get() + " entries are kept for the next flush: " + failure);
+		}
+	}
+
+}
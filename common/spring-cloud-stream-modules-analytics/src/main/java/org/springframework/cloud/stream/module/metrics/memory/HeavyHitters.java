@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.memory;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Tracks the values with the highest (estimated) counts, up to a fixed capacity.
+ * <p>
+ * A value that is not tracked yet replaces the one with the lowest count once the capacity is reached, provided its
+ * own count is higher. This class is not thread safe.
+ */
+final class HeavyHitters {
+
+	private static final Comparator<Entry> BY_COUNT = new Comparator<Entry>() {
+
+		@Override
+		public int compare(Entry o1, Entry o2) {
+			int result = Double.compare(o1.count, o2.count);
+			return result != 0 ? result : o1.value.compareTo(o2.value);
+		}
+	};
+
+	private final int capacity;
+
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	private final TreeSet<Entry> byCount = new TreeSet<Entry>(BY_COUNT);
+
+	HeavyHitters(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Record the new count of a value.
+	 */
+	void offer(String value, double count) {
+		Entry entry = entries.get(value);
+		if (entry != null) {
+			byCount.remove(entry);
+			entry.count = count;
+			byCount.add(entry);
+		}
+		else if (entries.size() < capacity) {
+			add(value, count);
+		}
+		else if (count > byCount.first().count) {
+			entries.remove(byCount.pollFirst().value);
+			add(value, count);
+		}
+	}
+
+	/**
+	 * Return the {@code k} tracked values with the highest counts, ordered by decreasing count.
+	 */
+	Map<String, Double> top(int k) {
+		Map<String, Double> result = new LinkedHashMap<String, Double>();
+		for (Iterator<Entry> it = byCount.descendingIterator(); it.hasNext() && result.size() < k;) {
+			Entry entry = it.next();
+			result.put(entry.value, entry.count);
+		}
+		return result;
+	}
+
+	private void add(String value, double count) {
+		Entry entry = new Entry(value, count);
+		entries.put(value, entry);
+		byCount.add(entry);
+	}
+
+	private static final class Entry {
+
+		private final String value;
+
+		private double count;
+
+		private Entry(String value, double count) {
+			this.value = value;
+			this.count = count;
+		}
+	}
+
+}
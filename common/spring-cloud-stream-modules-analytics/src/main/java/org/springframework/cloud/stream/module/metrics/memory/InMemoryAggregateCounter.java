@@ -17,9 +17,9 @@
 package org.springframework.cloud.stream.module.metrics.memory;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.joda.time.Chronology;
 import org.joda.time.DateTime;
@@ -32,6 +32,7 @@ import org.joda.time.Years;
 import org.springframework.cloud.stream.module.metrics.AggregateCounter;
 import org.springframework.cloud.stream.module.metrics.AggregateCounterResolution;
 import org.springframework.cloud.stream.module.metrics.MetricUtils;
+import org.springframework.cloud.stream.module.metrics.TimeBucket;
 import org.springframework.util.Assert;
 
 /**
@@ -41,6 +42,10 @@ import org.springframework.util.Assert;
  * This core class only holds data structures. Depending on backing stores, logic for computing totals may be
  * implemented in a specialization of this class or at the repository level.
  * </p>
+ * <p>
+ * Increments are lock free: buckets are atomic arrays, looked up by primitive keys, and time fields come from a
+ * {@link TimeBucket}, usually cached by the repository.
+ * </p>
  * 
  * @author Luke Taylor
  * @author Eric Bottard
@@ -48,26 +53,39 @@ import org.springframework.util.Assert;
  */
 class InMemoryAggregateCounter {
 
+	/**
+	 * How coarse the time of last access is, so that most accesses only read it.
+	 */
+	private static final long ACCESS_GRANULARITY_MS = 1000L;
+
+	/**
+	 * An estimate of the memory held by a counter besides its buckets: the counter, its name and its map entry.
+	 */
+	private static final long COUNTER_OVERHEAD = 256L;
+
 	private final String name;
 
-	private long value;
+	private final AtomicLong value;
 
-	private Map<Integer, long[]> monthCountsByYear = new HashMap<Integer, long[]>();
+	private final IntKeyedBuckets monthCountsByYear = new IntKeyedBuckets();
 
-	private Map<Integer, long[]> dayCountsByYear = new HashMap<Integer, long[]>();
+	private final IntKeyedBuckets dayCountsByYear = new IntKeyedBuckets();
 
-	private Map<Integer, long[]> hourCountsByDay = new HashMap<Integer, long[]>();
+	private final IntKeyedBuckets hourCountsByDay = new IntKeyedBuckets();
 
-	private Map<Integer, long[]> minuteCountsByDay = new HashMap<Integer, long[]>();
+	private final IntKeyedBuckets minuteCountsByDay = new IntKeyedBuckets();
+
+	private volatile long lastAccessMillis = System.currentTimeMillis();
+
+	private volatile boolean evicted;
 
 	public InMemoryAggregateCounter(String name, long value) {
 		this.name = name;
-		this.value = value;
+		this.value = new AtomicLong(value);
 	}
 
 	public InMemoryAggregateCounter(String name) {
-		this.name = name;
-		this.value = 0l;
+		this(name, 0L);
 	}
 
 	public AggregateCounter getCounts(int nCounts, DateTime endDate, AggregateCounterResolution resolution) {
@@ -102,12 +120,9 @@ class InMemoryAggregateCounter {
 			DateTime endYear = new DateTime(c.year().roundCeiling(end.getMillis()));
 
 			while (cursor.isBefore(endYear)) {
-				long[] dayCounts = dayCountsByYear.get(cursor.getYear());
-				if (dayCounts == null) {
-					// Querying where we have no data
-					dayCounts = new long[daysInYear(cursor.getYear())];
-				}
-				yearDays.add(dayCounts);
+				AtomicLongArray dayCounts = dayCountsByYear.get(cursor.getYear());
+				// Use an empty array when querying where we have no data
+				yearDays.add(dayCounts != null ? snapshot(dayCounts) : new long[daysInYear(cursor.getYear())]);
 				cursor = cursor.plusYears(1);
 			}
 
@@ -123,11 +138,8 @@ class InMemoryAggregateCounter {
 			DateTime endYear = new DateTime(c.year().roundCeiling(end.getMillis()));
 
 			while (cursor.isBefore(endYear)) {
-				long[] monthCounts = monthCountsByYear.get(cursor.getYear());
-				if (monthCounts == null) {
-					monthCounts = new long[12];
-				}
-				yearMonths.add(monthCounts);
+				AtomicLongArray monthCounts = monthCountsByYear.get(cursor.getYear());
+				yearMonths.add(monthCounts != null ? snapshot(monthCounts) : new long[12]);
 				cursor = cursor.plusYears(1);
 			}
 
@@ -140,8 +152,8 @@ class InMemoryAggregateCounter {
 			counts = new long[nYears];
 
 			for (int i = 0; i < nYears; i++) {
-				long[] monthCounts = monthCountsByYear.get(startYear.plusYears(i).getYear());
-				counts[i] = MetricUtils.sum(monthCounts);
+				AtomicLongArray monthCounts = monthCountsByYear.get(startYear.plusYears(i).getYear());
+				counts[i] = monthCounts != null ? MetricUtils.sum(snapshot(monthCounts)) : 0L;
 			}
 
 		}
@@ -151,7 +163,7 @@ class InMemoryAggregateCounter {
 		return new AggregateCounter(this.name, interval, counts, resolution);
 	}
 
-	private static List<long[]> accumulateDayCounts(Map<Integer, long[]> fromDayCounts, DateTime start, DateTime end,
+	private static List<long[]> accumulateDayCounts(IntKeyedBuckets fromDayCounts, DateTime start, DateTime end,
 			int subSize) {
 		List<long[]> days = new ArrayList<long[]>();
 		Duration step = Duration.standardDays(1);
@@ -159,14 +171,11 @@ class InMemoryAggregateCounter {
 		end = end.plusDays(1); // Need to account for an interval which crosses days
 
 		for (DateTime now = start; now.isBefore(end); now = now.plus(step)) {
-			int countsByDayKey = now.getYear() * 1000 + now.getDayOfYear();
-			long[] dayCounts = fromDayCounts.get(countsByDayKey);
+			int countsByDayKey = dayKey(now);
+			AtomicLongArray dayCounts = fromDayCounts.get(countsByDayKey);
 
-			if (dayCounts == null) {
-				// Use an empty array if we don't have data
-				dayCounts = emptySubArray;
-			}
-			days.add(dayCounts);
+			// Use an empty array if we don't have data
+			days.add(dayCounts != null ? snapshot(dayCounts) : emptySubArray);
 		}
 		return days;
 	}
@@ -176,46 +185,120 @@ class InMemoryAggregateCounter {
 		return (int)d.getStandardDays();
 	}
 
-	synchronized long increment(long amount) {
-		return this.value += amount;
+	/**
+	 * Return the days (as {@code year * 1000 + dayOfYear}) for which minute counts are held.
+	 */
+	int[] getMinuteDays() {
+		return minuteCountsByDay.keys();
+	}
+
+	/**
+	 * Return the days (as {@code year * 1000 + dayOfYear}) for which hour counts are held.
+	 */
+	int[] getHourDays() {
+		return hourCountsByDay.keys();
+	}
+
+	/**
+	 * Drop the minute counts held for the given day. Hour, day, month and year counts already account for them.
+	 *
+	 * @return the number of bytes released
+	 */
+	long evictMinuteCounts(int dayKey) {
+		AtomicLongArray counts = minuteCountsByDay.remove(dayKey);
+		return counts != null ? IntKeyedBuckets.footprint(counts) : 0L;
+	}
+
+	/**
+	 * Drop the hour counts held for the given day. Day, month and year counts already account for them.
+	 *
+	 * @return the number of bytes released
+	 */
+	long evictHourCounts(int dayKey) {
+		AtomicLongArray counts = hourCountsByDay.remove(dayKey);
+		return counts != null ? IntKeyedBuckets.footprint(counts) : 0L;
 	}
 
-	synchronized long increment(long amount, DateTime dateTime) {
-		int year = dateTime.getYear();
-		int month = dateTime.getMonthOfYear();
-		int day = dateTime.getDayOfYear();
-		int hour = dateTime.getHourOfDay();
-		int minute = dateTime.getMinuteOfDay();
+	/**
+	 * Return an estimate of the memory held by this counter, in bytes.
+	 */
+	long getFootprint() {
+		return COUNTER_OVERHEAD + 2L * name.length() + monthCountsByYear.footprint() + dayCountsByYear.footprint()
+				+ hourCountsByDay.footprint() + minuteCountsByDay.footprint();
+	}
 
-		long[] monthCounts = monthCountsByYear.get(year);
-		long[] dayCounts = dayCountsByYear.get(year);
+	String getName() {
+		return name;
+	}
 
-		if (monthCounts == null) {
-			monthCounts = new long[12];
-			monthCountsByYear.put(year, monthCounts);
-			dayCounts = new long[daysInYear(year)];
-			dayCountsByYear.put(year, dayCounts);
+	/**
+	 * Record that this counter is being incremented or read at the given time.
+	 */
+	void touch(long nowMillis) {
+		if (nowMillis - lastAccessMillis >= ACCESS_GRANULARITY_MS) {
+			lastAccessMillis = nowMillis;
 		}
+	}
 
-		int countsByDayKey = year * 1000 + day;
-		long[] hourCounts = hourCountsByDay.get(countsByDayKey);
+	/**
+	 * Return when this counter was last incremented or read, in milliseconds since the epoch, to the second.
+	 */
+	long getLastAccessMillis() {
+		return lastAccessMillis;
+	}
+
+	/**
+	 * Mark this counter as dropped by its repository. Increments that see the mark must be applied to the counter
+	 * that replaces it.
+	 */
+	void evict() {
+		evicted = true;
+	}
 
-		if (hourCounts == null) {
-			hourCounts = new long[24];
-			hourCountsByDay.put(countsByDayKey, hourCounts);
+	boolean isEvicted() {
+		return evicted;
+	}
+
+	/**
+	 * Return the key under which counts at minute and hour resolution are held for the day of the given instant.
+	 */
+	static int dayKey(DateTime dateTime) {
+		return dateTime.getYear() * 1000 + dateTime.getDayOfYear();
+	}
+
+	private static long[] snapshot(AtomicLongArray counts) {
+		long[] result = new long[counts.length()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = counts.get(i);
 		}
+		return result;
+	}
 
-		long[] minuteCounts = minuteCountsByDay.get(countsByDayKey);
+	long increment(long amount) {
+		return value.addAndGet(amount);
+	}
 
-		if (minuteCounts == null) {
-			minuteCounts = new long[60 * 24];
-			minuteCountsByDay.put(countsByDayKey, minuteCounts);
+	/**
+	 * Increment the buckets of the given minute.
+	 */
+	long increment(long amount, TimeBucket bucket) {
+		int year = bucket.getYear();
+		int month = bucket.getMonthOfYear();
+		int day = bucket.getDayOfYear();
+		int hour = bucket.getHourOfDay();
+		int minute = bucket.getMinuteOfDay();
+
+		monthCountsByYear.getOrCreate(year, 12).addAndGet(month - 1, amount);
+
+		AtomicLongArray dayCounts = dayCountsByYear.get(year);
+		if (dayCounts == null) {
+			dayCounts = dayCountsByYear.getOrCreate(year, daysInYear(year));
 		}
+		dayCounts.addAndGet(day - 1, amount);
 
-		minuteCounts[minute] += amount;
-		monthCounts[month-1] += amount;
-		dayCounts[day-1] += amount;
-		hourCounts[hour] += amount;
+		int countsByDayKey = year * 1000 + day;
+		hourCountsByDay.getOrCreate(countsByDayKey, 24).addAndGet(hour, amount);
+		minuteCountsByDay.getOrCreate(countsByDayKey, 60 * 24).addAndGet(minute, amount);
 
 		return increment(amount);
 	}
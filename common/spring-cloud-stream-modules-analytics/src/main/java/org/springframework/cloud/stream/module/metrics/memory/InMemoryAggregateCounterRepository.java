@@ -16,28 +16,116 @@
 
 package org.springframework.cloud.stream.module.metrics.memory;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.joda.time.DateTime;
 import org.joda.time.Interval;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cloud.stream.module.metrics.AggregateCounter;
 import org.springframework.cloud.stream.module.metrics.AggregateCounterRepository;
 import org.springframework.cloud.stream.module.metrics.AggregateCounterResolution;
+import org.springframework.cloud.stream.module.metrics.TimeBucket;
+import org.springframework.cloud.stream.module.metrics.TimeBucketCalculator;
+import org.springframework.util.Assert;
 
 /**
  * In-memory aggregate counter with minute resolution.
  * <p/>
- * Note that the data is permanently accumulated, so will grow steadily in size until the host process is restarted.
+ * By default, the data is permanently accumulated, so will grow steadily in size until the host process is restarted.
+ * Retention periods can be set for minute and hour counts, as well as a cap on the memory held by all counters, in
+ * which case a background compactor evicts expired (or, when over the cap, oldest) minute then hour counts. As every
+ * increment is recorded at all resolutions, hour counts already hold the roll-up of minute counts, and so on: queries
+ * at a coarser resolution are unaffected by evictions, while queries over evicted finer buckets return zeros. The
+ * minute and hour counts of the current day are never evicted that way.
+ * <p/>
+ * If the memory held is still over the cap, whole counters are evicted, least recently incremented or read first,
+ * which bounds memory even when counter names are derived from messages. Evicted counters start over from zero if
+ * incremented again.
  *
  * @author Luke Taylor
  * @author Eric Bottard
  * @author Ilayaperumal Gopinathan
  */
-public class InMemoryAggregateCounterRepository implements AggregateCounterRepository {
+public class InMemoryAggregateCounterRepository implements AggregateCounterRepository, DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(InMemoryAggregateCounterRepository.class);
+
+	private final ConcurrentMap<String, InMemoryAggregateCounter> aggregates =
+			new ConcurrentHashMap<String, InMemoryAggregateCounter>();
+
+	private final int minuteRetentionDays;
+
+	private final int hourRetentionDays;
+
+	private final long maxMemoryBytes;
+
+	private final ScheduledExecutorService compactor;
 
-	private Map<String, InMemoryAggregateCounter> aggregates = new HashMap<String, InMemoryAggregateCounter>();
+	private final TimeBucketCalculator bucketCalculator = new TimeBucketCalculator();
+
+	/**
+	 * Create a repository that keeps all counts until the host process is restarted.
+	 */
+	public InMemoryAggregateCounterRepository() {
+		this(0, 0, 0L, 0L);
+	}
+
+	/**
+	 * Create a repository that bounds the memory held by counts.
+	 *
+	 * @param minuteRetentionDays the number of past days for which minute counts are kept, or 0 to keep them forever
+	 * @param hourRetentionDays the number of past days for which hour counts are kept, or 0 to keep them forever
+	 * @param maxMemoryBytes an upper bound on the memory held by counts, or 0 for no bound
+	 * @param compactionIntervalMs how often expired counts are evicted, in milliseconds
+	 */
+	public InMemoryAggregateCounterRepository(int minuteRetentionDays, int hourRetentionDays, long maxMemoryBytes,
+			long compactionIntervalMs) {
+		Assert.isTrue(minuteRetentionDays >= 0, "minuteRetentionDays cannot be negative");
+		Assert.isTrue(hourRetentionDays >= 0, "hourRetentionDays cannot be negative");
+		Assert.isTrue(maxMemoryBytes >= 0, "maxMemoryBytes cannot be negative");
+		this.minuteRetentionDays = minuteRetentionDays;
+		this.hourRetentionDays = hourRetentionDays;
+		this.maxMemoryBytes = maxMemoryBytes;
+		if (minuteRetentionDays > 0 || hourRetentionDays > 0 || maxMemoryBytes > 0) {
+			Assert.isTrue(compactionIntervalMs > 0, "compactionIntervalMs must be positive");
+			this.compactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "aggregate-counter-compactor");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			this.compactor.scheduleWithFixedDelay(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						compact();
+					}
+					catch (RuntimeException e) {
+						logger.error("Failed to compact aggregate counters", e);
+					}
+				}
+			}, compactionIntervalMs, compactionIntervalMs, TimeUnit.MILLISECONDS);
+		}
+		else {
+			this.compactor = null;
+		}
+	}
 
 
 	public long increment(String name) {
@@ -55,38 +143,212 @@ public class InMemoryAggregateCounterRepository implements AggregateCounterRepos
 
 	@Override
 	public long increment(String name, long amount, DateTime dateTime) {
-		InMemoryAggregateCounter counter = getOrCreate(name);
-		return counter.increment(amount, dateTime);
+		return increment(name, amount, bucketCalculator.bucketOf(dateTime));
+	}
+
+	/**
+	 * Increments the named counter by a specific amount for the given instant, expressed in milliseconds since the
+	 * epoch and bucketed in the default time zone.
+	 */
+	public long increment(String name, long amount, long timestamp) {
+		return increment(name, amount, bucketCalculator.bucketOf(timestamp));
+	}
+
+	private long increment(String name, long amount, TimeBucket bucket) {
+		while (true) {
+			InMemoryAggregateCounter counter = getOrCreate(name);
+			long result = counter.increment(amount, bucket);
+			// An increment that raced with the eviction of the counter goes to its replacement
+			if (!counter.isEvicted()) {
+				return result;
+			}
+		}
 	}
 
 	@Override
 	public AggregateCounter getCounts(String name, int nCounts, AggregateCounterResolution resolution) {
-		return getOrCreate(name).getCounts(nCounts, new DateTime(), resolution);
+		return get(name).getCounts(nCounts, new DateTime(), resolution);
 	}
 
 	@Override
 	public AggregateCounter getCounts(String name, Interval interval, AggregateCounterResolution resolution) {
-		return getOrCreate(name).getCounts(interval, resolution);
+		return get(name).getCounts(interval, resolution);
 	}
 
 	@Override
 	public AggregateCounter getCounts(String name, int nCounts, DateTime end, AggregateCounterResolution resolution) {
-		return getOrCreate(name).getCounts(nCounts, end, resolution);
+		return get(name).getCounts(nCounts, end, resolution);
 	}
 
-	private synchronized InMemoryAggregateCounter getOrCreate(String name) {
+	/**
+	 * Return the named counter, or an empty one that is not kept if there is none, so that reads do not hold memory.
+	 */
+	private InMemoryAggregateCounter get(String name) {
 		InMemoryAggregateCounter c = aggregates.get(name);
 		if (c == null) {
-			c = new InMemoryAggregateCounter(name);
-			aggregates.put(name, c);
+			return new InMemoryAggregateCounter(name);
 		}
+		c.touch(System.currentTimeMillis());
 		return c;
 	}
 
+	private InMemoryAggregateCounter getOrCreate(String name) {
+		InMemoryAggregateCounter c = aggregates.get(name);
+		if (c == null) {
+			InMemoryAggregateCounter created = new InMemoryAggregateCounter(name);
+			c = aggregates.putIfAbsent(name, created);
+			if (c == null) {
+				return created;
+			}
+		}
+		c.touch(System.currentTimeMillis());
+		return c;
+	}
+
+	/**
+	 * Evict the minute and hour counts that are past their retention period, then, while the memory held by counts is
+	 * over the configured cap, the oldest minute and hour counts before the current day, and finally the least
+	 * recently used counters.
+	 */
+	public void compact() {
+		DateTime now = DateTime.now();
+		if (minuteRetentionDays > 0) {
+			int cutoff = InMemoryAggregateCounter.dayKey(now.minusDays(minuteRetentionDays));
+			for (InMemoryAggregateCounter counter : aggregates.values()) {
+				for (int day : counter.getMinuteDays()) {
+					if (day < cutoff) {
+						counter.evictMinuteCounts(day);
+					}
+				}
+			}
+		}
+		if (hourRetentionDays > 0) {
+			int cutoff = InMemoryAggregateCounter.dayKey(now.minusDays(hourRetentionDays));
+			for (InMemoryAggregateCounter counter : aggregates.values()) {
+				for (int day : counter.getHourDays()) {
+					if (day < cutoff) {
+						counter.evictHourCounts(day);
+					}
+				}
+			}
+		}
+		if (maxMemoryBytes > 0) {
+			long footprint = getFootprint();
+			int today = InMemoryAggregateCounter.dayKey(now);
+			if (footprint > maxMemoryBytes) {
+				footprint -= evictOldest(true, today, footprint - maxMemoryBytes);
+			}
+			if (footprint > maxMemoryBytes) {
+				footprint -= evictOldest(false, today, footprint - maxMemoryBytes);
+			}
+			if (footprint > maxMemoryBytes) {
+				footprint -= evictLeastRecentlyUsed(footprint - maxMemoryBytes);
+			}
+			if (footprint > maxMemoryBytes) {
+				logger.warn(String.format("Aggregate counters hold %d bytes after compaction, over the %d bytes cap",
+						footprint, maxMemoryBytes));
+			}
+		}
+	}
+
+	/**
+	 * Return an estimate of the memory held by all counts, in bytes.
+	 */
+	public long getFootprint() {
+		long footprint = 0L;
+		for (InMemoryAggregateCounter counter : aggregates.values()) {
+			footprint += counter.getFootprint();
+		}
+		return footprint;
+	}
+
+	@Override
+	public void destroy() {
+		if (compactor != null) {
+			compactor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Evict minute (or hour) counts, oldest day first across all counters, until the given amount of memory has been
+	 * released. Counts of the given day and later are kept.
+	 *
+	 * @return the number of bytes released
+	 */
+	private long evictOldest(boolean minutes, int today, long bytesToRelease) {
+		List<EvictionCandidate> candidates = new ArrayList<EvictionCandidate>();
+		for (InMemoryAggregateCounter counter : aggregates.values()) {
+			for (int day : minutes ? counter.getMinuteDays() : counter.getHourDays()) {
+				if (day < today) {
+					candidates.add(new EvictionCandidate(counter, day));
+				}
+			}
+		}
+		Collections.sort(candidates, new Comparator<EvictionCandidate>() {
+
+			@Override
+			public int compare(EvictionCandidate o1, EvictionCandidate o2) {
+				return o1.day < o2.day ? -1 : (o1.day == o2.day ? 0 : 1);
+			}
+		});
+		long released = 0L;
+		for (int i = 0; i < candidates.size() && released < bytesToRelease; i++) {
+			EvictionCandidate candidate = candidates.get(i);
+			released += minutes ? candidate.counter.evictMinuteCounts(candidate.day)
+					: candidate.counter.evictHourCounts(candidate.day);
+		}
+		return released;
+	}
+
+	/**
+	 * Evict whole counters, least recently incremented or read first, until the given amount of memory has been
+	 * released.
+	 *
+	 * @return the number of bytes released
+	 */
+	private long evictLeastRecentlyUsed(long bytesToRelease) {
+		List<InMemoryAggregateCounter> counters = new ArrayList<InMemoryAggregateCounter>(aggregates.values());
+		Collections.sort(counters, new Comparator<InMemoryAggregateCounter>() {
+
+			@Override
+			public int compare(InMemoryAggregateCounter o1, InMemoryAggregateCounter o2) {
+				long a1 = o1.getLastAccessMillis();
+				long a2 = o2.getLastAccessMillis();
+				return a1 < a2 ? -1 : (a1 == a2 ? 0 : 1);
+			}
+		});
+		long released = 0L;
+		int evicted = 0;
+		for (int i = 0; i < counters.size() && released < bytesToRelease; i++) {
+			InMemoryAggregateCounter counter = counters.get(i);
+			// Mark first, so that increments racing with the removal are applied to a new counter
+			counter.evict();
+			if (aggregates.remove(counter.getName(), counter)) {
+				released += counter.getFootprint();
+				evicted++;
+			}
+		}
+		logger.info(String.format("Evicted %d least recently used aggregate counters to stay within the %d bytes cap",
+				evicted, maxMemoryBytes));
+		return released;
+	}
+
 	public AggregateCounter save(AggregateCounter counter) {
 		aggregates.remove(counter.getName());
 		increment(counter.getName(), counter.getTotal(), DateTime.now());
 		return counter;
 	}
 
+	private static final class EvictionCandidate {
+
+		private final InMemoryAggregateCounter counter;
+
+		private final int day;
+
+		private EvictionCandidate(InMemoryAggregateCounter counter, int day) {
+			this.counter = counter;
+			this.day = day;
+		}
+	}
+
 }
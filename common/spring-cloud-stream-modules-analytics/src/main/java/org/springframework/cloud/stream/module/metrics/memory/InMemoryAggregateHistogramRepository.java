@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.memory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+
+import org.springframework.cloud.stream.module.metrics.AggregateCounterResolution;
+import org.springframework.cloud.stream.module.metrics.AggregateHistogram;
+import org.springframework.cloud.stream.module.metrics.AggregateHistogramRepository;
+import org.springframework.cloud.stream.module.metrics.HistogramBucket;
+import org.springframework.cloud.stream.module.metrics.TimeBucket;
+import org.springframework.cloud.stream.module.metrics.TimeBucketCalculator;
+import org.springframework.util.Assert;
+
+/**
+ * In-memory aggregate histogram repository.
+ * <p/>
+ * Each value is recorded in the bucket of every resolution it falls into, so that queries at any resolution read one
+ * bucket per entry. The data is permanently accumulated, so will grow steadily in size until the host process is
+ * restarted.
+ */
+public class InMemoryAggregateHistogramRepository implements AggregateHistogramRepository {
+
+	private static final AggregateCounterResolution[] RESOLUTIONS = AggregateCounterResolution.values();
+
+	private final ConcurrentMap<String, ConcurrentMap<String, HistogramBucket>> histograms =
+			new ConcurrentHashMap<String, ConcurrentMap<String, HistogramBucket>>();
+
+	private final TimeBucketCalculator bucketCalculator = new TimeBucketCalculator();
+
+	@Override
+	public void record(String name, long value, DateTime dateTime) {
+		Assert.notNull(name, "name cannot be null");
+		ConcurrentMap<String, HistogramBucket> buckets = histograms.get(name);
+		if (buckets == null) {
+			ConcurrentMap<String, HistogramBucket> created = new ConcurrentHashMap<String, HistogramBucket>();
+			buckets = histograms.putIfAbsent(name, created);
+			if (buckets == null) {
+				buckets = created;
+			}
+		}
+		TimeBucket timeBucket = bucketCalculator.bucketOf(dateTime);
+		for (AggregateCounterResolution resolution : RESOLUTIONS) {
+			// Keys of different resolutions have different lengths, hence do not collide
+			String key = timeBucket.toString(resolution);
+			HistogramBucket bucket = buckets.get(key);
+			if (bucket == null) {
+				HistogramBucket created = new HistogramBucket();
+				bucket = buckets.putIfAbsent(key, created);
+				if (bucket == null) {
+					bucket = created;
+				}
+			}
+			synchronized (bucket) {
+				bucket.record(value);
+			}
+		}
+	}
+
+	@Override
+	public void reset(String name) {
+		histograms.remove(name);
+	}
+
+	@Override
+	public AggregateHistogram getHistograms(String name, int nCounts, AggregateCounterResolution resolution) {
+		return getHistograms(name, nCounts, new DateTime(), resolution);
+	}
+
+	@Override
+	public AggregateHistogram getHistograms(String name, int nCounts, DateTime end,
+			AggregateCounterResolution resolution) {
+		Assert.notNull(end, "end cannot be null");
+		DateTime start = resolution.minus(end, nCounts - 1);
+		ConcurrentMap<String, HistogramBucket> buckets = histograms.get(name);
+		HistogramBucket[] result = new HistogramBucket[nCounts];
+		DateTime cursor = start;
+		for (int i = 0; i < nCounts; i++) {
+			HistogramBucket copy = new HistogramBucket();
+			HistogramBucket bucket = buckets != null
+					? buckets.get(bucketCalculator.bucketOf(cursor).toString(resolution)) : null;
+			if (bucket != null) {
+				synchronized (bucket) {
+					copy.merge(bucket);
+				}
+			}
+			result[i] = copy;
+			cursor = cursor.plus(resolution.unitPeriod);
+		}
+		return new AggregateHistogram(name, new Interval(start, end), result, resolution);
+	}
+
+}
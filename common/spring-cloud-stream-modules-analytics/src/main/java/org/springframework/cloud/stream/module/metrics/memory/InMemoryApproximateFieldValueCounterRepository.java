@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.memory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.cloud.stream.module.metrics.CountMinSketch;
+import org.springframework.cloud.stream.module.metrics.FieldValueCounter;
+import org.springframework.cloud.stream.module.metrics.FieldValueCounterRepository;
+import org.springframework.util.Assert;
+
+/**
+ * Memory backed implementation of FieldValueCounterRepository that uses a bounded amount of memory per counter,
+ * whatever the number of distinct field values.
+ * <p>
+ * Counts are estimated by a {@link CountMinSketch} and only the {@code topKCapacity} values with the highest
+ * estimates are remembered. Hence {@link #findOne(String)} only returns those values, and counts may be overestimated.
+ * Decrements are not supported.
+ */
+public class InMemoryApproximateFieldValueCounterRepository implements FieldValueCounterRepository {
+
+	private final ConcurrentMap<String, Approximation> map = new ConcurrentHashMap<String, Approximation>();
+
+	private final int topKCapacity;
+
+	private final int sketchWidth;
+
+	private final int sketchDepth;
+
+	/**
+	 * Create a repository that tracks the given number of field values per counter.
+	 *
+	 * @param topKCapacity the number of field values with the highest counts that are tracked
+	 * @param sketchWidth the number of counts per row of the sketch, which bounds the estimation error
+	 * @param sketchDepth the number of rows of the sketch, which bounds the probability of exceeding that error
+	 */
+	public InMemoryApproximateFieldValueCounterRepository(int topKCapacity, int sketchWidth, int sketchDepth) {
+		Assert.isTrue(topKCapacity > 0, "topKCapacity must be positive");
+		this.topKCapacity = topKCapacity;
+		this.sketchWidth = sketchWidth;
+		this.sketchDepth = sketchDepth;
+	}
+
+	@Override
+	public void increment(String name, String fieldName, double score) {
+		Assert.notNull(name, "The name of the metric must not be null");
+		getOrCreate(name).add(fieldName, score);
+	}
+
+	@Override
+	public void increment(String name, Map<String, Double> scores) {
+		for (Map.Entry<String, Double> entry : scores.entrySet()) {
+			increment(name, entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public void decrement(String name, String fieldName, double score) {
+		throw new UnsupportedOperationException("Approximate counters can not be decremented");
+	}
+
+	@Override
+	public void reset(String name) {
+		map.remove(name);
+	}
+
+	@Override
+	public FieldValueCounter findOne(String name) {
+		return findTopK(name, topKCapacity);
+	}
+
+	@Override
+	public FieldValueCounter findTopK(String name, int k) {
+		Assert.notNull(name, "The name of the metric must not be null");
+		Approximation approximation = map.get(name);
+		return approximation != null ? new FieldValueCounter(name, approximation.top(k)) : null;
+	}
+
+	@Override
+	public Collection<String> list() {
+		return map.keySet();
+	}
+
+	private Approximation getOrCreate(String name) {
+		Approximation approximation = map.get(name);
+		if (approximation == null) {
+			Approximation created = new Approximation(new CountMinSketch(sketchWidth, sketchDepth),
+					new HeavyHitters(topKCapacity));
+			approximation = map.putIfAbsent(name, created);
+			if (approximation == null) {
+				approximation = created;
+			}
+		}
+		return approximation;
+	}
+
+	private static final class Approximation {
+
+		private final CountMinSketch sketch;
+
+		private final HeavyHitters heavyHitters;
+
+		private Approximation(CountMinSketch sketch, HeavyHitters heavyHitters) {
+			this.sketch = sketch;
+			this.heavyHitters = heavyHitters;
+		}
+
+		private synchronized void add(String value, double amount) {
+			heavyHitters.offer(value, sketch.add(value, amount));
+		}
+
+		private synchronized Map<String, Double> top(int k) {
+			return heavyHitters.top(k);
+		}
+	}
+
+}
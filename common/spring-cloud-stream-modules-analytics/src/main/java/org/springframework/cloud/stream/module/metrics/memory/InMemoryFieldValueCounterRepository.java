@@ -22,6 +22,7 @@ import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.cloud.stream.module.metrics.FieldValueCounter;
 import org.springframework.cloud.stream.module.metrics.FieldValueCounterRepository;
+import org.springframework.cloud.stream.module.metrics.MetricUtils;
 import org.springframework.util.Assert;
 
 /**
@@ -40,6 +41,13 @@ public class InMemoryFieldValueCounterRepository implements FieldValueCounterRep
 		modifyFieldValue(name, fieldName, score);
 	}
 
+	@Override
+	public void increment(String name, Map<String, Double> scores) {
+		for (Map.Entry<String, Double> entry : scores.entrySet()) {
+			modifyFieldValue(name, entry.getKey(), entry.getValue());
+		}
+	}
+
 	@Override
 	public void decrement(String name, String fieldName, double score) {
 		modifyFieldValue(name, fieldName, -score);
@@ -80,6 +88,12 @@ public class InMemoryFieldValueCounterRepository implements FieldValueCounterRep
 		return map.get(name);
 	}
 
+	@Override
+	public FieldValueCounter findTopK(String name, int k) {
+		FieldValueCounter counter = findOne(name);
+		return counter != null ? new FieldValueCounter(name, MetricUtils.topK(counter.getFieldValueCounts(), k)) : null;
+	}
+
 	@Override
 	public Collection<String> list() {
 		return map.keySet();
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.memory;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An open addressing map from primitive {@code int} keys to arrays of counts.
+ * <p>
+ * Lookups are lock free and do not allocate. Insertions and removals copy the table under a lock, which is cheap
+ * given that a new key only shows up once per day (or year) for a given counter.
+ */
+final class IntKeyedBuckets {
+
+	private volatile Table table = new Table(8);
+
+	/**
+	 * Return the counts stored under the given key, or {@code null} if there are none.
+	 */
+	AtomicLongArray get(int key) {
+		return table.get(key);
+	}
+
+	/**
+	 * Return the counts stored under the given key, creating an array of the given size if there are none.
+	 */
+	AtomicLongArray getOrCreate(int key, int size) {
+		AtomicLongArray counts = table.get(key);
+		if (counts != null) {
+			return counts;
+		}
+		synchronized (this) {
+			Table current = table;
+			counts = current.get(key);
+			if (counts == null) {
+				counts = new AtomicLongArray(size);
+				table = current.with(key, counts);
+			}
+			return counts;
+		}
+	}
+
+	/**
+	 * Remove the counts stored under the given key, returning them or {@code null} if there were none.
+	 */
+	synchronized AtomicLongArray remove(int key) {
+		Table current = table;
+		AtomicLongArray counts = current.get(key);
+		if (counts != null) {
+			table = current.without(key);
+		}
+		return counts;
+	}
+
+	/**
+	 * Return a snapshot of the keys currently present, in no particular order.
+	 */
+	int[] keys() {
+		return table.keys();
+	}
+
+	/**
+	 * Return an estimate of the memory held by the arrays of counts, in bytes.
+	 */
+	long footprint() {
+		long bytes = 0L;
+		for (AtomicLongArray counts : table.values) {
+			if (counts != null) {
+				bytes += footprint(counts);
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Return an estimate of the memory held by the given array of counts, in bytes.
+	 */
+	static long footprint(AtomicLongArray counts) {
+		// Array header plus the wrapping object
+		return 32L + 8L * counts.length();
+	}
+
+	/**
+	 * An immutable (once published) table, using linear probing.
+	 */
+	private static final class Table {
+
+		private final int[] keys;
+
+		private final AtomicLongArray[] values;
+
+		private final int mask;
+
+		private int size;
+
+		private Table(int capacity) {
+			this.keys = new int[capacity];
+			this.values = new AtomicLongArray[capacity];
+			this.mask = capacity - 1;
+		}
+
+		private AtomicLongArray get(int key) {
+			for (int i = indexFor(key);; i = (i + 1) & mask) {
+				AtomicLongArray value = values[i];
+				if (value == null || keys[i] == key) {
+					return value;
+				}
+			}
+		}
+
+		private Table with(int key, AtomicLongArray value) {
+			int capacity = keys.length;
+			// Keep the load factor at or below one half
+			if ((size + 1) * 2 > capacity) {
+				capacity *= 2;
+			}
+			Table copy = copy(capacity, key, false);
+			copy.put(key, value);
+			return copy;
+		}
+
+		private Table without(int key) {
+			return copy(keys.length, key, true);
+		}
+
+		private Table copy(int capacity, int key, boolean skipKey) {
+			Table copy = new Table(capacity);
+			for (int i = 0; i < keys.length; i++) {
+				if (values[i] != null && !(skipKey && keys[i] == key)) {
+					copy.put(keys[i], values[i]);
+				}
+			}
+			return copy;
+		}
+
+		private void put(int key, AtomicLongArray value) {
+			int i = indexFor(key);
+			while (values[i] != null) {
+				i = (i + 1) & mask;
+			}
+			keys[i] = key;
+			values[i] = value;
+			size++;
+		}
+
+		private int[] keys() {
+			int[] result = new int[size];
+			int n = 0;
+			for (int i = 0; i < keys.length; i++) {
+				if (values[i] != null) {
+					result[n++] = keys[i];
+				}
+			}
+			return result;
+		}
+
+		private int indexFor(int key) {
+			// Keys are of the form year * 1000 + day, spread them across the table
+			int h = key * 0x9E3779B9;
+			return (h ^ (h >>> 16)) & mask;
+		}
+	}
+
+}
@@ -18,9 +18,8 @@ package org.springframework.cloud.stream.module.metrics.redis;
 
 import org.joda.time.DateTime;
 import org.joda.time.ReadableDateTime;
-import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
 
+import org.springframework.cloud.stream.module.metrics.TimeBucket;
 import org.springframework.util.Assert;
 
 /**
@@ -34,16 +33,39 @@ import org.springframework.util.Assert;
  * <li>One hash per day with a field per hour</li>
  * <li>One hash per hour with a field per minute</li>
  * </ol>
+ * Version 2 of the key scheme, used by {@link PackedRedisAggregateCounterRepository}, lives under its own prefix and
+ * stores all but the years as fixed width arrays of big endian 64 bit counts:
+ * <ol>
+ * <li>One total value</li>
+ * <li>One years hash with a field per year</li>
+ * <li>One array per year with a slot per month</li>
+ * <li>One array per year with a slot per day of the year</li>
+ * <li>One array per month with a slot per hour of the month</li>
+ * <li>One array per day with a slot per minute of the day</li>
+ * </ol>
  *
  * @author Mark Pollack
  * @author Luke Taylor
  */
 /* default */class AggregateKeyGenerator {
 
-	final static DateTimeFormatter dateTimeFormatter = DateTimeFormat.forPattern("yyyyMMddHHmm");
-
 	public final static String SEPARATOR = ".";
 
+	/**
+	 * The original key scheme, made of hashes keyed by the textual value of each time field.
+	 */
+	public final static int HASH_VERSION = 1;
+
+	/**
+	 * The packed key scheme, made of fixed width arrays of counts.
+	 */
+	public final static int PACKED_VERSION = 2;
+
+	/**
+	 * The width of a slot in packed arrays, in bytes.
+	 */
+	public final static int SLOT_SIZE = 8;
+
 	// keys
 	private final String hourKey;
 
@@ -57,6 +79,14 @@ import org.springframework.util.Assert;
 
 	private final String totalKey;
 
+	private final String monthsOfYearKey;
+
+	private final String daysOfYearKey;
+
+	private final String hoursOfMonthKey;
+
+	private final String minutesOfDayKey;
+
 	// time
 	private final String year;
 
@@ -72,28 +102,57 @@ import org.springframework.util.Assert;
 
 	private final String counterName;
 
+	private final TimeBucket bucket;
+
 	public AggregateKeyGenerator(String repoPrefix, String counterName) {
 		this(repoPrefix, counterName, new DateTime());
 	}
 
 	public AggregateKeyGenerator(String repoPrefix, String counterName, ReadableDateTime dateTime) {
+		this(repoPrefix, counterName, dateTime, HASH_VERSION);
+	}
+
+	public AggregateKeyGenerator(String repoPrefix, String counterName, ReadableDateTime dateTime, int version) {
+		this(repoPrefix, counterName, bucketOf(dateTime), version);
+	}
+
+	/**
+	 * Create the keys of the given bucket, which saves computing and formatting the fields of the time of the
+	 * increment when the bucket comes from a {@link org.springframework.cloud.stream.module.metrics.TimeBucketCalculator}.
+	 */
+	public AggregateKeyGenerator(String repoPrefix, String counterName, TimeBucket bucket, int version) {
 		Assert.notNull(counterName, "Counter name name can not be null");
-		Assert.notNull(dateTime, "DateTime can not be null");
-		this.repoPrefix = repoPrefix;
+		Assert.notNull(bucket, "TimeBucket can not be null");
+		Assert.isTrue(version == HASH_VERSION || version == PACKED_VERSION, "Unknown key version: " + version);
+		this.repoPrefix = version == HASH_VERSION ? repoPrefix : repoPrefix + "-v" + version;
 		this.counterName = counterName;
-		String timeStamp = dateTimeFormatter.print(dateTime);
+		this.bucket = bucket;
+		minute = bucket.getMinuteText();
+		hour = bucket.getHourText();
+		day = bucket.getDayText();
+		month = bucket.getMonthText();
+		year = bucket.getYearText();
 		totalKey = key("total");
-		hourKey = key(timeStamp.substring(0, 10));
-		dayKey = key(timeStamp.substring(0, 8));
-		monthKey = key(timeStamp.substring(0, 6));
-		yearKey = key(timeStamp.substring(0, 4));
 		yearsKey = key("years");
+		if (version == HASH_VERSION) {
+			hourKey = key(year + month + day + hour);
+			dayKey = key(year + month + day);
+			monthKey = key(year + month);
+			yearKey = key(year);
+			monthsOfYearKey = daysOfYearKey = hoursOfMonthKey = minutesOfDayKey = null;
+		}
+		else {
+			minutesOfDayKey = key("minutes" + SEPARATOR + year + month + day);
+			hoursOfMonthKey = key("hours" + SEPARATOR + year + month);
+			daysOfYearKey = key("days" + SEPARATOR + year);
+			monthsOfYearKey = key("months" + SEPARATOR + year);
+			hourKey = dayKey = monthKey = yearKey = null;
+		}
+	}
 
-		minute = timeStamp.substring(10, 12);
-		hour = timeStamp.substring(8, 10);
-		day = timeStamp.substring(6, 8);
-		month = timeStamp.substring(4, 6);
-		year = timeStamp.substring(0, 4);
+	private static TimeBucket bucketOf(ReadableDateTime dateTime) {
+		Assert.notNull(dateTime, "DateTime can not be null");
+		return TimeBucket.of(dateTime.getMillis(), dateTime.getZone());
 	}
 
 	public String getYearsKey() {
@@ -124,6 +183,50 @@ import org.springframework.util.Assert;
 		return yearKey;
 	}
 
+	public String getMonthsOfYearKey() {
+		return monthsOfYearKey;
+	}
+
+	public String getDaysOfYearKey() {
+		return daysOfYearKey;
+	}
+
+	public String getHoursOfMonthKey() {
+		return hoursOfMonthKey;
+	}
+
+	public String getMinutesOfDayKey() {
+		return minutesOfDayKey;
+	}
+
+	/**
+	 * Return the slot of the month in the array returned by {@link #getMonthsOfYearKey()}.
+	 */
+	public int getMonthOfYearSlot() {
+		return bucket.getMonthOfYear() - 1;
+	}
+
+	/**
+	 * Return the slot of the day in the array returned by {@link #getDaysOfYearKey()}.
+	 */
+	public int getDayOfYearSlot() {
+		return bucket.getDayOfYear() - 1;
+	}
+
+	/**
+	 * Return the slot of the hour in the array returned by {@link #getHoursOfMonthKey()}.
+	 */
+	public int getHourOfMonthSlot() {
+		return (bucket.getDayOfMonth() - 1) * 24 + bucket.getHourOfDay();
+	}
+
+	/**
+	 * Return the slot of the minute in the array returned by {@link #getMinutesOfDayKey()}.
+	 */
+	public int getMinuteOfDaySlot() {
+		return bucket.getMinuteOfDay();
+	}
+
 	public String getMinute() {
 		return minute;
 	}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.redis;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Computes the Redis Cluster hash slot of keys, which is the CRC16 (XMODEM) of the key modulo 16384.
+ * <p>
+ * As with Redis, only the part of the key between the first <code>{</code> and the following <code>}</code> is
+ * hashed when it is not empty, so that keys sharing such a hash tag are stored in the same slot.
+ */
+final class ClusterSlots {
+
+	static final int SLOT_COUNT = 16384;
+
+	private static final int[] CRC16_TABLE = new int[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			int crc = i << 8;
+			for (int bit = 0; bit < 8; bit++) {
+				crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+			}
+			CRC16_TABLE[i] = crc & 0xffff;
+		}
+	}
+
+	private ClusterSlots() {
+	}
+
+	/**
+	 * Return the hash tag that makes all the keys containing the given name share the same slot.
+	 */
+	static String hashTag(String name) {
+		return "{" + name + "}";
+	}
+
+	static int slotOf(String key) {
+		return slotOf(key.getBytes(StandardCharsets.UTF_8));
+	}
+
+	static int slotOf(byte[] key) {
+		int from = 0;
+		int to = key.length;
+		for (int open = 0; open < key.length; open++) {
+			if (key[open] == '{') {
+				for (int close = open + 1; close < key.length; close++) {
+					if (key[close] == '}') {
+						if (close > open + 1) {
+							from = open + 1;
+							to = close;
+						}
+						break;
+					}
+				}
+				break;
+			}
+		}
+		return crc16(key, from, to) & (SLOT_COUNT - 1);
+	}
+
+	static int crc16(byte[] bytes, int from, int to) {
+		int crc = 0;
+		for (int i = from; i < to; i++) {
+			crc = ((crc << 8) ^ CRC16_TABLE[((crc >>> 8) ^ bytes[i]) & 0xff]) & 0xffff;
+		}
+		return crc;
+	}
+
+}
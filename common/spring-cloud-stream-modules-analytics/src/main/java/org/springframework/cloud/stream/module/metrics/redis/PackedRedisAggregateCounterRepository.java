@@ -0,0 +1,497 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.redis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.Chronology;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Days;
+import org.joda.time.Duration;
+import org.joda.time.Interval;
+import org.joda.time.Months;
+import org.joda.time.MutableDateTime;
+import org.joda.time.ReadableDateTime;
+import org.joda.time.Years;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.cloud.stream.module.metrics.AggregateCounter;
+import org.springframework.cloud.stream.module.metrics.AggregateCounterRepository;
+import org.springframework.cloud.stream.module.metrics.AggregateCounterResolution;
+import org.springframework.cloud.stream.module.metrics.TimeBucketCalculator;
+import org.springframework.cloud.stream.module.retry.RedisRetryTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.retry.RetryOperations;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.util.Assert;
+
+/**
+ * Redis implementation of {@link AggregateCounterRepository} storing counts as packed arrays.
+ * <p>
+ * Rather than one hash field per minute, hour, day and month, counts are stored as fixed width big endian 64 bit
+ * slots of Redis strings (see {@link AggregateKeyGenerator#PACKED_VERSION}). This removes the per field overhead of
+ * hashes and lets a range of consecutive buckets be read with a single {@code GETRANGE}. Slots are updated by a Lua
+ * script, hence counts are exact up to 2<sup>53</sup>, the precision of Lua numbers.
+ * <p>
+ * Data written by {@link RedisAggregateCounterRepository} can be carried over with {@link #migrate(String)}.
+ *
+ * @see RedisAggregateCounterRepository
+ */
+public class PackedRedisAggregateCounterRepository implements AggregateCounterRepository {
+
+	private static final Logger logger = LoggerFactory.getLogger(PackedRedisAggregateCounterRepository.class);
+
+	private static final String REPO_PREFIX = "aggregate-counters";
+
+	private static final String HASH_BOOKKEEPING_PREFIX = "metric_meta.aggregatecounters.";
+
+	private static final String PACKED_BOOKKEEPING_PREFIX = "metric_meta.aggregatecounters-v"
+			+ AggregateKeyGenerator.PACKED_VERSION + ".";
+
+	private static final RedisScript<Long> INCREMENT_SCRIPT = script("aggregate-counter-packed-increment.lua");
+
+	private static final RedisScript<Long> MIGRATE_SCRIPT = script("aggregate-counter-packed-migrate.lua");
+
+	private static final RedisScript<Long> MIGRATE_TOTAL_SCRIPT = script("aggregate-counter-packed-migrate-total.lua");
+
+	private static final RedisSerializer<String> KEY_SERIALIZER = new StringRedisSerializer();
+
+	/**
+	 * The number of ranges fetched per round-trip when reading.
+	 */
+	private static final int READ_BATCH_SIZE = 256;
+
+	private final RedisRetryTemplate<String, String> redisTemplate;
+
+	private final TimeBucketCalculator bucketCalculator = new TimeBucketCalculator();
+
+	protected HashOperations<String, String, Long> hashOperations;
+
+	protected SetOperations<String, String> setOperations;
+
+	public PackedRedisAggregateCounterRepository(RedisConnectionFactory redisConnectionFactory,
+			RetryOperations retryOperations) {
+		redisTemplate = new RedisRetryTemplate<String, String>();
+		redisTemplate.setConnectionFactory(redisConnectionFactory);
+		redisTemplate.setKeySerializer(new StringRedisSerializer());
+		redisTemplate.setValueSerializer(new StringRedisSerializer());
+		redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+		redisTemplate.setHashValueSerializer(new GenericToStringSerializer<Long>(Long.class));
+		redisTemplate.setRetryOperations(retryOperations);
+		redisTemplate.afterPropertiesSet();
+		hashOperations = redisTemplate.opsForHash();
+		setOperations = redisTemplate.opsForSet();
+	}
+
+	@Override
+	public long increment(String name, long amount, DateTime dateTime) {
+		AggregateKeyGenerator akg = new AggregateKeyGenerator(REPO_PREFIX, name, bucketCalculator.bucketOf(dateTime),
+				AggregateKeyGenerator.PACKED_VERSION);
+
+		List<String> keys = Arrays.asList(akg.getYearsKey(), akg.getMonthsOfYearKey(), akg.getDaysOfYearKey(),
+				akg.getHoursOfMonthKey(), akg.getMinutesOfDayKey(), bookkeepingKeyFor(name), getMetricKey(name));
+		return redisTemplate.execute(INCREMENT_SCRIPT, keys, akg.getYear(),
+				Integer.toString(akg.getMonthOfYearSlot()), Integer.toString(akg.getDayOfYearSlot()),
+				Integer.toString(akg.getHourOfMonthSlot()), Integer.toString(akg.getMinuteOfDaySlot()),
+				Long.toString(amount));
+	}
+
+	/**
+	 * Provides the key for a named metric.
+	 *
+	 * @param metricName the name of the metric
+	 * @return the redis key under which the metric is stored
+	 */
+	protected String getMetricKey(String metricName) {
+		return REPO_PREFIX + "-v" + AggregateKeyGenerator.PACKED_VERSION + AggregateKeyGenerator.SEPARATOR
+				+ metricName;
+	}
+
+	/**
+	 * Return the key under which are stored the names of the other keys used for the given counter.
+	 */
+	private String bookkeepingKeyFor(String counterName) {
+		return PACKED_BOOKKEEPING_PREFIX + counterName;
+	}
+
+	@Override
+	public AggregateCounter getCounts(String name, int nCounts, AggregateCounterResolution resolution) {
+		return getCounts(name, nCounts, new DateTime(), resolution);
+	}
+
+	@Override
+	public AggregateCounter getCounts(String name, int nCounts, DateTime endDate, AggregateCounterResolution resolution) {
+		Assert.notNull(endDate, "endDate cannot be null");
+		return getCounts(name, new Interval(resolution.minus(endDate, nCounts - 1), endDate), resolution);
+	}
+
+	/**
+	 * Walks the interval the same way as {@link RedisAggregateCounterRepository}, except that each bucket is a range
+	 * of slots in a packed array. Consecutive ranges of the same array are merged, so that e.g. all the hours of a
+	 * given month are read at once.
+	 */
+	@Override
+	public AggregateCounter getCounts(String name, Interval interval, AggregateCounterResolution resolution) {
+
+		DateTime end = interval.getEnd();
+		Chronology c = interval.getChronology();
+
+		long[] counts;
+
+		if (resolution == AggregateCounterResolution.minute) {
+			MutableDateTime dt = new MutableDateTime(interval.getStart());
+			dt.setRounding(c.hourOfDay());
+			Duration step = Duration.standardHours(1);
+			SlotRanges hours = new SlotRanges();
+			while (dt.isBefore(end) || dt.isEqual(end)) {
+				AggregateKeyGenerator akg = keyGenerator(name, dt);
+				hours.add(akg.getMinutesOfDayKey(), akg.getMinuteOfDaySlot(), 60);
+				dt.add(step);
+			}
+			counts = readSlots(hours, interval.getStart().getMinuteOfHour(),
+					interval.toPeriod().toStandardMinutes().getMinutes() + 1);
+
+		}
+		else if (resolution == AggregateCounterResolution.hour) {
+			DateTime cursor = new DateTime(c.dayOfMonth().roundFloor(interval.getStart().getMillis()));
+			SlotRanges days = new SlotRanges();
+			while (cursor.isBefore(end)) {
+				// Step by calendar day, so that days of 23 or 25 hours do not shift the slots of the following ones
+				AggregateKeyGenerator akg = keyGenerator(name, cursor);
+				days.add(akg.getHoursOfMonthKey(), (cursor.getDayOfMonth() - 1) * 24, 24);
+				cursor = cursor.plusDays(1).withTimeAtStartOfDay();
+			}
+
+			counts = readSlots(days, interval.getStart().getHourOfDay(),
+					interval.toPeriod().toStandardHours().getHours() + 1);
+
+		}
+		else if (resolution == AggregateCounterResolution.day) {
+			DateTime startDay = new DateTime(c.dayOfYear().roundFloor(interval.getStart().getMillis()));
+			DateTime endDay = new DateTime(c.dayOfYear().roundFloor(end.plusDays(1).getMillis()));
+			int nDays = Days.daysBetween(startDay, endDay).getDays();
+			DateTime cursor = new DateTime(c.monthOfYear().roundFloor(interval.getStart().getMillis()));
+			SlotRanges months = new SlotRanges();
+			DateTime endMonth = new DateTime(c.monthOfYear().roundCeiling(interval.getEnd().plusMonths(1).getMillis()));
+			while (cursor.isBefore(endMonth)) {
+				AggregateKeyGenerator akg = keyGenerator(name, cursor);
+				months.add(akg.getDaysOfYearKey(), akg.getDayOfYearSlot(), cursor.dayOfMonth().getMaximumValue());
+				cursor = cursor.plusMonths(1);
+			}
+
+			counts = readSlots(months, interval.getStart().getDayOfMonth() - 1, nDays);
+		}
+		else if (resolution == AggregateCounterResolution.month) {
+			DateTime startMonth = new DateTime(c.monthOfYear().roundFloor(interval.getStartMillis()));
+			DateTime endMonth = new DateTime(c.monthOfYear().roundFloor(end.plusMonths(1).getMillis()));
+			int nMonths = Months.monthsBetween(startMonth, endMonth).getMonths();
+			DateTime cursor = new DateTime(c.year().roundFloor(interval.getStartMillis()));
+			SlotRanges years = new SlotRanges();
+			DateTime endYear = new DateTime(c.year().roundCeiling(interval.getEnd().plusYears(1).getMillis()));
+			while (cursor.isBefore(endYear)) {
+				years.add(keyGenerator(name, cursor).getMonthsOfYearKey(), 0, cursor.monthOfYear().getMaximumValue());
+				cursor = cursor.plusYears(1);
+			}
+
+			counts = readSlots(years, interval.getStart().getMonthOfYear() - 1, nMonths);
+		}
+		else if (resolution == AggregateCounterResolution.year) {
+			DateTime startYear = new DateTime(interval.getStart().getYear(), 1, 1, 0, 0);
+			DateTime endYear = new DateTime(end.getYear() + 1, 1, 1, 0, 0);
+			int nYears = Years.yearsBetween(startYear, endYear).getYears();
+			Map<String, Long> yearCounts = hashOperations.entries(keyGenerator(name, new DateTime()).getYearsKey());
+			counts = new long[nYears];
+
+			for (int i = 0; i < nYears; i++) {
+				int year = startYear.plusYears(i).getYear();
+				Long count = yearCounts.get(Integer.toString(year));
+				if (count == null) {
+					count = 0L;
+				}
+				counts[i] = count;
+			}
+		}
+		else {
+			throw new IllegalStateException("Shouldn't happen. Unhandled resolution: " + resolution);
+		}
+		return new AggregateCounter(name, interval, counts, resolution);
+	}
+
+	/**
+	 * Read {@code size} consecutive slots out of the given ranges, skipping the first {@code start} ones. Only the
+	 * slots that are actually needed are fetched, in pipelined batches of {@code GETRANGE}s.
+	 */
+	private long[] readSlots(SlotRanges ranges, int start, int size) {
+		long[] values = new long[size];
+		final List<byte[]> keys = new ArrayList<byte[]>();
+		final List<long[]> byteRanges = new ArrayList<long[]>();
+		List<Integer> targets = new ArrayList<Integer>();
+		int position = -start;
+		for (int i = 0; i < ranges.keys.size(); i++) {
+			int slot = ranges.slots.get(i);
+			int count = ranges.counts.get(i);
+			int from = Math.max(0, -position);
+			int to = Math.min(count, size - position);
+			if (from < to) {
+				keys.add(ranges.keys.get(i));
+				byteRanges.add(new long[] { (long) (slot + from) * AggregateKeyGenerator.SLOT_SIZE,
+						(long) (slot + to) * AggregateKeyGenerator.SLOT_SIZE - 1 });
+				targets.add(position + from);
+			}
+			position += count;
+		}
+		for (int from = 0; from < keys.size(); from += READ_BATCH_SIZE) {
+			final int batchStart = from;
+			final int batchEnd = Math.min(from + READ_BATCH_SIZE, keys.size());
+			List<Object> replies = redisTemplate.execute(new RedisCallback<List<Object>>() {
+
+				@Override
+				public List<Object> doInRedis(RedisConnection connection) {
+					connection.openPipeline();
+					for (int i = batchStart; i < batchEnd; i++) {
+						long[] byteRange = byteRanges.get(i);
+						connection.getRange(keys.get(i), byteRange[0], byteRange[1]);
+					}
+					return connection.closePipeline();
+				}
+			});
+			for (int i = batchStart; i < batchEnd; i++) {
+				byte[] bytes = replies != null ? (byte[]) replies.get(i - batchStart) : null;
+				if (bytes != null) {
+					// Arrays only grow as far as their last written slot, missing slots are zeros
+					int target = targets.get(i);
+					for (int offset = 0; offset + AggregateKeyGenerator.SLOT_SIZE <= bytes.length;
+							offset += AggregateKeyGenerator.SLOT_SIZE) {
+						values[target++] = readSlot(bytes, offset);
+					}
+				}
+			}
+		}
+		return values;
+	}
+
+	private static long readSlot(byte[] bytes, int offset) {
+		long value = 0L;
+		for (int i = 0; i < AggregateKeyGenerator.SLOT_SIZE; i++) {
+			value = (value << 8) | (bytes[offset + i] & 0xFFL);
+		}
+		return value;
+	}
+
+	@Override
+	public void reset(String id) {
+		redisTemplate.delete(getMetricKey(id));
+		String metricMetaKey = bookkeepingKeyFor(id);
+		Set<String> otherKeys = setOperations.members(metricMetaKey);
+		// Add metric-meta SET's key
+		otherKeys.add(metricMetaKey);
+		redisTemplate.delete(otherKeys);
+	}
+
+	/**
+	 * Carry over the data that {@link RedisAggregateCounterRepository} holds for the given counter, adding it to the
+	 * packed data if any. Each source hash is read, copied and deleted by a single script, so that increments still
+	 * written to it by a {@link RedisAggregateCounterRepository} are not lost, and so that the migration can be resumed
+	 * if interrupted without counting anything twice, and is a no-op once complete.
+	 *
+	 * @param name the name of the counter to migrate
+	 * @return the number of hashes that were migrated
+	 */
+	public int migrate(String name) {
+		String hashPrefix = REPO_PREFIX + AggregateKeyGenerator.SEPARATOR + name + AggregateKeyGenerator.SEPARATOR;
+		String hashBookkeepingKey = HASH_BOOKKEEPING_PREFIX + name;
+		Set<String> hashKeys = setOperations.members(hashBookkeepingKey);
+		int migrated = 0;
+		for (String hashKey : hashKeys) {
+			if (!hashKey.startsWith(hashPrefix)) {
+				continue;
+			}
+			if (migrateHash(name, hashKey, hashKey.substring(hashPrefix.length()))) {
+				migrated++;
+			}
+		}
+		redisTemplate.delete(hashBookkeepingKey);
+
+		String hashTotalKey = REPO_PREFIX + AggregateKeyGenerator.SEPARATOR + name;
+		redisTemplate.execute(MIGRATE_TOTAL_SCRIPT, Arrays.asList(hashTotalKey, getMetricKey(name)));
+		logger.info("Migrated {} hashes of aggregate counter '{}'", migrated, name);
+		return migrated;
+	}
+
+	/**
+	 * Migrate all the counters written by {@link RedisAggregateCounterRepository}.
+	 *
+	 * @return the number of hashes that were migrated
+	 * @see #migrate(String)
+	 */
+	public int migrateAll() {
+		List<String> names = redisTemplate.execute(new RedisCallback<List<String>>() {
+
+			@Override
+			public List<String> doInRedis(RedisConnection connection) {
+				List<String> result = new ArrayList<String>();
+				Cursor<byte[]> cursor = connection.scan(ScanOptions.scanOptions()
+						.match(HASH_BOOKKEEPING_PREFIX + "*").count(1000).build());
+				try {
+					while (cursor.hasNext()) {
+						result.add(KEY_SERIALIZER.deserialize(cursor.next()).substring(HASH_BOOKKEEPING_PREFIX.length()));
+					}
+				}
+				finally {
+					try {
+						cursor.close();
+					}
+					catch (IOException e) {
+						logger.warn("Failed to close scan cursor", e);
+					}
+				}
+				return result;
+			}
+		});
+		int migrated = 0;
+		for (String name : names) {
+			migrated += migrate(name);
+		}
+		return migrated;
+	}
+
+	/**
+	 * Add the content of one hash, whose key ends with the given suffix, to the packed data of a counter and delete
+	 * the hash, atomically. The hash is read by the script itself, which is only given where its fields land.
+	 *
+	 * @return whether the hash was migrated, as opposed to having been deleted concurrently
+	 */
+	private boolean migrateHash(String name, String hashKey, String suffix) {
+		String key;
+		String kind;
+		int baseSlot;
+		if ("years".equals(suffix)) {
+			key = keyGenerator(name, new DateTime()).getYearsKey();
+			kind = "fields";
+			baseSlot = 0;
+		}
+		else {
+			// Hashes are named after the time fields they span, e.g. yyyyMMdd holds the hours of that day
+			int year = Integer.parseInt(suffix.substring(0, 4));
+			int month = suffix.length() > 4 ? Integer.parseInt(suffix.substring(4, 6)) : 1;
+			int day = suffix.length() > 6 ? Integer.parseInt(suffix.substring(6, 8)) : 1;
+			int hour = suffix.length() > 8 ? Integer.parseInt(suffix.substring(8, 10)) : 0;
+			// All the fields of a hash land in the same array, the one of its first time unit
+			AggregateKeyGenerator akg = keyGenerator(name, new DateTime(year, month, day, hour, 0, DateTimeZone.UTC));
+			switch (suffix.length()) {
+				case 4:
+					key = akg.getMonthsOfYearKey();
+					break;
+				case 6:
+					key = akg.getDaysOfYearKey();
+					break;
+				case 8:
+					key = akg.getHoursOfMonthKey();
+					break;
+				case 10:
+					key = akg.getMinutesOfDayKey();
+					break;
+				default:
+					throw new IllegalStateException("Unexpected aggregate counter key suffix: " + suffix);
+			}
+			kind = "slots";
+			baseSlot = baseSlotOf(suffix.length(), year, month, day, hour);
+		}
+		Long result = redisTemplate.execute(MIGRATE_SCRIPT,
+				Arrays.asList(hashKey, HASH_BOOKKEEPING_PREFIX + name, key, bookkeepingKeyFor(name)), kind,
+				Integer.toString(baseSlot));
+		return result != null && result > 0;
+	}
+
+	/**
+	 * Return the slot that field 0 of a hash spanning the given time fields maps to. Fields are consecutive time
+	 * units, so field {@code n} maps to that slot plus {@code n}.
+	 */
+	private static int baseSlotOf(int suffixLength, int year, int month, int day, int hour) {
+		// Use UTC so that no wall-clock time is skipped over by a time zone transition
+		switch (suffixLength) {
+			case 4:
+				// Months are numbered from 1
+				return -1;
+			case 6:
+				// Days are numbered from 1
+				return new DateTime(year, month, 1, 0, 0, DateTimeZone.UTC).getDayOfYear() - 2;
+			case 8:
+				return (day - 1) * 24;
+			default:
+				return hour * 60;
+		}
+	}
+
+	private static AggregateKeyGenerator keyGenerator(String name, ReadableDateTime dateTime) {
+		return new AggregateKeyGenerator(REPO_PREFIX, name, dateTime, AggregateKeyGenerator.PACKED_VERSION);
+	}
+
+	private static RedisScript<Long> script(String name) {
+		DefaultRedisScript<Long> script = new DefaultRedisScript<Long>();
+		script.setScriptSource(new ResourceScriptSource(
+				new ClassPathResource(name, PackedRedisAggregateCounterRepository.class)));
+		script.setResultType(Long.class);
+		return script;
+	}
+
+	/**
+	 * Ranges of slots in packed arrays, merging consecutive ranges of the same array.
+	 */
+	private static final class SlotRanges {
+
+		private final List<byte[]> keys = new ArrayList<byte[]>();
+
+		private final List<Integer> slots = new ArrayList<Integer>();
+
+		private final List<Integer> counts = new ArrayList<Integer>();
+
+		private String lastKey;
+
+		private void add(String key, int slot, int count) {
+			int last = keys.size() - 1;
+			if (key.equals(lastKey) && slots.get(last) + counts.get(last) == slot) {
+				counts.set(last, counts.get(last) + count);
+			}
+			else {
+				keys.add(KEY_SERIALIZER.serialize(key));
+				slots.add(slot);
+				counts.add(count);
+				lastKey = key;
+			}
+		}
+	}
+}
@@ -17,6 +17,8 @@
 package org.springframework.cloud.stream.module.metrics.redis;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -28,40 +30,81 @@ import org.joda.time.Duration;
 import org.joda.time.Interval;
 import org.joda.time.Months;
 import org.joda.time.MutableDateTime;
-import org.joda.time.ReadableDateTime;
 import org.joda.time.Years;
 
 import org.springframework.cloud.stream.module.metrics.AggregateCounter;
+import org.springframework.cloud.stream.module.metrics.AggregateCounterBatchWriter;
+import org.springframework.cloud.stream.module.metrics.AggregateCounterIncrement;
 import org.springframework.cloud.stream.module.metrics.AggregateCounterRepository;
 import org.springframework.cloud.stream.module.metrics.AggregateCounterResolution;
-import org.springframework.cloud.stream.module.metrics.MetricUtils;
+import org.springframework.cloud.stream.module.metrics.TimeBucketCalculator;
 import org.springframework.cloud.stream.module.retry.RedisRetryTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
 import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.retry.RetryOperations;
+import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.util.Assert;
 
 /**
  * Redis implementation of {@link AggregateCounterRepository}.
+ * <p>
+ * Increments are applied to all the buckets of a counter by a single Lua script, so that each call
+ * costs one round-trip to the server. Range queries fetch the buckets they span in pipelined batches, and batches of
+ * increments are pipelined too.
+ * <p>
+ * With cluster hash tags, the name of the counter is wrapped in braces in all of its keys, for example
+ * <code>aggregate-counters.{name}.2016</code>, so that Redis Cluster stores them in the same slot. This is required
+ * for the increment script to run against a cluster, and lets the reads of a counter be pipelined to a single node.
+ * Batches of increments are then pipelined slot by slot. Keys written without hash tags are not read back with them
+ * and vice versa.
  *
  * @author Eric Bottard
  * @author Luke Taylor
  * @author Ilayaperumal Gopinathan
  */
-public class RedisAggregateCounterRepository implements AggregateCounterRepository {
+public class RedisAggregateCounterRepository implements AggregateCounterRepository, AggregateCounterBatchWriter {
 
 	private static final String REPO_PREFIX = "aggregate-counters";
 
-	private final RedisRetryTemplate redisTemplate;
+	private static final RedisScript<Long> INCREMENT_SCRIPT = incrementScript();
+
+	private static final RedisSerializer<String> KEY_SERIALIZER = new StringRedisSerializer();
+
+	/**
+	 * The number of bucket hashes fetched per round-trip when reading, and of increments pipelined per round-trip.
+	 */
+	private static final int BATCH_SIZE = 256;
+
+	private final RedisRetryTemplate<String, String> redisTemplate;
+
+	private final TimeBucketCalculator bucketCalculator = new TimeBucketCalculator();
+
+	private final boolean clusterHashTags;
 
 	protected HashOperations<String, String, Long> hashOperations;
 
 	protected SetOperations<String, String> setOperations;
 
 	public RedisAggregateCounterRepository(RedisConnectionFactory redisConnectionFactory, RetryOperations retryOperations) {
+		this(redisConnectionFactory, retryOperations, false);
+	}
+
+	/**
+	 * Create a repository, adding Redis Cluster hash tags to the keys of counters if {@code clusterHashTags}.
+	 */
+	public RedisAggregateCounterRepository(RedisConnectionFactory redisConnectionFactory, RetryOperations retryOperations,
+			boolean clusterHashTags) {
+		this.clusterHashTags = clusterHashTags;
 		redisTemplate = new RedisRetryTemplate<String, String>();
 		redisTemplate.setConnectionFactory(redisConnectionFactory);
 		redisTemplate.setKeySerializer(new StringRedisSerializer());
@@ -80,17 +123,76 @@ public class RedisAggregateCounterRepository implements AggregateCounterReposito
 
 	@Override
 	public long increment(String name, long amount, DateTime dateTime) {
-		final AggregateKeyGenerator akg = new AggregateKeyGenerator(REPO_PREFIX, name, dateTime);
+		final AggregateKeyGenerator akg = new AggregateKeyGenerator(REPO_PREFIX, keyName(name),
+				bucketCalculator.bucketOf(dateTime), AggregateKeyGenerator.HASH_VERSION);
 
-		String bookkeepingKey = bookkeepingKeyFor(name);
+		List<String> keys = Arrays.asList(akg.getYearsKey(), akg.getYearKey(), akg.getMonthKey(), akg.getDayKey(),
+				akg.getHourKey(), bookkeepingKeyFor(name), getMetricKey(name));
+		return redisTemplate.execute(INCREMENT_SCRIPT, keys, akg.getYear(), akg.getMonth(), akg.getDay(),
+				akg.getHour(), akg.getMinute(), Long.toString(amount));
+	}
 
-		doIncrementHash(akg.getYearsKey(), akg.getYear(), amount, bookkeepingKey);
-		doIncrementHash(akg.getYearKey(), akg.getMonth(), amount, bookkeepingKey);
-		doIncrementHash(akg.getMonthKey(), akg.getDay(), amount, bookkeepingKey);
-		doIncrementHash(akg.getDayKey(), akg.getHour(), amount, bookkeepingKey);
-		doIncrementHash(akg.getHourKey(), akg.getMinute(), amount, bookkeepingKey);
+	/**
+	 * Apply the increments with pipelined invocations of the increment script. With cluster hash tags, increments are
+	 * partitioned by the slot of their counter and each partition is pipelined separately, so that every pipeline
+	 * only involves keys of a single slot.
+	 */
+	@Override
+	public long[] increment(List<AggregateCounterIncrement> increments) {
+		final long[] totals = new long[increments.size()];
+		Map<Integer, List<Integer>> partitions = new LinkedHashMap<Integer, List<Integer>>();
+		for (int i = 0; i < increments.size(); i++) {
+			int slot = clusterHashTags ? ClusterSlots.slotOf(getMetricKey(increments.get(i).getName())) : 0;
+			List<Integer> partition = partitions.get(slot);
+			if (partition == null) {
+				partition = new ArrayList<Integer>();
+				partitions.put(slot, partition);
+			}
+			partition.add(i);
+		}
+		final byte[] script = KEY_SERIALIZER.serialize(INCREMENT_SCRIPT.getScriptAsString());
+		for (List<Integer> partition : partitions.values()) {
+			for (int from = 0; from < partition.size(); from += BATCH_SIZE) {
+				final List<Integer> batch = partition.subList(from, Math.min(from + BATCH_SIZE, partition.size()));
+				final List<byte[][]> arguments = new ArrayList<byte[][]>(batch.size());
+				for (int index : batch) {
+					arguments.add(incrementArguments(increments.get(index)));
+				}
+				List<Object> replies = redisTemplate.execute(new RedisCallback<List<Object>>() {
+
+					@Override
+					public List<Object> doInRedis(RedisConnection connection) {
+						connection.openPipeline();
+						for (byte[][] keysAndArgs : arguments) {
+							// The script is sent whole as a script evaluated by its digest may have been flushed
+							connection.eval(script, ReturnType.INTEGER, 7, keysAndArgs);
+						}
+						return connection.closePipeline();
+					}
+				});
+				for (int i = 0; i < batch.size(); i++) {
+					totals[batch.get(i)] = (Long) replies.get(i);
+				}
+			}
+		}
+		return totals;
+	}
 
-		return redisTemplate.boundValueOps(getMetricKey(name)).increment(amount);
+	/**
+	 * Return the keys and arguments of the increment script for the given increment.
+	 */
+	private byte[][] incrementArguments(AggregateCounterIncrement increment) {
+		AggregateKeyGenerator akg = new AggregateKeyGenerator(REPO_PREFIX, keyName(increment.getName()),
+				bucketCalculator.bucketOf(increment.getDateTime()), AggregateKeyGenerator.HASH_VERSION);
+		String[] keysAndArgs = { akg.getYearsKey(), akg.getYearKey(), akg.getMonthKey(), akg.getDayKey(),
+				akg.getHourKey(), bookkeepingKeyFor(increment.getName()), getMetricKey(increment.getName()),
+				akg.getYear(), akg.getMonth(), akg.getDay(), akg.getHour(), akg.getMinute(),
+				Long.toString(increment.getAmount()) };
+		byte[][] result = new byte[keysAndArgs.length][];
+		for (int i = 0; i < keysAndArgs.length; i++) {
+			result[i] = KEY_SERIALIZER.serialize(keysAndArgs[i]);
+		}
+		return result;
 	}
 
 	/**
@@ -100,28 +202,21 @@ public class RedisAggregateCounterRepository implements AggregateCounterReposito
 	 * @return the redis key under which the metric is stored
 	 */
 	protected String getMetricKey(String metricName) {
-		return REPO_PREFIX + AggregateKeyGenerator.SEPARATOR + metricName;
+		return REPO_PREFIX + AggregateKeyGenerator.SEPARATOR + keyName(metricName);
 	}
 
 	/**
 	 * Return the key under which are stored the names of the other keys used for the given counter.
 	 */
 	private String bookkeepingKeyFor(String counterName) {
-		return "metric_meta.aggregatecounters." + counterName;
+		return "metric_meta.aggregatecounters." + keyName(counterName);
 	}
 
 	/**
-	 * Internally increments the given hash key, keeping track of created hash for a given counter, so they can be
-	 * cleaned up when needed.
+	 * Return the name of the counter as it appears in its keys.
 	 */
-	private void doIncrementHash(String key, String hashKey, long amount, String bookkeepingKey) {
-		long newValue = hashOperations.increment(key, hashKey, amount);
-		// TODO: the following test does not necessarily mean that the hash
-		// is new, just that the key inside that hash is new. So we end up
-		// calling add more than needed
-		if (newValue == amount) {
-			setOperations.add(bookkeepingKey, key);
-		}
+	private String keyName(String counterName) {
+		return clusterHashTags ? ClusterSlots.hashTag(counterName) : counterName;
 	}
 
 	@Override
@@ -141,9 +236,9 @@ public class RedisAggregateCounterRepository implements AggregateCounterReposito
 	 * and end buckets we have to retrieve which may contain entries for the interval. For example, when querying
 	 * at day resolution, the number of entries is the number of Joda time days between the start (rounded down to a
 	 * day boundary) and the end plus one day (also rounded down). However, we need load the data from the buckets
-	 * from the month the start day occurs in to the month end day occurs in. These are then concatenated, using the
-	 * start day as the start index into the first array, and writing the total number of entries in sequence from that
-	 * point into the combined result counts array.
+	 * from the month the start day occurs in to the month end day occurs in. These are then read in sequence, using
+	 * the start day as the start index into the first bucket, and writing the total number of entries from that point
+	 * into the result counts array.
 	 */
 	@Override
 	public AggregateCounter getCounts(String name, Interval interval, AggregateCounterResolution resolution) {
@@ -158,25 +253,25 @@ public class RedisAggregateCounterRepository implements AggregateCounterReposito
 			MutableDateTime dt = new MutableDateTime(interval.getStart());
 			dt.setRounding(c.hourOfDay());
 			Duration step = Duration.standardHours(1);
-			List<long[]> hours = new ArrayList<long[]>();
+			BucketRange hours = new BucketRange(false);
 			while (dt.isBefore(end) || dt.isEqual(end)) {
-				hours.add(getMinCountsForHour(name, dt));
+				hours.add(new AggregateKeyGenerator(REPO_PREFIX, keyName(name), dt).getHourKey(), 60);
 				dt.add(step);
 			}
-			counts = MetricUtils.concatArrays(hours, interval.getStart().getMinuteOfHour(),
+			counts = readBuckets(hours, interval.getStart().getMinuteOfHour(),
 					interval.toPeriod().toStandardMinutes().getMinutes() + 1);
 
 		}
 		else if (resolution == AggregateCounterResolution.hour) {
 			DateTime cursor = new DateTime(c.dayOfMonth().roundFloor(interval.getStart().getMillis()));
-			List<long[]> days = new ArrayList<long[]>();
+			BucketRange days = new BucketRange(false);
 			Duration step = Duration.standardHours(24);
 			while (cursor.isBefore(end)) {
-				days.add(getHourCountsForDay(name, cursor));
+				days.add(new AggregateKeyGenerator(REPO_PREFIX, keyName(name), cursor).getDayKey(), 24);
 				cursor = cursor.plus(step);
 			}
 
-			counts = MetricUtils.concatArrays(days, interval.getStart().getHourOfDay(),
+			counts = readBuckets(days, interval.getStart().getHourOfDay(),
 					interval.toPeriod().toStandardHours().getHours() + 1);
 
 		}
@@ -185,28 +280,32 @@ public class RedisAggregateCounterRepository implements AggregateCounterReposito
 			DateTime endDay = new DateTime(c.dayOfYear().roundFloor(end.plusDays(1).getMillis()));
 			int nDays = Days.daysBetween(startDay, endDay).getDays();
 			DateTime cursor = new DateTime(c.monthOfYear().roundFloor(interval.getStart().getMillis()));
-			List<long[]> months = new ArrayList<long[]>();
+			BucketRange months = new BucketRange(true);
 			DateTime endMonth = new DateTime(c.monthOfYear().roundCeiling(interval.getEnd().plusMonths(1).getMillis()));
 			while (cursor.isBefore(endMonth)) {
-				months.add(getDayCountsForMonth(name, cursor));
+				// Days in this month
+				months.add(new AggregateKeyGenerator(REPO_PREFIX, keyName(name), cursor).getMonthKey(),
+						cursor.dayOfMonth().getMaximumValue());
 				cursor = cursor.plusMonths(1);
 			}
 
-			counts = MetricUtils.concatArrays(months, interval.getStart().getDayOfMonth() - 1, nDays);
+			counts = readBuckets(months, interval.getStart().getDayOfMonth() - 1, nDays);
 		}
 		else if (resolution == AggregateCounterResolution.month) {
 			DateTime startMonth = new DateTime(c.monthOfYear().roundFloor(interval.getStartMillis()));
 			DateTime endMonth = new DateTime(c.monthOfYear().roundFloor(end.plusMonths(1).getMillis()));
 			int nMonths = Months.monthsBetween(startMonth, endMonth).getMonths();
 			DateTime cursor = new DateTime(c.year().roundFloor(interval.getStartMillis()));
-			List<long[]> years = new ArrayList<long[]>();
+			BucketRange years = new BucketRange(true);
 			DateTime endYear = new DateTime(c.year().roundCeiling(interval.getEnd().plusYears(1).getMillis()));
 			while (cursor.isBefore(endYear)) {
-				years.add(getMonthCountsForYear(name, cursor));
+				// Months in this year
+				years.add(new AggregateKeyGenerator(REPO_PREFIX, keyName(name), cursor).getYearKey(),
+						cursor.monthOfYear().getMaximumValue());
 				cursor = cursor.plusYears(1);
 			}
 
-			counts = MetricUtils.concatArrays(years, interval.getStart().getMonthOfYear() - 1, nMonths);
+			counts = readBuckets(years, interval.getStart().getMonthOfYear() - 1, nMonths);
 		}
 		else if (resolution == AggregateCounterResolution.year) {
 			DateTime startYear = new DateTime(interval.getStart().getYear(), 1, 1, 0, 0);
@@ -231,54 +330,63 @@ public class RedisAggregateCounterRepository implements AggregateCounterReposito
 	}
 
 	private Map<String, Long> getYearCounts(String name) {
-		AggregateKeyGenerator akg = new AggregateKeyGenerator(REPO_PREFIX, name, new DateTime());
-		return getEntries(akg.getYearsKey());
-	}
-
-	private long[] getMonthCountsForYear(String name, DateTime year) {
-		AggregateKeyGenerator akg = new AggregateKeyGenerator(REPO_PREFIX, name, year);
-		return convertToArray(getEntries(akg.getYearKey()), year.monthOfYear().getMaximumValue(), true); // Months in this year
-	}
-
-	private long[] getDayCountsForMonth(String name, DateTime month) {
-		AggregateKeyGenerator akg = new AggregateKeyGenerator(REPO_PREFIX, name, month.withTimeAtStartOfDay());
-		return convertToArray(getEntries(akg.getMonthKey()), month.dayOfMonth().getMaximumValue(), true); // Days in this month
-	}
-
-	private long[] getHourCountsForDay(String name, DateTime day) {
-		AggregateKeyGenerator akg = new AggregateKeyGenerator(REPO_PREFIX, name, day.withTimeAtStartOfDay());
-		return convertToArray(getEntries(akg.getDayKey()), 24, false);
-	}
-
-	private long[] getMinCountsForHour(String name, ReadableDateTime dateTime) {
-		return getMinCountsForHour(name, dateTime.getYear(), dateTime.getMonthOfYear(), dateTime.getDayOfMonth(),
-				dateTime.getHourOfDay());
-	}
-
-	private long[] getMinCountsForHour(String name, int year, int month, int day, int hour) {
-		DateTime dt = new DateTime().withYear(year).withMonthOfYear(month).withDayOfMonth(day).withHourOfDay(hour);
-		AggregateKeyGenerator akg = new AggregateKeyGenerator(REPO_PREFIX, name, dt);
-		return convertToArray(getEntries(akg.getHourKey()), 60, false);
-	}
-
-	private Map<String, Long> getEntries(String key) {
-		return hashOperations.entries(key);
+		AggregateKeyGenerator akg = new AggregateKeyGenerator(REPO_PREFIX, keyName(name), new DateTime());
+		return hashOperations.entries(akg.getYearsKey());
 	}
 
 	/**
-	 * Will convert a (possibly sparse) map whose keys are String versions of numbers between 0 and size, to an array.
+	 * Read a sequence of (possibly sparse) bucket hashes whose fields are String versions of numbers, and write their
+	 * values directly into an array of {@code size} elements, the first one being field {@code start} of the first
+	 * bucket. Hashes are fetched in pipelined batches, which bounds both the number of round-trips and the size of
+	 * each reply, however large the interval.
 	 */
-	private long[] convertToArray(Map<String, Long> map, int size, boolean unitOffset) {
+	private long[] readBuckets(BucketRange buckets, int start, int size) {
 		long[] values = new long[size];
-		// Some joda fields (e.g. days of month are unit offset)
-		int arrayOffset = unitOffset ? -1 : 0;
-		for (Map.Entry<String, Long> cursor : map.entrySet()) {
-			int offset = Integer.parseInt(cursor.getKey()) + arrayOffset;
-			values[offset] = cursor.getValue();
+		// Where the first field of the current bucket lands in the result. Some joda fields (e.g. days of month)
+		// are unit offset
+		int bucketPosition = -start - (buckets.unitOffset ? 1 : 0);
+		for (int from = 0; from < buckets.keys.size(); from += BATCH_SIZE) {
+			final List<byte[]> batch = buckets.keys.subList(from, Math.min(from + BATCH_SIZE, buckets.keys.size()));
+			List<Object> replies = redisTemplate.execute(new RedisCallback<List<Object>>() {
+
+				@Override
+				public List<Object> doInRedis(RedisConnection connection) {
+					connection.openPipeline();
+					for (byte[] key : batch) {
+						connection.hGetAll(key);
+					}
+					return connection.closePipeline();
+				}
+			});
+			for (int i = 0; i < batch.size(); i++) {
+				@SuppressWarnings("unchecked")
+				Map<byte[], byte[]> fields = replies != null ? (Map<byte[], byte[]>) replies.get(i) : null;
+				if (fields != null) {
+					for (Map.Entry<byte[], byte[]> field : fields.entrySet()) {
+						int index = bucketPosition + (int) parseLong(field.getKey());
+						if (index >= 0 && index < size) {
+							values[index] = parseLong(field.getValue());
+						}
+					}
+				}
+				bucketPosition += buckets.sizes.get(from + i);
+			}
 		}
 		return values;
 	}
 
+	/**
+	 * Parse the decimal representation of a long, as written by {@link GenericToStringSerializer}.
+	 */
+	private static long parseLong(byte[] digits) {
+		boolean negative = digits.length > 0 && digits[0] == '-';
+		long value = 0L;
+		for (int i = negative ? 1 : 0; i < digits.length; i++) {
+			value = value * 10 + (digits[i] - '0');
+		}
+		return negative ? -value : value;
+	}
+
 	@Override
 	public void reset(String id) {
 		redisTemplate.delete(getMetricKey(id));
@@ -288,4 +396,37 @@ public class RedisAggregateCounterRepository implements AggregateCounterReposito
 		otherKeys.add(metricMetaKey);
 		redisTemplate.delete(otherKeys);
 	}
+
+	/**
+	 * Load the script that increments every bucket of a counter, keeping track of the hashes it touches so they can
+	 * be cleaned up when needed.
+	 */
+	private static RedisScript<Long> incrementScript() {
+		DefaultRedisScript<Long> script = new DefaultRedisScript<Long>();
+		script.setScriptSource(new ResourceScriptSource(
+				new ClassPathResource("aggregate-counter-increment.lua", RedisAggregateCounterRepository.class)));
+		script.setResultType(Long.class);
+		return script;
+	}
+
+	/**
+	 * The keys of a sequence of consecutive buckets, along with the number of fields each of them spans.
+	 */
+	private static final class BucketRange {
+
+		private final List<byte[]> keys = new ArrayList<byte[]>();
+
+		private final List<Integer> sizes = new ArrayList<Integer>();
+
+		private final boolean unitOffset;
+
+		private BucketRange(boolean unitOffset) {
+			this.unitOffset = unitOffset;
+		}
+
+		private void add(String key, int size) {
+			keys.add(KEY_SERIALIZER.serialize(key));
+			sizes.add(size);
+		}
+	}
 }
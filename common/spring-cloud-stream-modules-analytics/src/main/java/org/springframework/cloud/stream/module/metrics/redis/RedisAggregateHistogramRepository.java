@@ -0,0 +1,228 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.redis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+
+import org.springframework.cloud.stream.module.metrics.AggregateCounterResolution;
+import org.springframework.cloud.stream.module.metrics.AggregateHistogram;
+import org.springframework.cloud.stream.module.metrics.AggregateHistogramRepository;
+import org.springframework.cloud.stream.module.metrics.HistogramBucket;
+import org.springframework.cloud.stream.module.metrics.TimeBucket;
+import org.springframework.cloud.stream.module.metrics.TimeBucketCalculator;
+import org.springframework.cloud.stream.module.retry.RedisRetryTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.retry.RetryOperations;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.util.Assert;
+
+/**
+ * Redis implementation of {@link AggregateHistogramRepository}.
+ * <p>
+ * Each bucket of a histogram is a hash holding the number, sum, minimum and maximum of the values recorded in it, and
+ * one field per bin of {@link HistogramBucket}. Hashes are keyed by the fields of their bucket down to its resolution
+ * (e.g. {@code 2016022913} for an hour), and a value is recorded in the five buckets it falls into by a single Lua
+ * script. As bins are counted with {@code HINCRBY}, recording from several processes merges their distributions.
+ * Queries fetch the hashes of their buckets in one pipelined round-trip.
+ * <p>
+ * With cluster hash tags, the name of the histogram is wrapped in braces in all of its keys, as done by
+ * {@link RedisAggregateCounterRepository}, so that the record script only touches keys of a single Redis Cluster slot.
+ */
+public class RedisAggregateHistogramRepository implements AggregateHistogramRepository {
+
+	private static final String REPO_PREFIX = "aggregate-histograms";
+
+	private static final String SEPARATOR = ".";
+
+	private static final String COUNT_FIELD = "count";
+
+	private static final String SUM_FIELD = "sum";
+
+	private static final String MIN_FIELD = "min";
+
+	private static final String MAX_FIELD = "max";
+
+	private static final String BIN_FIELD_PREFIX = "b";
+
+	private static final AggregateCounterResolution[] RECORDED_RESOLUTIONS = {AggregateCounterResolution.year,
+			AggregateCounterResolution.month, AggregateCounterResolution.day, AggregateCounterResolution.hour,
+			AggregateCounterResolution.minute};
+
+	private static final RedisScript<Long> RECORD_SCRIPT = recordScript();
+
+	private static final RedisSerializer<String> SERIALIZER = new StringRedisSerializer();
+
+	private final RedisRetryTemplate<String, String> redisTemplate;
+
+	private final TimeBucketCalculator bucketCalculator = new TimeBucketCalculator();
+
+	private final boolean clusterHashTags;
+
+	public RedisAggregateHistogramRepository(RedisConnectionFactory redisConnectionFactory,
+			RetryOperations retryOperations) {
+		this(redisConnectionFactory, retryOperations, false);
+	}
+
+	/**
+	 * Create a repository, adding Redis Cluster hash tags to the keys of histograms if {@code clusterHashTags}.
+	 */
+	public RedisAggregateHistogramRepository(RedisConnectionFactory redisConnectionFactory,
+			RetryOperations retryOperations, boolean clusterHashTags) {
+		this.clusterHashTags = clusterHashTags;
+		redisTemplate = new RedisRetryTemplate<String, String>();
+		redisTemplate.setConnectionFactory(redisConnectionFactory);
+		redisTemplate.setKeySerializer(SERIALIZER);
+		redisTemplate.setValueSerializer(SERIALIZER);
+		redisTemplate.setHashKeySerializer(SERIALIZER);
+		redisTemplate.setHashValueSerializer(SERIALIZER);
+		redisTemplate.setRetryOperations(retryOperations);
+		redisTemplate.afterPropertiesSet();
+	}
+
+	@Override
+	public void record(String name, long value, DateTime dateTime) {
+		Assert.notNull(name, "name cannot be null");
+		TimeBucket bucket = bucketCalculator.bucketOf(dateTime);
+		List<String> keys = new ArrayList<String>(RECORDED_RESOLUTIONS.length + 1);
+		for (AggregateCounterResolution resolution : RECORDED_RESOLUTIONS) {
+			keys.add(getBucketKey(name, bucket, resolution));
+		}
+		keys.add(bookkeepingKeyFor(name));
+		long recorded = Math.max(value, 0L);
+		redisTemplate.execute(RECORD_SCRIPT, keys, Long.toString(recorded),
+				BIN_FIELD_PREFIX + HistogramBucket.binOf(recorded));
+	}
+
+	@Override
+	public void reset(String name) {
+		String bookkeepingKey = bookkeepingKeyFor(name);
+		Set<String> keys = redisTemplate.opsForSet().members(bookkeepingKey);
+		keys.add(bookkeepingKey);
+		redisTemplate.delete(keys);
+	}
+
+	@Override
+	public AggregateHistogram getHistograms(String name, int nCounts, AggregateCounterResolution resolution) {
+		return getHistograms(name, nCounts, new DateTime(), resolution);
+	}
+
+	@Override
+	public AggregateHistogram getHistograms(String name, int nCounts, DateTime end,
+			AggregateCounterResolution resolution) {
+		Assert.notNull(end, "end cannot be null");
+		DateTime start = resolution.minus(end, nCounts - 1);
+		final List<byte[]> keys = new ArrayList<byte[]>(nCounts);
+		DateTime cursor = start;
+		for (int i = 0; i < nCounts; i++) {
+			keys.add(SERIALIZER.serialize(getBucketKey(name, bucketCalculator.bucketOf(cursor), resolution)));
+			cursor = cursor.plus(resolution.unitPeriod);
+		}
+		List<Object> replies = redisTemplate.execute(new RedisCallback<List<Object>>() {
+
+			@Override
+			public List<Object> doInRedis(RedisConnection connection) {
+				connection.openPipeline();
+				for (byte[] key : keys) {
+					connection.hGetAll(key);
+				}
+				return connection.closePipeline();
+			}
+		});
+		HistogramBucket[] buckets = new HistogramBucket[nCounts];
+		for (int i = 0; i < nCounts; i++) {
+			@SuppressWarnings("unchecked")
+			Map<byte[], byte[]> fields = replies != null ? (Map<byte[], byte[]>) replies.get(i) : null;
+			buckets[i] = toBucket(fields);
+		}
+		return new AggregateHistogram(name, new Interval(start, end), buckets, resolution);
+	}
+
+	/**
+	 * Return the key of the hash holding the given bucket of a histogram.
+	 */
+	protected String getBucketKey(String name, TimeBucket bucket, AggregateCounterResolution resolution) {
+		return REPO_PREFIX + SEPARATOR + keyName(name) + SEPARATOR + bucket.toString(resolution);
+	}
+
+	/**
+	 * Return the key under which are stored the names of the hashes used for the given histogram.
+	 */
+	private String bookkeepingKeyFor(String name) {
+		return "metric_meta.aggregatehistograms." + keyName(name);
+	}
+
+	/**
+	 * Return the name of the histogram as it appears in its keys.
+	 */
+	private String keyName(String name) {
+		return clusterHashTags ? ClusterSlots.hashTag(name) : name;
+	}
+
+	private static HistogramBucket toBucket(Map<byte[], byte[]> fields) {
+		if (fields == null || fields.isEmpty()) {
+			return new HistogramBucket();
+		}
+		long count = 0L;
+		long sum = 0L;
+		long min = 0L;
+		long max = 0L;
+		Map<Integer, Long> bins = new HashMap<Integer, Long>();
+		for (Map.Entry<byte[], byte[]> field : fields.entrySet()) {
+			String fieldName = SERIALIZER.deserialize(field.getKey());
+			long value = Long.parseLong(SERIALIZER.deserialize(field.getValue()));
+			if (fieldName.startsWith(BIN_FIELD_PREFIX)) {
+				bins.put(Integer.valueOf(fieldName.substring(BIN_FIELD_PREFIX.length())), value);
+			}
+			else if (COUNT_FIELD.equals(fieldName)) {
+				count = value;
+			}
+			else if (SUM_FIELD.equals(fieldName)) {
+				sum = value;
+			}
+			else if (MIN_FIELD.equals(fieldName)) {
+				min = value;
+			}
+			else if (MAX_FIELD.equals(fieldName)) {
+				max = value;
+			}
+		}
+		return new HistogramBucket(count, sum, min, max, bins);
+	}
+
+	private static RedisScript<Long> recordScript() {
+		DefaultRedisScript<Long> script = new DefaultRedisScript<Long>();
+		script.setScriptSource(new ResourceScriptSource(
+				new ClassPathResource("aggregate-histogram-record.lua", RedisAggregateHistogramRepository.class)));
+		script.setResultType(Long.class);
+		return script;
+	}
+
+}
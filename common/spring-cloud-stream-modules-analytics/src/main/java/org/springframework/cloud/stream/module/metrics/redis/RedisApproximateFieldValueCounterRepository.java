@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.redis;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.springframework.cloud.stream.module.metrics.CountMinSketch;
+import org.springframework.cloud.stream.module.metrics.FieldValueCounter;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.retry.RetryOperations;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.util.Assert;
+
+/**
+ * Redis implementation of FieldValueCounterRepository that uses a bounded amount of memory per counter, whatever
+ * the number of distinct field values.
+ * <p>
+ * Counts are estimated by a Count-Min Sketch stored as a hash, and only the {@code topKCapacity} values with the
+ * highest estimates are kept in the sorted set of the counter. Both are updated by a single Lua script, which applies
+ * all the increments of a batch in one round-trip. Hence {@link #findOne(String)} only returns those values, and
+ * counts may be overestimated. Decrements are not supported.
+ *
+ * @see CountMinSketch
+ */
+public class RedisApproximateFieldValueCounterRepository extends RedisFieldValueCounterRepository {
+
+	private static final String SKETCH_PREFIX = "approximate-fieldvaluecounters-sketch.";
+
+	private static final RedisScript<String> INCREMENT_SCRIPT = incrementScript();
+
+	private final int topKCapacity;
+
+	private final int sketchWidth;
+
+	private final int sketchDepth;
+
+	/**
+	 * Create a repository that tracks the given number of field values per counter.
+	 *
+	 * @param topKCapacity the number of field values with the highest counts that are tracked
+	 * @param sketchWidth the number of counts per row of the sketch, which bounds the estimation error
+	 * @param sketchDepth the number of rows of the sketch, which bounds the probability of exceeding that error
+	 */
+	public RedisApproximateFieldValueCounterRepository(RedisConnectionFactory connectionFactory,
+			RetryOperations retryOperations, int topKCapacity, int sketchWidth, int sketchDepth) {
+		super(connectionFactory, "approximate-fieldvaluecounters.", retryOperations);
+		Assert.isTrue(topKCapacity > 0, "topKCapacity must be positive");
+		Assert.isTrue(sketchWidth > 0, "sketchWidth must be positive");
+		Assert.isTrue(sketchDepth > 0, "sketchDepth must be positive");
+		this.topKCapacity = topKCapacity;
+		this.sketchWidth = sketchWidth;
+		this.sketchDepth = sketchDepth;
+	}
+
+	@Override
+	public void increment(String counterName, String fieldName, double score) {
+		increment(counterName, Collections.singletonMap(fieldName, score));
+	}
+
+	/**
+	 * Applies all the increments in a single round-trip.
+	 */
+	@Override
+	public void increment(String counterName, Map<String, Double> scores) {
+		if (scores.isEmpty()) {
+			return;
+		}
+		Object[] args = new Object[3 + scores.size() * (2 + sketchDepth)];
+		args[0] = counterName;
+		args[1] = Integer.toString(topKCapacity);
+		args[2] = Integer.toString(sketchDepth);
+		int i = 3;
+		for (Map.Entry<String, Double> entry : scores.entrySet()) {
+			Assert.isTrue(entry.getValue() >= 0, "Count-Min Sketches only support positive increments");
+			int[] cells = CountMinSketch.cells(entry.getKey(), sketchWidth, sketchDepth);
+			args[i++] = entry.getKey();
+			args[i++] = Double.toString(entry.getValue());
+			for (int row = 0; row < sketchDepth; row++) {
+				args[i++] = Integer.toString(row * sketchWidth + cells[row]);
+			}
+		}
+		redisTemplate.execute(INCREMENT_SCRIPT,
+				Arrays.asList(sketchKeyFor(counterName), getMetricKey(counterName), getIndexKey()), args);
+	}
+
+	@Override
+	public void decrement(String counterName, String fieldName, double score) {
+		throw new UnsupportedOperationException("Approximate counters can not be decremented");
+	}
+
+	@Override
+	public void reset(String counterName) {
+		redisTemplate.delete(Arrays.asList(getMetricKey(counterName), sketchKeyFor(counterName)));
+		redisTemplate.opsForSet().remove(getIndexKey(), counterName);
+	}
+
+	@Override
+	public FieldValueCounter findOne(String name) {
+		return findTopK(name, topKCapacity);
+	}
+
+	private String sketchKeyFor(String counterName) {
+		return SKETCH_PREFIX + counterName;
+	}
+
+	private static RedisScript<String> incrementScript() {
+		DefaultRedisScript<String> script = new DefaultRedisScript<String>();
+		script.setScriptSource(new ResourceScriptSource(new ClassPathResource(
+				"approximate-field-value-counter-increment.lua", RedisApproximateFieldValueCounterRepository.class)));
+		script.setResultType(String.class);
+		return script;
+	}
+
+}
@@ -15,26 +15,62 @@
  */
 package org.springframework.cloud.stream.module.metrics.redis;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.springframework.cloud.stream.module.metrics.FieldValueCounter;
 import org.springframework.cloud.stream.module.metrics.FieldValueCounterRepository;
 import org.springframework.cloud.stream.module.retry.StringRedisRetryTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.retry.RetryOperations;
+import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.util.Assert;
 
+/**
+ * Redis implementation of FieldValueCounterRepository, storing each counter as a sorted set.
+ * <p>
+ * The names of the counters are kept in an index set, updated along with the counters, so that listing them does not
+ * require scanning the whole keyspace. Counters written before the index existed are picked up by a one-off,
+ * incremental {@code SCAN} the first time counters are listed. Its completion is recorded in Redis, so that it runs
+ * once per store rather than once per process.
+ */
 public class RedisFieldValueCounterRepository implements FieldValueCounterRepository {
 
+	private static final RedisScript<String> INCREMENT_SCRIPT = incrementScript();
+
+	/**
+	 * The number of counter names added to the index per round-trip when rebuilding it.
+	 */
+	private static final int INDEX_BATCH_SIZE = 1000;
+
 	private final String metricPrefix;
 
-	private final StringRedisRetryTemplate redisTemplate;
+	private final String indexKey;
+
+	/**
+	 * The key set once the index holds all the counters written before it existed.
+	 */
+	private final String indexedMarkerKey;
+
+	protected final StringRedisRetryTemplate redisTemplate;
+
+	private volatile boolean indexed;
 
 	public RedisFieldValueCounterRepository(RedisConnectionFactory connectionFactory, RetryOperations retryOperations) {
 		this(connectionFactory, "fieldvaluecounters.", retryOperations);
@@ -45,6 +81,9 @@ public class RedisFieldValueCounterRepository implements FieldValueCounterReposi
 		Assert.notNull(connectionFactory);
 		Assert.hasText(metricPrefix, "metric prefix cannot be empty");
 		this.metricPrefix = metricPrefix;
+		this.indexKey = "metric_meta." + (metricPrefix.endsWith(".")
+				? metricPrefix.substring(0, metricPrefix.length() - 1) : metricPrefix);
+		this.indexedMarkerKey = indexKey + ".indexed";
 		redisTemplate = new StringRedisRetryTemplate(connectionFactory, retryOperations);
 		// avoids proxy
 		redisTemplate.setExposeConnection(true);
@@ -65,29 +104,113 @@ public class RedisFieldValueCounterRepository implements FieldValueCounterReposi
 		}
 	}
 
+	@Override
+	public FieldValueCounter findTopK(String name, int k) {
+		Assert.notNull(name, "The name of the FieldValueCounter must not be null");
+		Assert.isTrue(k > 0, "k must be positive");
+		Set<ZSetOperations.TypedTuple<String>> rangeWithScore = this.redisTemplate
+				.boundZSetOps(getMetricKey(name)).reverseRangeWithScores(0, k - 1);
+		// Redis deletes sorted sets as soon as they are empty
+		if (rangeWithScore.isEmpty()) {
+			return null;
+		}
+		Map<String, Double> values = new LinkedHashMap<String, Double>(rangeWithScore.size() * 2);
+		for (ZSetOperations.TypedTuple<String> typedTuple : rangeWithScore) {
+			values.put(typedTuple.getValue(), typedTuple.getScore());
+		}
+		return new FieldValueCounter(name, values);
+	}
+
 	@Override
 	public Collection<String> list() {
-		Set<String> keys = redisTemplate.keys(getMetricKey("*"));
-		Set<String> names = new HashSet<>(keys.size());
-		for (String key : keys) {
-			names.add(getCounterName(key));
+		if (!indexed) {
+			if (Boolean.TRUE.equals(redisTemplate.hasKey(indexedMarkerKey))) {
+				indexed = true;
+			}
+			else {
+				rebuildIndex();
+			}
 		}
-		return names;
+		return redisTemplate.opsForSet().members(indexKey);
+	}
+
+	/**
+	 * Add the names of all existing counters to the index, using an incremental {@code SCAN} of the keyspace rather
+	 * than a blocking {@code KEYS}, then record in Redis that the index is complete. This happens automatically the
+	 * first time counters are listed against a store that was not indexed yet.
+	 */
+	public void rebuildIndex() {
+		List<String> names = redisTemplate.execute(new RedisCallback<List<String>>() {
+
+			@Override
+			public List<String> doInRedis(RedisConnection connection) {
+				List<String> result = new ArrayList<String>();
+				Cursor<byte[]> cursor = connection.scan(ScanOptions.scanOptions().match(getMetricKey("*"))
+						.count(INDEX_BATCH_SIZE).build());
+				try {
+					while (cursor.hasNext()) {
+						result.add(getCounterName(redisTemplate.getStringSerializer().deserialize(cursor.next())));
+					}
+				}
+				finally {
+					try {
+						cursor.close();
+					}
+					catch (IOException e) {
+						// Nothing more to read anyway
+					}
+				}
+				return result;
+			}
+		});
+		for (int from = 0; from < names.size(); from += INDEX_BATCH_SIZE) {
+			List<String> batch = names.subList(from, Math.min(from + INDEX_BATCH_SIZE, names.size()));
+			redisTemplate.opsForSet().add(indexKey, batch.toArray(new String[batch.size()]));
+		}
+		redisTemplate.opsForValue().set(indexedMarkerKey, "true");
+		indexed = true;
 	}
 
 	@Override
 	public void increment(String counterName, String fieldName, double score) {
-		redisTemplate.boundZSetOps(getMetricKey(counterName)).incrementScore(fieldName, score);
+		redisTemplate.execute(INCREMENT_SCRIPT, Arrays.asList(getMetricKey(counterName), indexKey), counterName,
+				Double.toString(score), fieldName);
+	}
+
+	/**
+	 * Applies all the increments in a single round-trip.
+	 */
+	@Override
+	public void increment(String counterName, Map<String, Double> scores) {
+		if (scores.isEmpty()) {
+			return;
+		}
+		Object[] args = new Object[1 + 2 * scores.size()];
+		args[0] = counterName;
+		int i = 1;
+		for (Map.Entry<String, Double> entry : scores.entrySet()) {
+			args[i++] = Double.toString(entry.getValue());
+			args[i++] = entry.getKey();
+		}
+		redisTemplate.execute(INCREMENT_SCRIPT, Arrays.asList(getMetricKey(counterName), indexKey), args);
 	}
 
 	@Override
 	public void decrement(String counterName, String fieldName, double score) {
-		redisTemplate.boundZSetOps(getMetricKey(counterName)).incrementScore(fieldName, -score);
+		increment(counterName, fieldName, -score);
 	}
 
 	@Override
 	public void reset(String counterName) {
 		redisTemplate.delete(getMetricKey(counterName));
+		redisTemplate.opsForSet().remove(indexKey, counterName);
+	}
+
+	/**
+	 * Return the key of the set holding the names of all the counters.
+	 */
+	protected String getIndexKey() {
+		return indexKey;
 	}
 
 
@@ -121,4 +244,12 @@ public class RedisFieldValueCounterRepository implements FieldValueCounterReposi
 		return values;
 	}
 
+	private static RedisScript<String> incrementScript() {
+		DefaultRedisScript<String> script = new DefaultRedisScript<String>();
+		script.setScriptSource(new ResourceScriptSource(
+				new ClassPathResource("field-value-counter-increment.lua", RedisFieldValueCounterRepository.class)));
+		script.setResultType(String.class);
+		return script;
+	}
+
 }
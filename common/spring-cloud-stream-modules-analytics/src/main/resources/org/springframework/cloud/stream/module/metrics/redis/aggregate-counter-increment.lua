@@ -0,0 +1,12 @@
+-- Applies one increment to every bucket of an aggregate counter in a single round-trip.
+--
+-- KEYS[1..5] the years, year, month, day and hour hashes
+-- KEYS[6]    the bookkeeping set tracking the hashes of the counter
+-- KEYS[7]    the total
+-- ARGV[1..5] the hash field to increment in each of KEYS[1..5]
+-- ARGV[6]    the amount to add
+for i = 1, 5 do
+	redis.call('HINCRBY', KEYS[i], ARGV[i], ARGV[6])
+end
+redis.call('SADD', KEYS[6], KEYS[1], KEYS[2], KEYS[3], KEYS[4], KEYS[5])
+return redis.call('INCRBY', KEYS[7], ARGV[6])
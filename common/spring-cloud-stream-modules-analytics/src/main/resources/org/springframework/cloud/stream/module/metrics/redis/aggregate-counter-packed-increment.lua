@@ -0,0 +1,25 @@
+-- Applies one increment to every bucket of a packed aggregate counter in a single round-trip.
+--
+-- KEYS[1]    the years hash
+-- KEYS[2..5] the months of year, days of year, hours of month and minutes of day arrays
+-- KEYS[6]    the bookkeeping set tracking the keys of the counter
+-- KEYS[7]    the total
+-- ARGV[1]    the field of the years hash to increment
+-- ARGV[2..5] the slot to increment in each of KEYS[2..5]
+-- ARGV[6]    the amount to add
+local amount = tonumber(ARGV[6])
+local function add(key, slot)
+	local offset = slot * 8
+	local current = redis.call('GETRANGE', key, offset, offset + 7)
+	local value = amount
+	if string.len(current) == 8 then
+		value = value + struct.unpack('>i8', current)
+	end
+	redis.call('SETRANGE', key, offset, struct.pack('>i8', value))
+end
+redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[6])
+for i = 2, 5 do
+	add(KEYS[i], tonumber(ARGV[i]))
+end
+redis.call('SADD', KEYS[6], KEYS[1], KEYS[2], KEYS[3], KEYS[4], KEYS[5])
+return redis.call('INCRBY', KEYS[7], ARGV[6])
@@ -0,0 +1,12 @@
+-- Moves the total written by RedisAggregateCounterRepository into a packed aggregate counter, deleting it in the same
+-- step so that an interrupted migration can be resumed without counting it twice.
+--
+-- KEYS[1] the total to migrate
+-- KEYS[2] the total of the packed counter
+local total = redis.call('GET', KEYS[1])
+if not total then
+	return 0
+end
+redis.call('INCRBY', KEYS[2], total)
+redis.call('DEL', KEYS[1])
+return 1
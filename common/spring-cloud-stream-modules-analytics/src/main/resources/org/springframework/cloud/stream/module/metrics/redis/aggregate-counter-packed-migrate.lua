@@ -0,0 +1,33 @@
+-- Moves the counts of a hash written by RedisAggregateCounterRepository into a packed aggregate counter. The hash is
+-- read, added and deleted in the same step, so that increments still written to it are not lost, and so that an
+-- interrupted migration can be resumed without counting anything twice.
+--
+-- KEYS[1] the hash to migrate
+-- KEYS[2] the bookkeeping set tracking the hashes of the counter
+-- KEYS[3] the array, or the years hash, the counts are added to
+-- KEYS[4] the bookkeeping set tracking the keys of the packed counter
+-- ARGV[1] 'slots' if KEYS[3] is an array, 'fields' if it is a hash
+-- ARGV[2] for arrays, the slot that field 0 of the hash maps to, each field mapping to that slot plus its value
+local entries = redis.call('HGETALL', KEYS[1])
+if #entries == 0 then
+	redis.call('SREM', KEYS[2], KEYS[1])
+	return 0
+end
+local base = tonumber(ARGV[2])
+for i = 1, #entries, 2 do
+	if ARGV[1] == 'fields' then
+		redis.call('HINCRBY', KEYS[3], entries[i], entries[i + 1])
+	else
+		local offset = (base + tonumber(entries[i])) * 8
+		local current = redis.call('GETRANGE', KEYS[3], offset, offset + 7)
+		local value = tonumber(entries[i + 1])
+		if string.len(current) == 8 then
+			value = value + struct.unpack('>i8', current)
+		end
+		redis.call('SETRANGE', KEYS[3], offset, struct.pack('>i8', value))
+	end
+end
+redis.call('SADD', KEYS[4], KEYS[3])
+redis.call('DEL', KEYS[1])
+redis.call('SREM', KEYS[2], KEYS[1])
+return 1
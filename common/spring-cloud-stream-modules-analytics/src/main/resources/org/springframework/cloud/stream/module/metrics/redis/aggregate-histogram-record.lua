@@ -0,0 +1,23 @@
+-- Records one value in every bucket of an aggregate histogram in a single round-trip.
+--
+-- KEYS[1..5] the year, month, day, hour and minute hashes
+-- KEYS[6]    the bookkeeping set tracking the hashes of the histogram
+-- ARGV[1]    the value
+-- ARGV[2]    the hash field counting the values of the bin the value falls into
+local value = tonumber(ARGV[1])
+local count
+for i = 1, 5 do
+	count = redis.call('HINCRBY', KEYS[i], 'count', 1)
+	redis.call('HINCRBY', KEYS[i], 'sum', ARGV[1])
+	redis.call('HINCRBY', KEYS[i], ARGV[2], 1)
+	local min = redis.call('HGET', KEYS[i], 'min')
+	if not min or value < tonumber(min) then
+		redis.call('HSET', KEYS[i], 'min', ARGV[1])
+	end
+	local max = redis.call('HGET', KEYS[i], 'max')
+	if not max or value > tonumber(max) then
+		redis.call('HSET', KEYS[i], 'max', ARGV[1])
+	end
+end
+redis.call('SADD', KEYS[6], KEYS[1], KEYS[2], KEYS[3], KEYS[4], KEYS[5])
+return count
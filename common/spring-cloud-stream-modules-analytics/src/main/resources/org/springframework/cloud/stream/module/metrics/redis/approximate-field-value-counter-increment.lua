@@ -0,0 +1,33 @@
+-- Adds to the estimated counts of field values, and keeps track of the values with the highest estimates.
+--
+-- KEYS[1]    the hash holding the cells of the Count-Min Sketch
+-- KEYS[2]    the sorted set of the tracked values, scored by their estimates
+-- KEYS[3]    the index set holding the names of all counters
+-- ARGV[1]    the name of the counter
+-- ARGV[2]    the maximum number of tracked values
+-- ARGV[3]    the number of rows of the sketch
+-- ARGV[4..n] for each field value, the value, the amount to add and the cells counting it, one per row
+redis.call('SADD', KEYS[3], ARGV[1])
+local capacity = tonumber(ARGV[2])
+local depth = tonumber(ARGV[3])
+local estimate
+for i = 4, #ARGV, depth + 2 do
+	local value = ARGV[i]
+	estimate = nil
+	for j = i + 2, i + 1 + depth do
+		local count = tonumber(redis.call('HINCRBYFLOAT', KEYS[1], ARGV[j], ARGV[i + 1]))
+		if not estimate or count < estimate then
+			estimate = count
+		end
+	end
+	if redis.call('ZSCORE', KEYS[2], value) or redis.call('ZCARD', KEYS[2]) < capacity then
+		redis.call('ZADD', KEYS[2], estimate, value)
+	else
+		local lowest = redis.call('ZRANGE', KEYS[2], 0, 0, 'WITHSCORES')
+		if estimate > tonumber(lowest[2]) then
+			redis.call('ZREM', KEYS[2], lowest[1])
+			redis.call('ZADD', KEYS[2], estimate, value)
+		end
+	end
+end
+return tostring(estimate)
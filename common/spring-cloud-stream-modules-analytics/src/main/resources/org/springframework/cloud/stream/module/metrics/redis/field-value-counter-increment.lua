@@ -0,0 +1,12 @@
+-- Increments field values of a counter, keeping track of its name in the index of all counters.
+--
+-- KEYS[1]    the sorted set of the counter
+-- KEYS[2]    the index set holding the names of all counters
+-- ARGV[1]    the name of the counter
+-- ARGV[2..n] pairs of amount to add and field value
+redis.call('SADD', KEYS[2], ARGV[1])
+local score
+for i = 2, #ARGV, 2 do
+	score = redis.call('ZINCRBY', KEYS[1], ARGV[i], ARGV[i + 1])
+end
+return score
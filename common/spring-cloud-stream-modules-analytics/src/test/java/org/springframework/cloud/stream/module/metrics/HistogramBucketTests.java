@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link HistogramBucket}.
+ */
+public class HistogramBucketTests {
+
+	@Test
+	public void testBinBounds() {
+		int previous = -1;
+		for (long value = 0; value < 100000; value++) {
+			int bin = HistogramBucket.binOf(value);
+			assertTrue("value " + value, bin == previous || bin == previous + 1);
+			assertTrue("value " + value, value <= HistogramBucket.highestValueOf(bin));
+			assertTrue("value " + value, bin == 0 || value > HistogramBucket.highestValueOf(bin - 1));
+			previous = bin;
+		}
+		assertEquals(Long.MAX_VALUE, HistogramBucket.highestValueOf(HistogramBucket.binOf(Long.MAX_VALUE)));
+		assertEquals(0, HistogramBucket.binOf(-5));
+	}
+
+	@Test
+	public void testPercentilesWithinRelativeError() {
+		Random random = new Random(42);
+		long[] values = new long[10000];
+		HistogramBucket bucket = new HistogramBucket();
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (long) (Math.exp(random.nextGaussian() * 2 + 8));
+			bucket.record(values[i]);
+		}
+		Arrays.sort(values);
+		for (double percentile : new double[] {1, 10, 50, 90, 99, 99.9}) {
+			long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+			long estimate = bucket.getValueAtPercentile(percentile);
+			assertTrue("p" + percentile + ": " + estimate + " vs " + exact,
+					estimate >= exact && estimate <= exact + exact / HistogramBucket.SUB_BINS + 1);
+		}
+		assertEquals(values[0], bucket.getValueAtPercentile(0));
+		assertEquals(values[values.length - 1], bucket.getValueAtPercentile(100));
+		assertEquals(values.length, bucket.getCount());
+		assertEquals(values[0], bucket.getMin());
+		assertEquals(values[values.length - 1], bucket.getMax());
+	}
+
+	@Test
+	public void testMerge() {
+		HistogramBucket low = new HistogramBucket();
+		HistogramBucket high = new HistogramBucket();
+		HistogramBucket all = new HistogramBucket();
+		for (int i = 1; i <= 100; i++) {
+			(i <= 50 ? low : high).record(i * 10);
+			all.record(i * 10);
+		}
+		HistogramBucket merged = new HistogramBucket();
+		merged.merge(low);
+		merged.merge(high);
+		merged.merge(new HistogramBucket());
+		assertEquals(all.getBins(), merged.getBins());
+		assertEquals(all.getSum(), merged.getSum());
+		assertEquals(10, merged.getMin());
+		assertEquals(1000, merged.getMax());
+		assertEquals(all.getValueAtPercentile(99), merged.getValueAtPercentile(99));
+	}
+
+	@Test
+	public void testEmpty() {
+		HistogramBucket bucket = new HistogramBucket();
+		assertEquals(0, bucket.getValueAtPercentile(99));
+		assertEquals(0, bucket.getMin());
+		assertEquals(0, bucket.getMax());
+		assertEquals(0.0, bucket.getMean(), 0.0);
+	}
+
+}
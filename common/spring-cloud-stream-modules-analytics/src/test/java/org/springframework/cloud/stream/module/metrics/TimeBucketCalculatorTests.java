@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.junit.Test;
+
+/**
+ * Checks that {@link TimeBucket}s computed by a {@link TimeBucketCalculator} match the fields of the equivalent Joda
+ * {@link DateTime}, in particular around offset transitions.
+ */
+public class TimeBucketCalculatorTests {
+
+	private static final DateTimeFormatter FORMATTER = DateTimeFormat.forPattern("yyyyMMddHHmm");
+
+	private static final String[] ZONES = {"UTC", "America/New_York", "Europe/Paris", "Australia/Lord_Howe",
+			"Asia/Kathmandu", "America/St_Johns", "Europe/Amsterdam"};
+
+	private static final long FROM = new DateTime(1935, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+
+	private static final long TO = new DateTime(2030, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+
+	@Test
+	public void testAroundTransitions() {
+		for (String id : ZONES) {
+			DateTimeZone zone = DateTimeZone.forID(id);
+			TimeBucketCalculator calculator = new TimeBucketCalculator(zone);
+			long previous = FROM;
+			long transition = zone.nextTransition(FROM);
+			// Zones return the given instant when there are no more transitions
+			while (transition > previous && transition < TO) {
+				// Sweep both ways so that cached buckets are met across the transition
+				for (long t = transition - 7200000L; t < transition + 7200000L; t += 17000L) {
+					assertMatches(zone, t, calculator.bucketOf(t));
+				}
+				for (long t = transition + 7200000L; t > transition - 7200000L; t -= 17000L) {
+					assertMatches(zone, t, calculator.bucketOf(t));
+				}
+				previous = transition;
+				transition = zone.nextTransition(transition);
+			}
+		}
+	}
+
+	@Test
+	public void testRandomInstants() {
+		Random random = new Random(42L);
+		for (String id : ZONES) {
+			DateTimeZone zone = DateTimeZone.forID(id);
+			TimeBucketCalculator calculator = new TimeBucketCalculator(zone);
+			for (int i = 0; i < 20000; i++) {
+				long t = FROM + (long) (random.nextDouble() * (TO - FROM));
+				assertMatches(zone, t, calculator.bucketOf(t));
+				// And a close instant, most likely in the same bucket
+				long next = t + random.nextInt(120000);
+				assertMatches(zone, next, calculator.bucketOf(next));
+			}
+		}
+	}
+
+	@Test
+	public void testCurrentMinuteIsCached() {
+		TimeBucketCalculator calculator = new TimeBucketCalculator(DateTimeZone.forID("Europe/Paris"));
+		TimeBucket bucket = calculator.bucketOf(new DateTime(2016, 3, 27, 1, 59, 0, DateTimeZone.forID("Europe/Paris")));
+		assertSame(bucket, calculator.bucketOf(bucket.getEnd() - 1));
+		assertEquals("201603270159", bucket.toString());
+		// Clocks jump from 02:00 to 03:00
+		assertEquals("201603270300", calculator.bucketOf(bucket.getEnd()).toString());
+	}
+
+	@Test
+	public void testInstantsOfOtherZones() {
+		TimeBucketCalculator calculator = new TimeBucketCalculator(DateTimeZone.UTC);
+		DateTimeZone zone = DateTimeZone.forID("Asia/Kathmandu");
+		DateTime dateTime = new DateTime(2016, 2, 29, 23, 59, zone);
+		assertMatches(zone, dateTime.getMillis(), calculator.bucketOf(dateTime));
+	}
+
+	private static void assertMatches(DateTimeZone zone, long timestamp, TimeBucket bucket) {
+		String message = zone + " at " + timestamp;
+		assertTrue(message, bucket.contains(timestamp));
+		for (long t : new long[] {timestamp, bucket.getStart(), bucket.getEnd() - 1}) {
+			DateTime expected = new DateTime(t, zone);
+			assertEquals(message, expected.getYear(), bucket.getYear());
+			assertEquals(message, expected.getMonthOfYear(), bucket.getMonthOfYear());
+			assertEquals(message, expected.getDayOfMonth(), bucket.getDayOfMonth());
+			assertEquals(message, expected.getDayOfYear(), bucket.getDayOfYear());
+			assertEquals(message, expected.getHourOfDay(), bucket.getHourOfDay());
+			assertEquals(message, expected.getMinuteOfHour(), bucket.getMinuteOfHour());
+			assertEquals(message, expected.getMinuteOfDay(), bucket.getMinuteOfDay());
+			assertEquals(message, FORMATTER.print(expected), bucket.toString());
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.cloud.stream.module.metrics.memory.InMemoryAggregateCounterRepository;
+
+/**
+ * Tests for {@link AsyncAggregateCounterRepository}.
+ */
+public class AsyncAggregateCounterRepositoryTests {
+
+	private final BlockingRepository store = new BlockingRepository();
+
+	private final AsyncAggregateCounterRepository repository = new AsyncAggregateCounterRepository(store, 1, 10, 100L);
+
+	@After
+	public void destroy() throws Exception {
+		store.latch.countDown();
+		repository.destroy();
+	}
+
+	@Test
+	public void testWritesAreSummed() throws Exception {
+		store.latch.countDown();
+		DateTime now = new DateTime();
+		assertEquals(1L, repository.increment("c", 1, now));
+		assertEquals(3L, repository.increment("c", 2, now));
+	}
+
+	@Test
+	public void testStuckWriteTimesOut() {
+		try {
+			repository.increment("c", 1, new DateTime());
+			fail("the store does not answer");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private static class BlockingRepository extends InMemoryAggregateCounterRepository {
+
+		private final CountDownLatch latch = new CountDownLatch(1);
+
+		@Override
+		public long increment(String name, long amount, DateTime dateTime) {
+			try {
+				latch.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return super.increment(name, amount, dateTime);
+		}
+	}
+
+}
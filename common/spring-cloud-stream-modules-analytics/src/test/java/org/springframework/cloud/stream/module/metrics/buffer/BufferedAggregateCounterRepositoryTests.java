@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.cloud.stream.module.metrics.AggregateCounterResolution;
+import org.springframework.cloud.stream.module.metrics.memory.InMemoryAggregateCounterRepository;
+
+/**
+ * Tests for {@link BufferedAggregateCounterRepository}.
+ */
+public class BufferedAggregateCounterRepositoryTests {
+
+	private final FailingRepository store = new FailingRepository();
+
+	private final BufferedAggregateCounterRepository repository = new BufferedAggregateCounterRepository(store,
+			60000L, 1000, 2);
+
+	@After
+	public void destroy() throws Exception {
+		store.failing = false;
+		repository.destroy();
+	}
+
+	@Test
+	public void testBackoffAfterFailedFlush() {
+		DateTime now = new DateTime();
+		store.failing = true;
+		repository.increment("a", 1, now);
+		repository.increment("b", 1, now);
+		try {
+			repository.increment("c", 1, now);
+			fail("the buffer is full and cannot be flushed");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals(1, store.attempts);
+		assertEquals(1, repository.getFailedFlushCount());
+		assertTrue(repository.isBackingOff());
+
+		// Existing buckets keep counting, without trying to flush while backing off
+		repository.increment("a", 2, now);
+		try {
+			repository.increment("c", 1, now);
+			fail("the buffer is still full");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals(1, store.attempts);
+		assertEquals(2, repository.getBufferedBuckets());
+
+		store.failing = false;
+		repository.flush();
+		assertFalse(repository.isBackingOff());
+		assertEquals(0, repository.getBufferedBuckets());
+		assertEquals(3, store.getCounts("a", 1, AggregateCounterResolution.day).getTotal());
+		assertEquals(1, store.getCounts("b", 1, AggregateCounterResolution.day).getTotal());
+		repository.increment("c", 1, now);
+		assertEquals(1, repository.getBufferedBuckets());
+	}
+
+	@Test
+	public void testResetDropsPendingDeltas() {
+		DateTime now = new DateTime();
+		store.failing = true;
+		repository.increment("a", 3, now);
+		repository.increment("b", 1, now);
+		repository.flush();
+		assertEquals(2, repository.getBufferedBuckets());
+
+		// The deltas kept after the failed flush are dropped, later increments start over
+		repository.reset("a");
+		assertEquals(1, repository.getBufferedBuckets());
+		repository.increment("a", 2, now);
+		store.failing = false;
+		repository.flush();
+		assertEquals(2, store.getCounts("a", 1, AggregateCounterResolution.day).getTotal());
+		assertEquals(1, store.getCounts("b", 1, AggregateCounterResolution.day).getTotal());
+	}
+
+	private static class FailingRepository extends InMemoryAggregateCounterRepository {
+
+		private volatile boolean failing;
+
+		private int attempts;
+
+		@Override
+		public long increment(String name, long amount, DateTime dateTime) {
+			if (failing) {
+				attempts++;
+				throw new IllegalStateException("store unavailable");
+			}
+			return super.increment(name, amount, dateTime);
+		}
+	}
+
+}
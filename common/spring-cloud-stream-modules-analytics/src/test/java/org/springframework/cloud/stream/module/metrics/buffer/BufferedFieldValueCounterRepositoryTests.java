@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.cloud.stream.module.metrics.memory.InMemoryFieldValueCounterRepository;
+
+/**
+ * Tests for {@link BufferedFieldValueCounterRepository}.
+ */
+public class BufferedFieldValueCounterRepositoryTests {
+
+	private final FailingRepository store = new FailingRepository();
+
+	private final BufferedFieldValueCounterRepository repository = new BufferedFieldValueCounterRepository(store,
+			60000L, 1000, 2);
+
+	@After
+	public void destroy() throws Exception {
+		store.failing = false;
+		repository.destroy();
+	}
+
+	@Test
+	public void testSumsScoresPerCounter() {
+		repository.increment("c", "a", 1.0);
+		repository.increment("c", "a", 2.5);
+		repository.increment("c", "b", -0.0);
+		assertEquals(2, repository.getBufferedEntries());
+		repository.flush();
+		assertEquals(0, repository.getBufferedEntries());
+		assertEquals(1, repository.getWriteCount());
+		assertEquals(3.5, store.findOne("c").getFieldValueCounts().get("a"), 0.0);
+	}
+
+	@Test
+	public void testBackoffAfterFailedFlush() {
+		store.failing = true;
+		repository.increment("c", "a", 1.0);
+		repository.increment("c", "b", 1.0);
+		try {
+			repository.increment("c", "c", 1.0);
+			fail("the buffer is full and cannot be flushed");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals(1, store.attempts);
+		assertTrue(repository.isBackingOff());
+
+		repository.increment("c", "a", 2.0);
+		assertEquals(1, store.attempts);
+		assertEquals(2, repository.getBufferedEntries());
+
+		store.failing = false;
+		repository.flush();
+		assertFalse(repository.isBackingOff());
+		assertEquals(0, repository.getBufferedEntries());
+		assertEquals(3.0, store.findOne("c").getFieldValueCounts().get("a"), 0.0);
+		assertEquals(1.0, store.findOne("c").getFieldValueCounts().get("b"), 0.0);
+	}
+
+	private static class FailingRepository extends InMemoryFieldValueCounterRepository {
+
+		private volatile boolean failing;
+
+		private int attempts;
+
+		@Override
+		public void increment(String name, Map<String, Double> scores) {
+			if (failing) {
+				attempts++;
+				throw new IllegalStateException("store unavailable");
+			}
+			super.increment(name, scores);
+		}
+	}
+
+}
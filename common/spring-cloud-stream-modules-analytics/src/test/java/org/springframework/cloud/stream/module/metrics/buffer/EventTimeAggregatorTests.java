@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.cloud.stream.module.metrics.AggregateCounterResolution;
+import org.springframework.cloud.stream.module.metrics.memory.InMemoryAggregateCounterRepository;
+
+/**
+ * Tests for {@link EventTimeAggregator}.
+ */
+public class EventTimeAggregatorTests {
+
+	private static final DateTime START = new DateTime(2016, 3, 1, 12, 0, DateTimeZone.UTC);
+
+	private final FailingRepository store = new FailingRepository();
+
+	private final EventTimeAggregator aggregator = new EventTimeAggregator(store, 60000L, 100);
+
+	@After
+	public void destroy() throws Exception {
+		store.failing = false;
+		aggregator.destroy();
+		store.destroy();
+	}
+
+	@Test
+	public void testFailedWritesAreRetried() {
+		store.failing = true;
+		aggregator.increment("c", 2, START);
+		// Closes the first minute, whose write fails
+		aggregator.increment("c", 1, START.plusMinutes(2));
+		assertEquals(1, store.attempts);
+		assertTrue(aggregator.isBackingOff());
+		assertEquals(2, aggregator.getPendingBuckets());
+
+		// No attempt while backing off
+		aggregator.increment("c", 1, START.plusMinutes(3));
+		assertEquals(1, store.attempts);
+
+		store.failing = false;
+		aggregator.flush();
+		assertFalse(aggregator.isBackingOff());
+		assertEquals(0, aggregator.getPendingBuckets());
+		assertEquals(4, store.getCounts("c", 1, START, AggregateCounterResolution.day).getTotal());
+	}
+
+	@Test
+	public void testResetWatermark() {
+		aggregator.increment("c", 1, START.plusHours(1));
+		assertFalse(aggregator.increment("c", 1, START));
+		aggregator.resetWatermark();
+		assertTrue(aggregator.increment("c", 1, START));
+		aggregator.flush();
+		assertEquals(2, store.getCounts("c", 1, START, AggregateCounterResolution.day).getTotal());
+		assertEquals(1, aggregator.getLateEvents());
+	}
+
+	private static class FailingRepository extends InMemoryAggregateCounterRepository {
+
+		private volatile boolean failing;
+
+		private int attempts;
+
+		@Override
+		public long increment(String name, long amount, DateTime dateTime) {
+			if (failing) {
+				attempts++;
+				throw new IllegalStateException("store unavailable");
+			}
+			return super.increment(name, amount, dateTime);
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.cloud.stream.module.metrics.AggregateCounterResolution;
+
+/**
+ * Tests for {@link InMemoryAggregateCounterRepository}.
+ */
+public class InMemoryAggregateCounterRepositoryTests {
+
+	/**
+	 * Room for two counters incremented today, which hold about 15 kB each.
+	 */
+	private static final long MAX_MEMORY_BYTES = 40000L;
+
+	private final InMemoryAggregateCounterRepository repository = new InMemoryAggregateCounterRepository(0, 0,
+			MAX_MEMORY_BYTES, 3600000L);
+
+	@After
+	public void destroy() {
+		repository.destroy();
+	}
+
+	@Test
+	public void testReadsDoNotHoldMemory() {
+		assertEquals(0, repository.getCounts("unknown", 5, AggregateCounterResolution.minute).getTotal());
+		assertEquals(0L, repository.getFootprint());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedCountersEvictedOverCap() throws InterruptedException {
+		DateTime now = new DateTime();
+		for (int i = 0; i < 5; i++) {
+			repository.increment("counter" + i, 1, now);
+		}
+		Thread.sleep(1100L);
+		repository.increment("counter0", 1, now);
+
+		repository.compact();
+		assertTrue(repository.getFootprint() <= MAX_MEMORY_BYTES);
+		// The minute counts of the current day are kept for the counters that remain
+		assertEquals(2, repository.getCounts("counter0", 5, now, AggregateCounterResolution.minute).getTotal());
+		int remaining = 0;
+		for (int i = 0; i < 5; i++) {
+			remaining += repository.getCounts("counter" + i, 1, now, AggregateCounterResolution.day).getTotal();
+		}
+		assertEquals(3, remaining);
+
+		// Evicted counters start over
+		repository.increment("counter4", 1, now);
+		assertTrue(repository.getCounts("counter4", 1, now, AggregateCounterResolution.day).getTotal() >= 1);
+	}
+
+	@Test
+	public void testOldMinuteCountsEvictedBeforeCounters() {
+		DateTime now = new DateTime();
+		repository.increment("a", 1, now);
+		repository.increment("a", 1, now.minusDays(2));
+		repository.increment("b", 1, now);
+		long before = repository.getFootprint();
+		assertTrue(before > MAX_MEMORY_BYTES);
+
+		repository.compact();
+		assertTrue(repository.getFootprint() <= MAX_MEMORY_BYTES);
+		assertEquals(0, repository.getCounts("a", 1, now.minusDays(2), AggregateCounterResolution.minute).getTotal());
+		assertEquals(2, repository.getCounts("a", 3, now, AggregateCounterResolution.day).getTotal());
+		assertEquals(1, repository.getCounts("b", 1, now, AggregateCounterResolution.minute).getTotal());
+	}
+
+}
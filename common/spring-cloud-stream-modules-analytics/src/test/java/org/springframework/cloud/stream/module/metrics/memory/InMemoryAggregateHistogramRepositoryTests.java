@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.memory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import org.springframework.cloud.stream.module.metrics.AggregateCounterResolution;
+import org.springframework.cloud.stream.module.metrics.AggregateHistogram;
+
+/**
+ * Tests for {@link InMemoryAggregateHistogramRepository}.
+ */
+public class InMemoryAggregateHistogramRepositoryTests {
+
+	private static final String NAME = "latency";
+
+	private final InMemoryAggregateHistogramRepository repository = new InMemoryAggregateHistogramRepository();
+
+	@Test
+	public void testPercentilesPerBucket() {
+		DateTime dateTime = new DateTime(2016, 2, 29, 13, 37);
+		for (int i = 1; i <= 100; i++) {
+			repository.record(NAME, i, dateTime);
+			repository.record(NAME, 1000, dateTime.plusMinutes(1));
+		}
+		AggregateHistogram minutes = repository.getHistograms(NAME, 3, dateTime.plusMinutes(1),
+				AggregateCounterResolution.minute);
+		assertArrayEquals(new long[] {0, 100, 100}, minutes.getCounts());
+		assertArrayEquals(new long[] {0, 100, 1000}, minutes.getValuesAtPercentile(100));
+		assertEquals(1, minutes.getBuckets()[1].getMin());
+		assertEquals(50.5, minutes.getBuckets()[1].getMean(), 0.0);
+
+		AggregateHistogram hours = repository.getHistograms(NAME, 2, dateTime, AggregateCounterResolution.hour);
+		assertArrayEquals(new long[] {0, 200}, hours.getCounts());
+		assertEquals(1000, hours.getBuckets()[1].getValueAtPercentile(99));
+		assertEquals(minutes.getTotal().getBins(), hours.getTotal().getBins());
+
+		AggregateHistogram years = repository.getHistograms(NAME, 1, dateTime, AggregateCounterResolution.year);
+		assertArrayEquals(new long[] {200}, years.getCounts());
+	}
+
+	@Test
+	public void testReset() {
+		repository.record(NAME, 5, new DateTime());
+		repository.reset(NAME);
+		assertArrayEquals(new long[] {0}, repository.getHistograms(NAME, 1, AggregateCounterResolution.day).getCounts());
+	}
+
+}
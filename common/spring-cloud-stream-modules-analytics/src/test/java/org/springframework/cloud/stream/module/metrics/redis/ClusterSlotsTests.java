@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics.redis;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ClusterSlots}.
+ */
+public class ClusterSlotsTests {
+
+	@Test
+	public void testCrc16() {
+		// The check value of CRC16/XMODEM, as given by the Redis Cluster specification
+		byte[] bytes = "123456789".getBytes();
+		assertEquals(0x31c3, ClusterSlots.crc16(bytes, 0, bytes.length));
+		assertEquals(12739, ClusterSlots.slotOf("123456789"));
+	}
+
+	@Test
+	public void testHashTagsShareSlot() {
+		String tag = ClusterSlots.hashTag("foo");
+		int slot = ClusterSlots.slotOf("foo");
+		assertEquals(slot, ClusterSlots.slotOf("aggregate-counters." + tag));
+		assertEquals(slot, ClusterSlots.slotOf("aggregate-counters." + tag + ".2016022913"));
+		assertEquals(slot, ClusterSlots.slotOf("metric_meta.aggregatecounters." + tag));
+	}
+
+	@Test
+	public void testOnlyFirstNonEmptyHashTagIsHashed() {
+		assertEquals(ClusterSlots.slotOf("bar"), ClusterSlots.slotOf("foo{bar}{zap}"));
+		// Empty or unterminated tags do not count, the whole key is hashed
+		assertEquals(wholeKeySlot("foo{}{bar}"), ClusterSlots.slotOf("foo{}{bar}"));
+		assertEquals(wholeKeySlot("foo{bar"), ClusterSlots.slotOf("foo{bar"));
+	}
+
+	private static int wholeKeySlot(String key) {
+		byte[] bytes = key.getBytes();
+		return ClusterSlots.crc16(bytes, 0, bytes.length) % ClusterSlots.SLOT_COUNT;
+	}
+
+}
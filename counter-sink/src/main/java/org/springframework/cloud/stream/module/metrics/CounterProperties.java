@@ -16,6 +16,7 @@
 package org.springframework.cloud.stream.module.metrics;
 
 import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Min;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -47,6 +48,18 @@ public class CounterProperties extends MetricProperties {
 	 */
 	private Expression nameExpression;
 
+	/**
+	 * How often counts accumulated in memory are written to the store, in milliseconds. Counts are handed to the
+	 * default counter service if not positive.
+	 */
+	private long flushIntervalMs = 0L;
+
+	/**
+	 * The maximum number of counters accumulated in memory. Least recently used counters are written and evicted
+	 * beyond that.
+	 */
+	private int maxCounters = 10000;
+
 	public String getName() {
 		if (name == null && nameExpression == null) {
 			return defaultName;
@@ -74,4 +87,21 @@ public class CounterProperties extends MetricProperties {
 	public boolean isExclusiveOptions() {
 		return getName() != null ^ getNameExpression() != null;
 	}
+
+	public long getFlushIntervalMs() {
+		return flushIntervalMs;
+	}
+
+	public void setFlushIntervalMs(long flushIntervalMs) {
+		this.flushIntervalMs = flushIntervalMs;
+	}
+
+	@Min(1)
+	public int getMaxCounters() {
+		return maxCounters;
+	}
+
+	public void setMaxCounters(int maxCounters) {
+		this.maxCounters = maxCounters;
+	}
 }
@@ -21,6 +21,7 @@ import org.springframework.boot.actuate.autoconfigure.ExportMetricWriter;
 import org.springframework.boot.actuate.metrics.repository.InMemoryMetricRepository;
 import org.springframework.boot.actuate.metrics.repository.MetricRepository;
 import org.springframework.boot.actuate.metrics.repository.redis.RedisMetricRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -47,9 +48,16 @@ public class CounterSinkStoreConfiguration {
 	@Bean
 	@ExportMetricWriter
 	public MetricRepository metricRepository() {
-		if (this.metricProperties.equals(MetricProperties.REDIS_STORE_VALUE)) {
+		if (this.metricProperties.getStore().equals(MetricProperties.REDIS_STORE_VALUE)) {
 			return new RedisMetricRepository(redisConnectionFactory);
 		}
 		return new InMemoryMetricRepository();
 	}
+
+	@Bean
+	@ConditionalOnExpression("${flushIntervalMs:0} > 0")
+	public ShardedCounterService counterService() {
+		return new ShardedCounterService(metricRepository(), metricProperties.getFlushIntervalMs(),
+				metricProperties.getMaxCounters());
+	}
 }
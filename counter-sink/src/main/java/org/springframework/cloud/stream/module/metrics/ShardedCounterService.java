@@ -0,0 +1,366 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.writer.Delta;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link CounterService} that counts in memory and periodically writes the accumulated deltas to a
+ * {@link MetricWriter}, such as a Redis or in-memory metric repository.
+ * <p>
+ * Each counter is striped over several cells, so that threads incrementing the same counter do not contend with each
+ * other. Every {@code flushIntervalMs}, the cells of each counter are drained and a single {@link Delta} is written
+ * for it, whatever the number of increments. At most {@code maxCounters} counters are kept in memory: when a new name
+ * exceeds that bound, the flush thread is asked to evict the least recently used counters and write their pending
+ * deltas, so that the thread that created the name does not pay for it. Eviction goes down to 90% of the bound, so
+ * that ranking the counters is paid once for many new names. Counters are retired before their last drain, so that
+ * increments racing with an eviction or a reset go to a fresh counter rather than being lost.
+ * As with the {@code DefaultCounterService}, names are prefixed with {@code counter.} unless they already start with
+ * {@code counter.} or {@code meter.}.
+ */
+public class ShardedCounterService implements CounterService, DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(ShardedCounterService.class);
+
+	/**
+	 * The number of longs between two cells, so that each cell sits in its own cache line.
+	 */
+	private static final int CELL_SPACING = 8;
+
+	/**
+	 * Marks the cells of a counter that has been evicted or reset. Writers seeing it must start over with the counter
+	 * now in the map.
+	 */
+	private static final long RETIRED = Long.MIN_VALUE;
+
+	private final MetricWriter writer;
+
+	private final int maxCounters;
+
+	/**
+	 * The number of counters left once the least recently used ones are evicted.
+	 */
+	private final int evictionTarget;
+
+	private final int stripes;
+
+	private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+	private final AtomicInteger size = new AtomicInteger();
+
+	private final Lock flushLock = new ReentrantLock();
+
+	private final AtomicBoolean evictionScheduled = new AtomicBoolean();
+
+	private final ScheduledExecutorService scheduler;
+
+	private final Runnable eviction = new Runnable() {
+
+		@Override
+		public void run() {
+			flushLock.lock();
+			try {
+				evict();
+			}
+			finally {
+				evictionScheduled.set(false);
+				flushLock.unlock();
+			}
+		}
+	};
+
+	/**
+	 * The clock of the least recently used eviction, which ticks whenever a new counter is created.
+	 */
+	private final AtomicLong clock = new AtomicLong();
+
+	/**
+	 * Create a counter service writing to the given writer.
+	 *
+	 * @param writer where accumulated deltas are written to
+	 * @param flushIntervalMs how often deltas are written, in milliseconds
+	 * @param maxCounters the maximum number of counters kept in memory
+	 */
+	public ShardedCounterService(MetricWriter writer, long flushIntervalMs, int maxCounters) {
+		Assert.notNull(writer, "writer cannot be null");
+		Assert.isTrue(flushIntervalMs > 0, "flushIntervalMs must be positive");
+		Assert.isTrue(maxCounters > 0, "maxCounters must be positive");
+		this.writer = writer;
+		this.maxCounters = maxCounters;
+		this.evictionTarget = maxCounters - Math.max(1, maxCounters / 10);
+		int processors = Runtime.getRuntime().availableProcessors();
+		this.stripes = Integer.highestOneBit(Math.max(1, processors - 1)) << 1;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "counter-flush");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.scheduler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				flush(false);
+			}
+		}, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void increment(String metricName) {
+		add(wrap(metricName), 1L);
+	}
+
+	@Override
+	public void decrement(String metricName) {
+		add(wrap(metricName), -1L);
+	}
+
+	@Override
+	public void reset(String metricName) {
+		String name = wrap(metricName);
+		flushLock.lock();
+		try {
+			Counter counter = counters.remove(name);
+			if (counter != null) {
+				size.decrementAndGet();
+				counter.retire();
+			}
+		}
+		finally {
+			flushLock.unlock();
+		}
+		writer.reset(name);
+	}
+
+	/**
+	 * Write all pending deltas, waiting for a concurrent flush to complete if needed.
+	 */
+	public void flush() {
+		flush(true);
+	}
+
+	@Override
+	public void destroy() {
+		scheduler.shutdown();
+		flush(true);
+	}
+
+	/**
+	 * Return the number of counters currently kept in memory.
+	 */
+	public int getSize() {
+		return size.get();
+	}
+
+	private void add(String name, long delta) {
+		while (true) {
+			Counter counter = counters.get(name);
+			if (counter == null) {
+				Counter created = new Counter(name, stripes, clock.incrementAndGet());
+				counter = counters.putIfAbsent(name, created);
+				if (counter == null) {
+					counter = created;
+					if (size.incrementAndGet() > maxCounters) {
+						scheduleEviction();
+					}
+				}
+			}
+			if (counter.add(delta, clock.get())) {
+				return;
+			}
+			// The counter was evicted or reset since it was looked up, and is no longer in the map
+		}
+	}
+
+	/**
+	 * Ask the flush thread to evict counters, unless it has already been asked to.
+	 */
+	private void scheduleEviction() {
+		if (evictionScheduled.compareAndSet(false, true)) {
+			try {
+				scheduler.execute(eviction);
+			}
+			catch (RejectedExecutionException e) {
+				// Shutting down, the remaining counters are written by destroy()
+				evictionScheduled.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Evict the least recently used counters down to the eviction target, writing their pending deltas. Stops at the
+	 * first failed write, the delta of which is kept for the next flush.
+	 */
+	private void evict() {
+		List<Counter> candidates = new ArrayList<>(counters.values());
+		Collections.sort(candidates, new Comparator<Counter>() {
+
+			@Override
+			public int compare(Counter c1, Counter c2) {
+				return c1.lastUsed < c2.lastUsed ? -1 : (c1.lastUsed == c2.lastUsed ? 0 : 1);
+			}
+		});
+		for (int i = 0; i < candidates.size() && size.get() > evictionTarget; i++) {
+			Counter counter = candidates.get(i);
+			if (counters.remove(counter.name, counter)) {
+				size.decrementAndGet();
+				if (!write(counter.name, counter.retire())) {
+					return;
+				}
+			}
+		}
+	}
+
+	private void flush(boolean wait) {
+		if (wait) {
+			flushLock.lock();
+		}
+		else if (!flushLock.tryLock()) {
+			return;
+		}
+		try {
+			for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+				write(entry.getKey(), entry.getValue().drain());
+			}
+		}
+		finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Write a drained delta, putting it back into the counter of that name if the write fails.
+	 *
+	 * @return whether the delta was written
+	 */
+	private boolean write(String name, long delta) {
+		if (delta == 0L) {
+			return true;
+		}
+		try {
+			writer.increment(new Delta<Long>(name, delta));
+			return true;
+		}
+		catch (RuntimeException e) {
+			// Keep the delta for the next attempt rather than failing the message that triggered the write
+			add(name, delta);
+			logger.error("Failed to write delta for '" + name + "', will retry", e);
+			return false;
+		}
+	}
+
+	private static String wrap(String metricName) {
+		if (metricName.startsWith("counter.") || metricName.startsWith("meter.")) {
+			return metricName;
+		}
+		return "counter." + metricName;
+	}
+
+	/**
+	 * The pending delta of a counter, split over padded cells selected by thread.
+	 */
+	private static final class Counter {
+
+		private final String name;
+
+		private final AtomicLongArray cells;
+
+		private final int mask;
+
+		private volatile long lastUsed;
+
+		private Counter(String name, int stripes, long now) {
+			this.name = name;
+			this.lastUsed = now;
+			this.cells = new AtomicLongArray(stripes * CELL_SPACING);
+			this.mask = stripes - 1;
+		}
+
+		/**
+		 * Add a delta to the cell of the current thread.
+		 *
+		 * @return whether the delta was added, as opposed to the counter having been retired
+		 */
+		private boolean add(long delta, long now) {
+			int index = ((int) Thread.currentThread().getId() & mask) * CELL_SPACING;
+			long current = cells.get(index);
+			while (current != RETIRED) {
+				if (cells.compareAndSet(index, current, current + delta)) {
+					// Only write the shared field when the clock has ticked, not on every increment
+					if (lastUsed != now) {
+						lastUsed = now;
+					}
+					return true;
+				}
+				current = cells.get(index);
+			}
+			return false;
+		}
+
+		/**
+		 * Take the pending delta of a counter that is still in use.
+		 */
+		private long drain() {
+			long sum = 0L;
+			for (int i = 0; i < cells.length(); i += CELL_SPACING) {
+				sum += cells.getAndSet(i, 0L);
+			}
+			return sum;
+		}
+
+		/**
+		 * Take the pending delta of a counter that has been removed from the map, rejecting later increments.
+		 */
+		private long retire() {
+			long sum = 0L;
+			for (int i = 0; i < cells.length(); i += CELL_SPACING) {
+				sum += cells.getAndSet(i, RETIRED);
+			}
+			return sum;
+		}
+	}
+
+}
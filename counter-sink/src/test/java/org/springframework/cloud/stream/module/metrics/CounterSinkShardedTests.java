@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.repository.MetricRepository;
+import org.springframework.boot.actuate.metrics.repository.redis.RedisMetricRepository;
+import org.springframework.boot.test.WebIntegrationTest;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.messaging.support.MessageBuilder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@WebIntegrationTest({"nameExpression:payload", "flushIntervalMs:60000", "maxCounters:2"})
+public class CounterSinkShardedTests extends AbstractCounterSinkTests {
+
+    @Autowired
+    private ShardedCounterService counterService;
+
+    @Autowired
+    private RedisConnectionFactory redisConnectionFactory;
+
+    /**
+     * Reads straight from Redis, whatever the repository the counter service writes to.
+     */
+    private MetricRepository redis;
+
+    @Before
+    public void connect() {
+        redis = new RedisMetricRepository(redisConnectionFactory);
+    }
+
+    @After
+    public void resetOthers() {
+        counterService.reset("a");
+        counterService.reset("b");
+    }
+
+    @Test
+    public void testIncrementsAreSummedUntilFlush() {
+        for (int i = 0; i < 5; i++) {
+            sink.input().send(MessageBuilder.withPayload("simpleCounter").build());
+        }
+        assertNull(redis.findOne("counter.simpleCounter"));
+        counterService.flush();
+        assertEquals(5, redis.findOne("counter.simpleCounter").getValue().longValue());
+        counterService.flush();
+        assertEquals(5, redis.findOne("counter.simpleCounter").getValue().longValue());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedCountersAreWrittenOnEviction() throws InterruptedException {
+        sink.input().send(MessageBuilder.withPayload("simpleCounter").build());
+        sink.input().send(MessageBuilder.withPayload("a").build());
+        assertEquals(2, counterService.getSize());
+        assertNull(redis.findOne("counter.simpleCounter"));
+        sink.input().send(MessageBuilder.withPayload("b").build());
+        // Eviction happens on the flush thread, and makes room for more than the new name
+        awaitSize(1);
+        assertEquals(1, redis.findOne("counter.simpleCounter").getValue().longValue());
+        assertEquals(1, redis.findOne("counter.a").getValue().longValue());
+        assertNull(redis.findOne("counter.b"));
+        counterService.flush();
+        assertEquals(1, redis.findOne("counter.b").getValue().longValue());
+    }
+
+    private void awaitSize(int expected) throws InterruptedException {
+        for (int i = 0; i < 100 && counterService.getSize() != expected; i++) {
+            Thread.sleep(50L);
+        }
+        assertEquals(expected, counterService.getSize());
+    }
+}
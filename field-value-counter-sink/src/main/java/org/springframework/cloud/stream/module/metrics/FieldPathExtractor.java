@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.tuple.Tuple;
+import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Extracts the values found at a dotted field path, e.g. {@code user.address.city}, out of payloads.
+ * <p>
+ * The path is split once and walked by index, looking segments up directly in {@link Tuple}s and {@link Map}s, and
+ * through getters cached per class for other objects. {@link List}s met along the way are traversed, each of their
+ * elements being matched against the rest of the path. Paths using the indexed or keyed syntax of {@link BeanWrapper}
+ * (e.g. {@code items[0].name}) are evaluated by a {@link BeanWrapper} for payloads that are not tuples.
+ */
+final class FieldPathExtractor {
+
+	private final String path;
+
+	private final Segment[] segments;
+
+	private final boolean beanWrapperPath;
+
+	FieldPathExtractor(String path) {
+		Assert.hasText(path, "path must not be empty");
+		this.path = path;
+		String[] names = StringUtils.tokenizeToStringArray(path, ".");
+		this.segments = new Segment[names.length];
+		for (int i = 0; i < names.length; i++) {
+			segments[i] = new Segment(names[i]);
+		}
+		this.beanWrapperPath = path.indexOf('[') >= 0;
+	}
+
+	/**
+	 * Invoke the callback for every non-null value found at the path in the given payload.
+	 */
+	void extract(Object payload, Callback callback) {
+		if (beanWrapperPath && !(payload instanceof Tuple)) {
+			BeanWrapper beanWrapper = new BeanWrapperImpl(payload);
+			if (beanWrapper.isReadableProperty(path)) {
+				Object value = beanWrapper.getPropertyValue(path);
+				if (value != null) {
+					callback.onValue(value);
+				}
+			}
+		}
+		else {
+			walk(payload, 0, callback);
+		}
+	}
+
+	private void walk(Object value, int index, Callback callback) {
+		if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			for (int i = 0; i < list.size(); i++) {
+				walk(list.get(i), index, callback);
+			}
+			return;
+		}
+		Object result = segments[index].valueOf(value);
+		if (result == null) {
+			return;
+		}
+		if (index == segments.length - 1) {
+			callback.onValue(result);
+		}
+		else {
+			walk(result, index + 1, callback);
+		}
+	}
+
+	/**
+	 * Receives the values found by a {@link FieldPathExtractor}.
+	 */
+	interface Callback {
+
+		void onValue(Object value);
+	}
+
+	/**
+	 * One name of the path, along with the getters resolved for it so far.
+	 */
+	private static final class Segment {
+
+		private static final Method NO_GETTER = ReflectionUtils.findMethod(Segment.class, "noGetter");
+
+		private final String name;
+
+		private final ConcurrentMap<Class<?>, Method> getters = new ConcurrentHashMap<>();
+
+		private Segment(String name) {
+			this.name = name;
+		}
+
+		private Object valueOf(Object target) {
+			if (target instanceof Tuple) {
+				Tuple tuple = (Tuple) target;
+				return tuple.hasFieldName(name) ? tuple.getValue(name) : null;
+			}
+			else if (target instanceof Map) {
+				return ((Map<?, ?>) target).get(name);
+			}
+			else if (target == null) {
+				return null;
+			}
+			Method getter = getterFor(target.getClass());
+			return getter != NO_GETTER ? ReflectionUtils.invokeMethod(getter, target) : null;
+		}
+
+		private Method getterFor(Class<?> type) {
+			Method getter = getters.get(type);
+			if (getter == null) {
+				PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(type, name);
+				getter = descriptor != null ? descriptor.getReadMethod() : null;
+				if (getter == null) {
+					getter = NO_GETTER;
+				}
+				else {
+					// Same as BeanWrapper, which reads properties of non public classes too
+					ReflectionUtils.makeAccessible(getter);
+				}
+				getters.putIfAbsent(type, getter);
+			}
+			return getter;
+		}
+
+		@SuppressWarnings("unused")
+		private static void noGetter() {
+		}
+	}
+
+}
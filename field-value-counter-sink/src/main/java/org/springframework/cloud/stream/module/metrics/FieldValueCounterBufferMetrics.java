@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.cloud.stream.module.metrics.buffer.AsyncFieldValueCounterRepository;
+import org.springframework.cloud.stream.module.metrics.buffer.BufferedFieldValueCounterRepository;
+
+/**
+ * Exposes the backlog and flush latency of the write-behind buffer, or the backlog of the writer threads, when one
+ * is configured.
+ */
+public class FieldValueCounterBufferMetrics implements PublicMetrics {
+
+	private final FieldValueCounterRepository repository;
+
+	public FieldValueCounterBufferMetrics(FieldValueCounterRepository repository) {
+		this.repository = repository;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		if (repository instanceof AsyncFieldValueCounterRepository) {
+			AsyncFieldValueCounterRepository async = (AsyncFieldValueCounterRepository) repository;
+			List<Metric<?>> metrics = new ArrayList<>();
+			metrics.add(new Metric<Integer>("fieldvaluecounter.async.queued", async.getQueuedWrites()));
+			metrics.add(new Metric<Long>("fieldvaluecounter.async.writes", async.getWriteCount()));
+			return metrics;
+		}
+		if (!(repository instanceof BufferedFieldValueCounterRepository)) {
+			return Collections.emptyList();
+		}
+		BufferedFieldValueCounterRepository buffer = (BufferedFieldValueCounterRepository) repository;
+		List<Metric<?>> metrics = new ArrayList<>();
+		metrics.add(new Metric<Integer>("fieldvaluecounter.buffer.entries", buffer.getBufferedEntries()));
+		metrics.add(new Metric<Integer>("fieldvaluecounter.buffer.increments", buffer.getPendingIncrements()));
+		metrics.add(new Metric<Long>("fieldvaluecounter.flush.count", buffer.getFlushCount()));
+		metrics.add(new Metric<Long>("fieldvaluecounter.flush.writes", buffer.getWriteCount()));
+		metrics.add(new Metric<Long>("fieldvaluecounter.flush.failures", buffer.getFailedFlushCount()));
+		metrics.add(new Metric<Double>("fieldvaluecounter.flush.last", buffer.getLastFlushDuration()));
+		metrics.add(new Metric<Double>("fieldvaluecounter.flush.max", buffer.getMaxFlushDuration()));
+		return metrics;
+	}
+}
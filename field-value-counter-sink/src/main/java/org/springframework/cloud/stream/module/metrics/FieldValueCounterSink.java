@@ -16,23 +16,20 @@
 
 package org.springframework.cloud.stream.module.metrics;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.List;
-import java.util.Map;
 
-import org.springframework.beans.BeanWrapper;
-import org.springframework.beans.BeanWrapperImpl;
+import javax.annotation.PostConstruct;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.messaging.Sink;
-import org.springframework.tuple.Tuple;
 import org.springframework.integration.tuple.JsonToTupleTransformer;
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.integration.transformer.MessageTransformationException;
 import org.springframework.messaging.Message;
 import org.springframework.util.ObjectUtils;
-import org.springframework.util.StringUtils;
 
 /**
  * @author Mark Pollack
@@ -51,64 +48,47 @@ public class FieldValueCounterSink {
 
 	private final JsonToTupleTransformer jsonToTupleTransformer = new JsonToTupleTransformer();
 
-	@ServiceActivator(inputChannel=Sink.INPUT)
-	public void process(Message<?> message) {
-		Object payload = message.getPayload();
-		if (payload instanceof String) {
-			try {
-				payload = jsonToTupleTransformer.transformPayload(payload.toString());
-			}
-			catch (Exception e) {
-				throw new MessageTransformationException(message, e.getMessage(), e);
-			}
-		}
-		if (payload instanceof Tuple) {
-			processTuple(computeMetricName(message), (Tuple) payload);
-		}
-		else {
-			processPojo(computeMetricName(message), payload);
-		}
-	}
+	private FieldPathExtractor fieldPathExtractor;
 
-	private void processPojo(String counterName, Object payload) {
-		BeanWrapper beanWrapper = new BeanWrapperImpl(payload);
-		if (beanWrapper.isReadableProperty(fvcSinkProperties.getFieldName())) {
-			Object value = beanWrapper.getPropertyValue(fvcSinkProperties.getFieldName());
-			processValue(counterName, value);
+	private StreamingFieldExtractor streamingFieldExtractor;
+
+	@PostConstruct
+	public void init() {
+		fieldPathExtractor = new FieldPathExtractor(fvcSinkProperties.getFieldName());
+		if (fvcSinkProperties.isStreamingJson()) {
+			streamingFieldExtractor = new StreamingFieldExtractor(fvcSinkProperties.getFieldName());
 		}
 	}
 
-	private void processTuple(String counterName, Tuple tuple) {
-		String[] path = StringUtils.tokenizeToStringArray(fvcSinkProperties.getFieldName(), ".");
-		processValueForCounter(counterName, tuple, path);
-	}
+	@ServiceActivator(inputChannel=Sink.INPUT)
+	public void process(Message<?> message) {
+		final String counterName = computeMetricName(message);
+		FieldPathExtractor.Callback callback = new FieldPathExtractor.Callback() {
 
-	private void processValueForCounter(String counterName, Object value, String[] path) {
-		String key = path[0];
-		Object result = null;
-		if (value instanceof List) {
-			for (Object item : (List<?>) value) {
-				processValueForCounter(counterName, item, path);
+			@Override
+			public void onValue(Object value) {
+				processValue(counterName, value);
 			}
-		}
-		else if (value instanceof Tuple) {
-			Tuple t = (Tuple) value;
-			if (t.hasFieldName(key)) {
-				result = t.getValue(key);
+		};
+		Object payload = message.getPayload();
+		if (payload instanceof String && streamingFieldExtractor != null) {
+			try {
+				streamingFieldExtractor.extract(payload.toString(), callback);
 			}
+			catch (IOException e) {
+				throw new MessageTransformationException(message, e.getMessage(), e);
+			}
+			return;
 		}
-		else if (value instanceof Map) {
-			result = ((Map<?, ?>) value).get(key);
-		}
-		if (result != null) {
-			if (path.length == 1) {
-				processValue(counterName, result);
+		if (payload instanceof String) {
+			try {
+				payload = jsonToTupleTransformer.transformPayload(payload.toString());
 			}
-			else {
-				path = Arrays.copyOfRange(path, 1, path.length);
-				processValueForCounter(counterName, result, path);
+			catch (Exception e) {
+				throw new MessageTransformationException(message, e.getMessage(), e);
 			}
 		}
+		fieldPathExtractor.extract(payload, callback);
 	}
 
 	protected void processValue(String counterName, Object value) {
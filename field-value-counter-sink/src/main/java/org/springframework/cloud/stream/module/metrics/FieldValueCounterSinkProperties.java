@@ -17,6 +17,7 @@
 package org.springframework.cloud.stream.module.metrics;
 
 import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 import org.springframework.beans.factory.annotation.Value;
@@ -47,6 +48,67 @@ public class FieldValueCounterSinkProperties extends MetricProperties {
 	 */
 	private Expression nameExpression;
 
+	/**
+	 * Whether to estimate counts in bounded memory, keeping track of the field values with the highest counts only.
+	 */
+	private boolean approximate = false;
+
+	/**
+	 * The number of field values with the highest counts that are tracked in approximate mode.
+	 */
+	private int topKCapacity = 1000;
+
+	/**
+	 * The number of counts per row of the sketch used in approximate mode. Higher values reduce the estimation error.
+	 */
+	private int sketchWidth = 2048;
+
+	/**
+	 * The number of rows of the sketch used in approximate mode. Higher values reduce the odds of a large error.
+	 */
+	private int sketchDepth = 5;
+
+	/**
+	 * How often locally summed increments are written to the store, in milliseconds. Increments are written through
+	 * immediately if not positive.
+	 */
+	private long flushIntervalMs = 0L;
+
+	/**
+	 * The number of buffered increments that triggers an early write to the store.
+	 */
+	private int flushThreshold = 10000;
+
+	/**
+	 * The maximum number of distinct field values kept in memory before writing to the store. While the store cannot
+	 * be written to, increments that would add field values past it are rejected.
+	 */
+	private int maxBufferSize = 10000;
+
+	/**
+	 * The number of threads writing increments to the store, grouping the increments of concurrent consumers into
+	 * fewer writes. Each message is still only acknowledged once written. Increments are written by the consuming
+	 * thread if 0. Cannot be combined with a positive 'flushIntervalMs'.
+	 */
+	private int asyncWriters = 0;
+
+	/**
+	 * The maximum number of increments waiting for a writer thread, past which consumers wait.
+	 */
+	private int maxInFlight = 1000;
+
+	/**
+	 * How long consumers wait for a writer thread to take, then write, an increment, in milliseconds. The message
+	 * fails once that time is up.
+	 */
+	private long writeTimeoutMs = 30000L;
+
+	/**
+	 * Whether to read JSON payloads as a stream of tokens, only looking at the fields on the path of 'fieldName'
+	 * instead of converting whole documents to tuples.
+	 */
+	private boolean streamingJson = false;
+
 	@NotNull(message = "field name must not be null.")
 	public String getFieldName() {
 		return fieldName;
@@ -85,4 +147,105 @@ public class FieldValueCounterSinkProperties extends MetricProperties {
 		return getName() != null ^ getNameExpression() != null;
 	}
 
+	public boolean isApproximate() {
+		return approximate;
+	}
+
+	public void setApproximate(boolean approximate) {
+		this.approximate = approximate;
+	}
+
+	@Min(1)
+	public int getTopKCapacity() {
+		return topKCapacity;
+	}
+
+	public void setTopKCapacity(int topKCapacity) {
+		this.topKCapacity = topKCapacity;
+	}
+
+	@Min(1)
+	public int getSketchWidth() {
+		return sketchWidth;
+	}
+
+	public void setSketchWidth(int sketchWidth) {
+		this.sketchWidth = sketchWidth;
+	}
+
+	@Min(1)
+	public int getSketchDepth() {
+		return sketchDepth;
+	}
+
+	public void setSketchDepth(int sketchDepth) {
+		this.sketchDepth = sketchDepth;
+	}
+
+	public long getFlushIntervalMs() {
+		return flushIntervalMs;
+	}
+
+	public void setFlushIntervalMs(long flushIntervalMs) {
+		this.flushIntervalMs = flushIntervalMs;
+	}
+
+	@Min(1)
+	public int getFlushThreshold() {
+		return flushThreshold;
+	}
+
+	public void setFlushThreshold(int flushThreshold) {
+		this.flushThreshold = flushThreshold;
+	}
+
+	@Min(1)
+	public int getMaxBufferSize() {
+		return maxBufferSize;
+	}
+
+	public void setMaxBufferSize(int maxBufferSize) {
+		this.maxBufferSize = maxBufferSize;
+	}
+
+	@Min(0)
+	public int getAsyncWriters() {
+		return asyncWriters;
+	}
+
+	public void setAsyncWriters(int asyncWriters) {
+		this.asyncWriters = asyncWriters;
+	}
+
+	@Min(1)
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	@Min(1)
+	public long getWriteTimeoutMs() {
+		return writeTimeoutMs;
+	}
+
+	public void setWriteTimeoutMs(long writeTimeoutMs) {
+		this.writeTimeoutMs = writeTimeoutMs;
+	}
+
+	public boolean isStreamingJson() {
+		return streamingJson;
+	}
+
+	public void setStreamingJson(boolean streamingJson) {
+		this.streamingJson = streamingJson;
+	}
+
+	@AssertTrue(message = "'flushIntervalMs' and 'asyncWriters' cannot both be positive")
+	public boolean isBufferedOrAsync() {
+		return flushIntervalMs <= 0 || asyncWriters <= 0;
+	}
+
 }
@@ -18,8 +18,13 @@ package org.springframework.cloud.stream.module.metrics;
 import java.util.Collections;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.stream.module.metrics.buffer.AsyncFieldValueCounterRepository;
+import org.springframework.cloud.stream.module.metrics.buffer.BufferedFieldValueCounterRepository;
+import org.springframework.cloud.stream.module.metrics.memory.InMemoryApproximateFieldValueCounterRepository;
 import org.springframework.cloud.stream.module.metrics.memory.InMemoryFieldValueCounterRepository;
+import org.springframework.cloud.stream.module.metrics.redis.RedisApproximateFieldValueCounterRepository;
 import org.springframework.cloud.stream.module.metrics.redis.RedisFieldValueCounterRepository;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -47,12 +52,37 @@ public class FieldValueCounterSinkStoreConfiguration {
 
 	@Bean
 	public FieldValueCounterRepository redisMetricRepository() {
+		FieldValueCounterRepository repository;
 		if (this.config.getStore().equals(MetricProperties.REDIS_STORE_VALUE)) {
-			return new RedisFieldValueCounterRepository(redisConnectionFactory, retryOperations());
+			if (this.config.isApproximate()) {
+				repository = new RedisApproximateFieldValueCounterRepository(redisConnectionFactory, retryOperations(),
+						config.getTopKCapacity(), config.getSketchWidth(), config.getSketchDepth());
+			}
+			else {
+				repository = new RedisFieldValueCounterRepository(redisConnectionFactory, retryOperations());
+			}
+		}
+		else if (this.config.isApproximate()) {
+			repository = new InMemoryApproximateFieldValueCounterRepository(config.getTopKCapacity(),
+					config.getSketchWidth(), config.getSketchDepth());
 		}
 		else {
-			return new InMemoryFieldValueCounterRepository();
+			repository = new InMemoryFieldValueCounterRepository();
+		}
+		if (config.getFlushIntervalMs() > 0) {
+			return new BufferedFieldValueCounterRepository(repository, config.getFlushIntervalMs(),
+					config.getFlushThreshold(), config.getMaxBufferSize());
+		}
+		if (config.getAsyncWriters() > 0) {
+			return new AsyncFieldValueCounterRepository(repository, config.getAsyncWriters(), config.getMaxInFlight(),
+					config.getWriteTimeoutMs());
 		}
+		return repository;
+	}
+
+	@Bean
+	public PublicMetrics fieldValueCounterBufferMetrics() {
+		return new FieldValueCounterBufferMetrics(redisMetricRepository());
 	}
 
 	@Bean
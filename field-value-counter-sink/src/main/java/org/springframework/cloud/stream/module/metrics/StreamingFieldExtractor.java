@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.springframework.integration.tuple.JsonToTupleTransformer;
+import org.springframework.tuple.Tuple;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Extracts the values found at a dotted field path out of JSON documents, without converting them to a
+ * {@link Tuple} first.
+ * <p>
+ * The document is read with a token parser that skips over every field not on the path. Values are reported the way
+ * they would be found in the equivalent {@link Tuple}: scalars as their text, and the elements of arrays one by one.
+ * Only objects and arrays found at the end of the path are converted to tuples and lists, so that they are counted
+ * under the same value as with {@link JsonToTupleTransformer}. JSON {@code null}s are skipped.
+ */
+final class StreamingFieldExtractor {
+
+	private static final String WRAPPER_FIELD = "value";
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final JsonFactory jsonFactory = objectMapper.getFactory();
+
+	private final JsonToTupleTransformer jsonToTupleTransformer = new JsonToTupleTransformer();
+
+	private final String[] segments;
+
+	StreamingFieldExtractor(String path) {
+		Assert.hasText(path, "path must not be empty");
+		this.segments = StringUtils.tokenizeToStringArray(path, ".");
+	}
+
+	/**
+	 * Invoke the callback for every non-null value found at the path in the given JSON document.
+	 */
+	void extract(String json, FieldPathExtractor.Callback callback) throws IOException {
+		try (JsonParser parser = jsonFactory.createParser(json)) {
+			JsonToken token = parser.nextToken();
+			if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+				walk(parser, 0, callback);
+			}
+		}
+	}
+
+	/**
+	 * Look for the given segment in the object or array the parser is positioned at, leaving the parser on its
+	 * closing token.
+	 */
+	private void walk(JsonParser parser, int index, FieldPathExtractor.Callback callback) throws IOException {
+		if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
+			// As with tuples, the elements of arrays are matched against the same segment
+			JsonToken token;
+			while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+				if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+					walk(parser, index, callback);
+				}
+			}
+			return;
+		}
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			boolean match = segments[index].equals(parser.getCurrentName());
+			JsonToken token = parser.nextToken();
+			if (!match) {
+				parser.skipChildren();
+			}
+			else if (index == segments.length - 1) {
+				emit(parser, token, callback);
+			}
+			else if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+				walk(parser, index + 1, callback);
+			}
+		}
+	}
+
+	private void emit(JsonParser parser, JsonToken token, FieldPathExtractor.Callback callback) throws IOException {
+		if (token == JsonToken.START_ARRAY) {
+			JsonToken element;
+			while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+				emitValue(parser, element, callback);
+			}
+		}
+		else {
+			emitValue(parser, token, callback);
+		}
+	}
+
+	private void emitValue(JsonParser parser, JsonToken token, FieldPathExtractor.Callback callback)
+			throws IOException {
+		switch (token) {
+			case VALUE_NULL:
+				break;
+			case VALUE_STRING:
+			case VALUE_NUMBER_INT:
+			case VALUE_TRUE:
+			case VALUE_FALSE:
+				callback.onValue(parser.getText());
+				break;
+			case VALUE_NUMBER_FLOAT:
+				// Floating point numbers are read as doubles when building tuples
+				callback.onValue(String.valueOf(parser.getDoubleValue()));
+				break;
+			default:
+				callback.onValue(materialize(parser));
+		}
+	}
+
+	/**
+	 * Convert the object or array the parser is positioned at as {@link JsonToTupleTransformer} would.
+	 */
+	private Object materialize(JsonParser parser) throws IOException {
+		JsonNode node = objectMapper.readTree(parser);
+		ObjectNode wrapper = objectMapper.createObjectNode();
+		wrapper.set(WRAPPER_FIELD, node);
+		Tuple tuple;
+		try {
+			tuple = (Tuple) jsonToTupleTransformer.transformPayload(wrapper.toString());
+		}
+		catch (Exception e) {
+			throw new IOException("Failed to convert '" + node + "' to a tuple", e);
+		}
+		return tuple.getValue(WRAPPER_FIELD);
+	}
+
+}
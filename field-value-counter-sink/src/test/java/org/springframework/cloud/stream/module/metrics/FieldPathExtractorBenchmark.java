@@ -0,0 +1,256 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.integration.tuple.JsonToTupleTransformer;
+import org.springframework.tuple.Tuple;
+import org.springframework.util.StringUtils;
+
+/**
+ * Compares the {@link FieldPathExtractor} used by {@link FieldValueCounterSink} to the path walking it replaced, on
+ * nested JSON payloads and POJOs, and the conversion of JSON payloads to tuples to the {@link StreamingFieldExtractor}.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.springframework.cloud.stream.module.metrics.FieldPathExtractorBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldPathExtractorBenchmark {
+
+	private static final String PATH = "order.customer.address.city";
+
+	private static final String JSON = "{\"id\": 42, \"order\": {\"total\": 12.5, \"customer\": {\"name\": \"John\","
+			+ " \"address\": {\"street\": \"Main Street\", \"city\": \"Springfield\"}}}}";
+
+	private static final String LIST_PATH = "order.items.sku";
+
+	private static final String LIST_JSON = "{\"order\": {\"items\": [{\"sku\": \"a\"}, {\"sku\": \"b\"},"
+			+ " {\"sku\": \"c\"}, {\"sku\": \"d\"}]}}";
+
+	private Tuple tuple;
+
+	private Tuple listTuple;
+
+	private Event pojo;
+
+	private FieldPathExtractor extractor;
+
+	private FieldPathExtractor listExtractor;
+
+	private JsonToTupleTransformer transformer;
+
+	private StreamingFieldExtractor streamingExtractor;
+
+	private StreamingFieldExtractor streamingListExtractor;
+
+	@Setup
+	public void setUp() throws Exception {
+		transformer = new JsonToTupleTransformer();
+		tuple = (Tuple) transformer.transformPayload(JSON);
+		listTuple = (Tuple) transformer.transformPayload(LIST_JSON);
+		pojo = new Event(new Order(new Customer(new Address("Springfield"))));
+		extractor = new FieldPathExtractor(PATH);
+		listExtractor = new FieldPathExtractor(LIST_PATH);
+		streamingExtractor = new StreamingFieldExtractor(PATH);
+		streamingListExtractor = new StreamingFieldExtractor(LIST_PATH);
+	}
+
+	@Benchmark
+	public void compiledTuple(Blackhole blackhole) {
+		extractor.extract(tuple, new BlackholeCallback(blackhole));
+	}
+
+	@Benchmark
+	public void legacyTuple(Blackhole blackhole) {
+		legacyTuple(PATH, tuple, blackhole);
+	}
+
+	@Benchmark
+	public void compiledTupleWithList(Blackhole blackhole) {
+		listExtractor.extract(listTuple, new BlackholeCallback(blackhole));
+	}
+
+	@Benchmark
+	public void legacyTupleWithList(Blackhole blackhole) {
+		legacyTuple(LIST_PATH, listTuple, blackhole);
+	}
+
+	@Benchmark
+	public void compiledPojo(Blackhole blackhole) {
+		extractor.extract(pojo, new BlackholeCallback(blackhole));
+	}
+
+	@Benchmark
+	public void legacyPojo(Blackhole blackhole) {
+		BeanWrapper beanWrapper = new BeanWrapperImpl(pojo);
+		if (beanWrapper.isReadableProperty(PATH)) {
+			blackhole.consume(beanWrapper.getPropertyValue(PATH));
+		}
+	}
+
+	@Benchmark
+	public void tupleJson(Blackhole blackhole) throws Exception {
+		extractor.extract(transformer.transformPayload(JSON), new BlackholeCallback(blackhole));
+	}
+
+	@Benchmark
+	public void streamingJson(Blackhole blackhole) throws Exception {
+		streamingExtractor.extract(JSON, new BlackholeCallback(blackhole));
+	}
+
+	@Benchmark
+	public void tupleJsonWithList(Blackhole blackhole) throws Exception {
+		listExtractor.extract(transformer.transformPayload(LIST_JSON), new BlackholeCallback(blackhole));
+	}
+
+	@Benchmark
+	public void streamingJsonWithList(Blackhole blackhole) throws Exception {
+		streamingListExtractor.extract(LIST_JSON, new BlackholeCallback(blackhole));
+	}
+
+	/**
+	 * The path walking of {@link FieldValueCounterSink} prior to {@link FieldPathExtractor}.
+	 */
+	private static void legacyTuple(String fieldName, Tuple tuple, Blackhole blackhole) {
+		String[] path = StringUtils.tokenizeToStringArray(fieldName, ".");
+		legacyWalk(tuple, path, blackhole);
+	}
+
+	private static void legacyWalk(Object value, String[] path, Blackhole blackhole) {
+		String key = path[0];
+		Object result = null;
+		if (value instanceof List) {
+			for (Object item : (List<?>) value) {
+				legacyWalk(item, path, blackhole);
+			}
+		}
+		else if (value instanceof Tuple) {
+			Tuple t = (Tuple) value;
+			if (t.hasFieldName(key)) {
+				result = t.getValue(key);
+			}
+		}
+		else if (value instanceof Map) {
+			result = ((Map<?, ?>) value).get(key);
+		}
+		if (result != null) {
+			if (path.length == 1) {
+				blackhole.consume(result);
+			}
+			else {
+				legacyWalk(result, Arrays.copyOfRange(path, 1, path.length), blackhole);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(FieldPathExtractorBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	private static final class BlackholeCallback implements FieldPathExtractor.Callback {
+
+		private final Blackhole blackhole;
+
+		private BlackholeCallback(Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public void onValue(Object value) {
+			blackhole.consume(value);
+		}
+	}
+
+	public static class Event {
+
+		private final Order order;
+
+		public Event(Order order) {
+			this.order = order;
+		}
+
+		public Order getOrder() {
+			return order;
+		}
+	}
+
+	public static class Order {
+
+		private final Customer customer;
+
+		public Order(Customer customer) {
+			this.customer = customer;
+		}
+
+		public Customer getCustomer() {
+			return customer;
+		}
+	}
+
+	public static class Customer {
+
+		private final Address address;
+
+		public Customer(Address address) {
+			this.address = address;
+		}
+
+		public Address getAddress() {
+			return address;
+		}
+	}
+
+	public static class Address {
+
+		private final String city;
+
+		public Address(String city) {
+			this.city = city;
+		}
+
+		public String getCity() {
+			return city;
+		}
+	}
+
+}
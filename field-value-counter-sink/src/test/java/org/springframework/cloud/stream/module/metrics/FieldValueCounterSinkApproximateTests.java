@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.boot.test.WebIntegrationTest;
+import org.springframework.cloud.stream.annotation.Bindings;
+import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.cloud.stream.test.junit.redis.RedisTestSupport;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = FieldValueCounterSinkApplication.class)
+@WebIntegrationTest({"server.port:-1", "name:FVCounter", "store:redis", "fieldName:test", "approximate:true",
+		"topKCapacity:2"})
+@DirtiesContext
+public class FieldValueCounterSinkApproximateTests {
+
+	@Rule
+	public RedisTestSupport redisTestSupport = new RedisTestSupport();
+
+	private static final String FVC_NAME = "FVCounter";
+
+	@Autowired
+	@Bindings(FieldValueCounterSink.class)
+	private Sink sink;
+
+	@Autowired
+	private FieldValueCounterRepository fieldValueCounterRepository;
+
+	@Before
+	@After
+	public void clear() {
+		fieldValueCounterRepository.reset(FVC_NAME);
+	}
+
+	@Test
+	public void testOnlyTopValuesAreTracked() {
+		for (String value : new String[] {"Hi", "Hello", "Hi", "Hello", "Hi", "Bye"}) {
+			sink.input().send(MessageBuilder.withPayload("{\"test\": \"" + value + "\"}").build());
+		}
+		Map<String, Double> counts = this.fieldValueCounterRepository.findOne(FVC_NAME).getFieldValueCounts();
+		assertEquals(Arrays.asList("Hi", "Hello"), new ArrayList<>(counts.keySet()));
+		assertEquals(3, counts.get("Hi").longValue());
+		assertEquals(2, counts.get("Hello").longValue());
+		counts = this.fieldValueCounterRepository.findTopK(FVC_NAME, 1).getFieldValueCounts();
+		assertEquals(Arrays.asList("Hi"), new ArrayList<>(counts.keySet()));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testDecrementIsNotSupported() {
+		this.fieldValueCounterRepository.decrement(FVC_NAME, "Hi", 1);
+	}
+}
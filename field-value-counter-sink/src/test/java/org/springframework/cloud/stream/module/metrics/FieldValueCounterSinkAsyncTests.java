@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.boot.test.WebIntegrationTest;
+import org.springframework.cloud.stream.annotation.Bindings;
+import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.cloud.stream.module.metrics.buffer.AsyncFieldValueCounterRepository;
+import org.springframework.cloud.stream.test.junit.redis.RedisTestSupport;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = FieldValueCounterSinkApplication.class)
+@WebIntegrationTest({"server.port:-1", "name:FVCounter", "store:redis", "fieldName:test", "asyncWriters:2"})
+@DirtiesContext
+public class FieldValueCounterSinkAsyncTests {
+
+	@Rule
+	public RedisTestSupport redisTestSupport = new RedisTestSupport();
+
+	private static final String FVC_NAME = "FVCounter";
+
+	private static final int THREADS = 8;
+
+	private static final int MESSAGES_PER_THREAD = 50;
+
+	@Autowired
+	@Bindings(FieldValueCounterSink.class)
+	private Sink sink;
+
+	@Autowired
+	private FieldValueCounterRepository fieldValueCounterRepository;
+
+	@Before
+	@After
+	public void clear() {
+		fieldValueCounterRepository.reset(FVC_NAME);
+	}
+
+	@Test
+	public void testIncrementsAreWrittenWhenSendReturns() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				final String value = i % 2 == 0 ? "Hi" : "Hello";
+				futures.add(executor.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() {
+						for (int j = 0; j < MESSAGES_PER_THREAD; j++) {
+							sink.input().send(MessageBuilder.withPayload("{\"test\": \"" + value + "\"}").build());
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		FieldValueCounter counter = this.fieldValueCounterRepository.findOne(FVC_NAME);
+		assertEquals(THREADS / 2 * MESSAGES_PER_THREAD, counter.getFieldValueCounts().get("Hi").longValue());
+		assertEquals(THREADS / 2 * MESSAGES_PER_THREAD, counter.getFieldValueCounts().get("Hello").longValue());
+		long writes = ((AsyncFieldValueCounterRepository) this.fieldValueCounterRepository).getWriteCount();
+		assertTrue(writes <= THREADS * MESSAGES_PER_THREAD);
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.boot.test.WebIntegrationTest;
+import org.springframework.cloud.stream.annotation.Bindings;
+import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.cloud.stream.module.metrics.buffer.BufferedFieldValueCounterRepository;
+import org.springframework.cloud.stream.test.junit.redis.RedisTestSupport;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = FieldValueCounterSinkApplication.class)
+@WebIntegrationTest({"server.port:-1", "name:FVCounter", "store:redis", "fieldName:test", "flushIntervalMs:60000"})
+@DirtiesContext
+public class FieldValueCounterSinkBufferedTests {
+
+	@Rule
+	public RedisTestSupport redisTestSupport = new RedisTestSupport();
+
+	private static final String FVC_NAME = "FVCounter";
+
+	@Autowired
+	@Bindings(FieldValueCounterSink.class)
+	private Sink sink;
+
+	@Autowired
+	private FieldValueCounterRepository fieldValueCounterRepository;
+
+	@Before
+	@After
+	public void clear() {
+		fieldValueCounterRepository.reset(FVC_NAME);
+	}
+
+	@Test
+	public void testIncrementsAreWrittenOnFlush() {
+		for (String value : new String[] {"Hi", "Hello", "Hi"}) {
+			sink.input().send(MessageBuilder.withPayload("{\"test\": \"" + value + "\"}").build());
+		}
+		assertNull(this.fieldValueCounterRepository.findOne(FVC_NAME));
+		((BufferedFieldValueCounterRepository) this.fieldValueCounterRepository).flush();
+		assertEquals(2, this.fieldValueCounterRepository.findOne(FVC_NAME).getFieldValueCounts().get("Hi").longValue());
+		assertEquals(1, this.fieldValueCounterRepository.findOne(FVC_NAME).getFieldValueCounts().get("Hello").longValue());
+	}
+}
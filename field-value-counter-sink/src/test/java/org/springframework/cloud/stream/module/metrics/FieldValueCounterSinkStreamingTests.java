@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.boot.test.WebIntegrationTest;
+import org.springframework.cloud.stream.annotation.Bindings;
+import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.cloud.stream.test.junit.redis.RedisTestSupport;
+import org.springframework.integration.transformer.MessageTransformationException;
+import org.springframework.integration.tuple.JsonToTupleTransformer;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = FieldValueCounterSinkApplication.class)
+@WebIntegrationTest({"server.port:-1", "name:FVCounter", "store:redis", "fieldName:order.items.sku",
+		"streamingJson:true"})
+@DirtiesContext
+public class FieldValueCounterSinkStreamingTests {
+
+	@Rule
+	public RedisTestSupport redisTestSupport = new RedisTestSupport();
+
+	private static final String FVC_NAME = "FVCounter";
+
+	@Autowired
+	@Bindings(FieldValueCounterSink.class)
+	private Sink sink;
+
+	@Autowired
+	private FieldValueCounterRepository fieldValueCounterRepository;
+
+	@Before
+	@After
+	public void clear() {
+		fieldValueCounterRepository.reset(FVC_NAME);
+	}
+
+	@Test
+	public void testValuesAlongArraysAreCounted() {
+		sink.input().send(MessageBuilder.withPayload("{\"id\": 1, \"customer\": {\"items\": [{\"sku\": \"x\"}]},"
+				+ " \"order\": {\"total\": 12.5, \"items\": [{\"sku\": \"a\", \"tags\": [1, 2]}, {\"sku\": \"b\"},"
+				+ " {\"sku\": null}, {\"name\": \"c\"}, {\"sku\": [\"a\", 3, 1.50, true]}]}}").build());
+		Map<String, Double> counts = this.fieldValueCounterRepository.findOne(FVC_NAME).getFieldValueCounts();
+		assertEquals(5, counts.size());
+		assertEquals(2, counts.get("a").longValue());
+		assertEquals(1, counts.get("b").longValue());
+		assertEquals(1, counts.get("3").longValue());
+		assertEquals(1, counts.get("1.5").longValue());
+		assertEquals(1, counts.get("true").longValue());
+		assertFalse(counts.containsKey("x"));
+	}
+
+	@Test
+	public void testObjectValuesAreCountedAsTuples() throws Exception {
+		Object tuple = new JsonToTupleTransformer().transformPayload("{\"code\": \"a\"}");
+		sink.input().send(MessageBuilder.withPayload("{\"order\": {\"items\": {\"sku\": {\"code\": \"a\"}}}}").build());
+		Map<String, Double> counts = this.fieldValueCounterRepository.findOne(FVC_NAME).getFieldValueCounts();
+		assertEquals(1, counts.size());
+		assertEquals(1, counts.get(tuple.toString()).longValue());
+	}
+
+	@Test
+	public void testPayloadsThatAreNotJsonAreRejected() {
+		try {
+			sink.input().send(MessageBuilder.withPayload("{\"order\": ").build());
+			fail("Expected a MessageTransformationException");
+		}
+		catch (MessagingException e) {
+			assertEquals(MessageTransformationException.class, e.getClass());
+		}
+	}
+}
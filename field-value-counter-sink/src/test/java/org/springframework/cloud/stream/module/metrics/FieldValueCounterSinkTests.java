@@ -16,9 +16,12 @@
 package org.springframework.cloud.stream.module.metrics;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -94,6 +97,25 @@ public class FieldValueCounterSinkTests {
 		assertEquals(0, this.fieldValueCounterRepository.findOne(FVC_NAME).getFieldValueCounts().get("Hi").longValue());
 	}
 
+	@Test
+	public void testFindTopK() {
+		for (String value : new String[] {"Hi", "Hello", "Hi", "Bye", "Hi", "Hello"}) {
+			sink.input().send(MessageBuilder.withPayload("{\"test\": \"" + value + "\"}").build());
+		}
+		Map<String, Double> counts = this.fieldValueCounterRepository.findTopK(FVC_NAME, 2).getFieldValueCounts();
+		assertEquals(Arrays.asList("Hi", "Hello"), new ArrayList<>(counts.keySet()));
+		assertEquals(3, counts.get("Hi").longValue());
+		assertEquals(2, counts.get("Hello").longValue());
+	}
+
+	@Test
+	public void testListUsesIndex() {
+		sink.input().send(MessageBuilder.withPayload("{\"test\": \"Hi\"}").build());
+		assertTrue(this.fieldValueCounterRepository.list().contains(FVC_NAME));
+		this.fieldValueCounterRepository.reset(FVC_NAME);
+		assertFalse(this.fieldValueCounterRepository.list().contains(FVC_NAME));
+	}
+
 	@Test
 	public void testPojoListFieldName() {
 		TestPojoList testPojo = new TestPojoList();
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.loadgenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.util.Assert;
+
+/**
+ * A JSON record template whose placeholders are replaced by random values.
+ * <p>
+ * Placeholders have the form <code>{{type}}</code> or <code>{{type:argument}}</code>, where the type is one of:
+ * <ul>
+ * <li>{@code int}, a random integer below the argument, 1000000 by default</li>
+ * <li>{@code long}, a random non-negative long</li>
+ * <li>{@code double}, a random decimal below the argument, 1 by default</li>
+ * <li>{@code bool}, {@code true} or {@code false}</li>
+ * <li>{@code uuid}, a random UUID</li>
+ * <li>{@code string}, random alphanumeric characters, as many as the argument, 8 by default</li>
+ * <li>{@code choice}, one of the {@code |} separated values of the argument</li>
+ * </ul>
+ * Values are inserted as is, so that string values need to be quoted in the template, e.g.
+ * <code>{"id":"{{uuid}}","count":{{int:100}}}</code>.
+ */
+class JsonTemplate {
+
+	private static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{(\\w+)(?::([^}]*))?\\}\\}");
+
+	private static final char[] ALPHANUMERIC =
+			"abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+
+	/**
+	 * The text around placeholders, one more than there are fields.
+	 */
+	private final List<String> literals = new ArrayList<>();
+
+	private final List<Field> fields = new ArrayList<>();
+
+	JsonTemplate(String template) {
+		Assert.hasText(template, "template cannot be empty");
+		Matcher matcher = PLACEHOLDER.matcher(template);
+		int end = 0;
+		while (matcher.find()) {
+			literals.add(template.substring(end, matcher.start()));
+			fields.add(new Field(matcher.group(1), matcher.group(2)));
+			end = matcher.end();
+		}
+		literals.add(template.substring(end));
+	}
+
+	/**
+	 * Return a new record, with random values in place of the placeholders.
+	 */
+	String render(Random random) {
+		StringBuilder record = new StringBuilder(literals.get(0));
+		for (int i = 0; i < fields.size(); i++) {
+			fields.get(i).appendTo(record, random);
+			record.append(literals.get(i + 1));
+		}
+		return record.toString();
+	}
+
+	private static final class Field {
+
+		private final String type;
+
+		/**
+		 * The bound of numbers, or the length of strings.
+		 */
+		private final double bound;
+
+		private final String[] choices;
+
+		private Field(String type, String argument) {
+			this.type = type;
+			String[] choices = null;
+			double bound = 0.0;
+			switch (type) {
+				case "int":
+					bound = argument != null ? Integer.parseInt(argument) : 1000000;
+					Assert.isTrue(bound > 0.0, "the argument of 'int' placeholders must be positive");
+					break;
+				case "double":
+					bound = argument != null ? Double.parseDouble(argument) : 1.0;
+					break;
+				case "string":
+					bound = argument != null ? Integer.parseInt(argument) : 8;
+					break;
+				case "choice":
+					Assert.hasText(argument, "'choice' placeholders need | separated values");
+					choices = argument.split("\\|", -1);
+					break;
+				case "long":
+				case "bool":
+				case "uuid":
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown placeholder type '" + type + "'");
+			}
+			Assert.isTrue(bound >= 0.0, "the argument of '" + type + "' placeholders cannot be negative");
+			this.bound = bound;
+			this.choices = choices;
+		}
+
+		private void appendTo(StringBuilder record, Random random) {
+			switch (type) {
+				case "int":
+					record.append(random.nextInt((int) bound));
+					break;
+				case "long":
+					record.append(random.nextLong() & Long.MAX_VALUE);
+					break;
+				case "double":
+					record.append(random.nextDouble() * bound);
+					break;
+				case "bool":
+					record.append(random.nextBoolean());
+					break;
+				case "uuid":
+					record.append(new UUID(random.nextLong(), random.nextLong()));
+					break;
+				case "string":
+					for (int i = 0; i < bound; i++) {
+						record.append(ALPHANUMERIC[random.nextInt(ALPHANUMERIC.length)]);
+					}
+					break;
+				default:
+					record.append(choices[random.nextInt(choices.length)]);
+			}
+		}
+	}
+
+}
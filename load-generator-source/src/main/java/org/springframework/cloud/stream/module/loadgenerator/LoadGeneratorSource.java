@@ -16,8 +16,10 @@
 
 package org.springframework.cloud.stream.module.loadgenerator;
 
+import java.io.IOException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
@@ -28,11 +30,15 @@ import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.messaging.Source;
 import org.springframework.integration.endpoint.AbstractEndpoint;
 import org.springframework.messaging.Message;
-import org.springframework.messaging.support.GenericMessage;
+import org.springframework.messaging.support.MessageBuilder;
 
 /**
  * A source that sends a set amount of empty byte array messages to verify the speed
  * of the infrastructure.
+ * <p>
+ * By default each producer sends {@code messageCount} messages as fast as possible. A {@link LoadProfile} paces
+ * producers at a target rate instead, and {@code durationMs} bounds the run by time rather than by count. Payloads
+ * are taken from a {@link PayloadPool} generated before producers start.
  *
  * @author Glenn Renfro
  */
@@ -40,6 +46,12 @@ import org.springframework.messaging.support.GenericMessage;
 @EnableConfigurationProperties({LoadGeneratorSourceProperties.class})
 public class LoadGeneratorSource extends AbstractEndpoint {
 
+	/**
+	 * The header holding the time a message was intended to be sent at, in milliseconds since the epoch, when
+	 * timestamps are generated. This is when it was actually sent unless a {@link LoadProfile} paces producers.
+	 */
+	public static final String TIMESTAMP_HEADER = "producerTimestamp";
+
 	private static final Logger logger = LoggerFactory.getLogger(LoadGeneratorSource.class);
 
 	@Autowired
@@ -55,17 +67,27 @@ public class LoadGeneratorSource extends AbstractEndpoint {
 	@Override
 	protected void doStart() {
 		if (running.compareAndSet(false, true)) {
+			PayloadPool pool;
+			try {
+				pool = PayloadPool.create(config);
+			}
+			catch (IOException e) {
+				running.set(false);
+				throw new IllegalStateException("Failed to read payloads from '" + config.getPayloadFile() + "'", e);
+			}
+			logger.info("Generated {} {} payloads of {} bytes on average", pool.size(), config.getPayloadType(),
+					Math.round(pool.getMeanSize()));
 			executorService = Executors.newFixedThreadPool(config.getProducers());
 			for (int i = 0; i < config.getProducers(); i++) {
-				executorService.execute(new Producer(i, this.channel,
-						config.getMessageCount(), config.getMessageSize()));
+				executorService.execute(new Producer(i, this.channel, config, pool));
 			}
 		}
 	}
 	@Override
 	protected void doStop() {
 		if (running.compareAndSet(true, false)) {
-			executorService.shutdown();
+			// Interrupt producers that are still sending
+			executorService.shutdownNow();
 		}
 	}
 
@@ -76,22 +98,70 @@ public class LoadGeneratorSource extends AbstractEndpoint {
 
 		private final int messageCount;
 
-		private final int messageSize;
+		private final PayloadPool pool;
+
+		private final boolean generateTimestamp;
+
+		private final LoadProfile profile;
 
-		public Producer(int producerId, Source channel, int messageCount, int messageSize) {
+		private final long durationMs;
+
+		private final LoadGeneratorSourceProperties config;
+
+		public Producer(int producerId, Source channel, LoadGeneratorSourceProperties config, PayloadPool pool) {
 			this.producerId = producerId;
 			this.channel = channel;
-			this.messageCount = messageCount;
-			this.messageSize = messageSize;
+			this.messageCount = config.getMessageCount();
+			this.pool = pool;
+			this.generateTimestamp = config.isGenerateTimestamp();
+			this.profile = config.getProfile();
+			this.durationMs = config.getDurationMs();
+			this.config = config;
 		}
 
 		public void run() {
-			logger.info("Producer {} sending {} messages", this.producerId, this.messageCount);
-			Message<byte[]> message = new GenericMessage<>(new byte[this.messageSize]);
-			for (int i = 0; i < this.messageCount; i++) {
-				channel.output().send(message);
+			if (durationMs > 0) {
+				logger.info("Producer {} sending messages for {}ms with profile {}", this.producerId, this.durationMs,
+						this.profile);
+			}
+			else {
+				logger.info("Producer {} sending {} messages with profile {}", this.producerId, this.messageCount,
+						this.profile);
+			}
+			// Spread producers over the pool so that they do not send the same payloads at the same time
+			long offset = (long) producerId * pool.size() / config.getProducers();
+			long startMillis = System.currentTimeMillis();
+			long startNanos = System.nanoTime();
+			long deadline = startNanos + TimeUnit.MILLISECONDS.toNanos(durationMs);
+			Pacer pacer = profile != LoadProfile.none ? new Pacer(profile, config, startNanos) : null;
+			long sent = 0;
+			try {
+				while (durationMs > 0 || sent < messageCount) {
+					long intended = pacer != null ? pacer.next() : System.nanoTime();
+					if (durationMs > 0 && intended - deadline >= 0) {
+						break;
+					}
+					if (pacer != null) {
+						Pacer.awaitNanos(intended);
+					}
+					else if (Thread.currentThread().isInterrupted()) {
+						throw new InterruptedException();
+					}
+					Message<byte[]> message = pool.get(offset + sent);
+					if (generateTimestamp) {
+						long timestamp = startMillis + TimeUnit.NANOSECONDS.toMillis(intended - startNanos);
+						message = MessageBuilder.withPayload(message.getPayload())
+								.setHeader(TIMESTAMP_HEADER, timestamp).build();
+					}
+					channel.output().send(message);
+					sent++;
+				}
+				logger.info("All Messages Dispatched");
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				logger.info("Producer {} stopped after {} messages", this.producerId, sent);
 			}
-			logger.info("All Messages Dispatched");
 		}
 	}
 
@@ -16,6 +16,11 @@
 
 package org.springframework.cloud.stream.module.loadgenerator;
 
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -34,6 +39,110 @@ public class LoadGeneratorSourceProperties {
 
 	private boolean generateTimestamp = false;
 
+	/**
+	 * How the rate of each producer evolves: 'none' to send as fast as possible, 'constant', 'ramp', 'step' or
+	 * 'burst'.
+	 */
+	private LoadProfile profile = LoadProfile.none;
+
+	/**
+	 * The target rate of each producer, in messages per second.
+	 */
+	private int rate = 1000;
+
+	/**
+	 * The rate each producer starts at with the 'ramp' and 'step' profiles, in messages per second.
+	 */
+	private int startRate = 0;
+
+	/**
+	 * How long the 'ramp' profile takes to reach 'rate', in milliseconds.
+	 */
+	private long rampMs = 10000L;
+
+	/**
+	 * The number of steps the 'step' profile takes to go from 'startRate' to 'rate'.
+	 */
+	private int steps = 5;
+
+	/**
+	 * How long each step of the 'step' profile lasts, in milliseconds.
+	 */
+	private long stepMs = 10000L;
+
+	/**
+	 * The rate of each producer during bursts with the 'burst' profile, in messages per second.
+	 */
+	private int burstRate = 10000;
+
+	/**
+	 * How long each burst of the 'burst' profile lasts, in milliseconds.
+	 */
+	private long burstMs = 1000L;
+
+	/**
+	 * The time between the starts of two bursts of the 'burst' profile, in milliseconds.
+	 */
+	private long burstIntervalMs = 10000L;
+
+	/**
+	 * How long each producer sends messages for, in milliseconds. When positive, this bounds the run instead of
+	 * 'messageCount'.
+	 */
+	private long durationMs = 0L;
+
+	/**
+	 * The kind of payloads to send: 'zeros', 'random' bytes, 'json' records rendered from 'jsonTemplate', or the
+	 * lines of 'payloadFile'.
+	 */
+	private PayloadType payloadType = PayloadType.zeros;
+
+	/**
+	 * The number of bits of entropy per byte of 'random' payloads, from 0 for payloads made of zeros to 8 for
+	 * uniformly random bytes. Lower values make payloads more compressible.
+	 */
+	private int entropyBits = 8;
+
+	/**
+	 * The template of 'json' payloads, whose {{int}}, {{long}}, {{double}}, {{bool}}, {{uuid}}, {{string}} and
+	 * {{choice:a|b}} placeholders are replaced by random values.
+	 */
+	private String jsonTemplate = "{\"id\":\"{{uuid}}\",\"user\":\"{{string:12}}\","
+			+ "\"type\":\"{{choice:view|click|buy}}\",\"count\":{{int:1000}},\"amount\":{{double:100}},"
+			+ "\"flagged\":{{bool}}}";
+
+	/**
+	 * The file whose lines are sent as 'file' payloads, one line per message.
+	 */
+	private String payloadFile;
+
+	/**
+	 * How the sizes of 'zeros' and 'random' payloads are distributed: 'fixed' at 'messageSize', 'uniform' between
+	 * 'minMessageSize' and 'maxMessageSize', or 'normal' or 'exponential' around 'messageSize'.
+	 */
+	private SizeDistribution sizeDistribution = SizeDistribution.fixed;
+
+	/**
+	 * The smallest size of payloads when their sizes vary, in bytes.
+	 */
+	private int minMessageSize = 0;
+
+	/**
+	 * The largest size of payloads when their sizes vary, in bytes.
+	 */
+	private int maxMessageSize = 10000;
+
+	/**
+	 * The standard deviation of the sizes of payloads with the 'normal' size distribution, in bytes.
+	 */
+	private int messageSizeStdDev = 100;
+
+	/**
+	 * The number of distinct payloads generated before sending, which producers cycle through. Files are replayed
+	 * whole.
+	 */
+	private int poolSize = 1024;
+
 	public int getProducers() {
 		return producers;
 	}
@@ -66,4 +175,188 @@ public class LoadGeneratorSourceProperties {
 		this.generateTimestamp = generateTimestamp;
 	}
 
+	public LoadProfile getProfile() {
+		return profile;
+	}
+
+	public void setProfile(LoadProfile profile) {
+		this.profile = profile;
+	}
+
+	@Min(1)
+	public int getRate() {
+		return rate;
+	}
+
+	public void setRate(int rate) {
+		this.rate = rate;
+	}
+
+	@Min(0)
+	public int getStartRate() {
+		return startRate;
+	}
+
+	public void setStartRate(int startRate) {
+		this.startRate = startRate;
+	}
+
+	@Min(1)
+	public long getRampMs() {
+		return rampMs;
+	}
+
+	public void setRampMs(long rampMs) {
+		this.rampMs = rampMs;
+	}
+
+	@Min(1)
+	public int getSteps() {
+		return steps;
+	}
+
+	public void setSteps(int steps) {
+		this.steps = steps;
+	}
+
+	@Min(1)
+	public long getStepMs() {
+		return stepMs;
+	}
+
+	public void setStepMs(long stepMs) {
+		this.stepMs = stepMs;
+	}
+
+	@Min(0)
+	public int getBurstRate() {
+		return burstRate;
+	}
+
+	public void setBurstRate(int burstRate) {
+		this.burstRate = burstRate;
+	}
+
+	@Min(0)
+	public long getBurstMs() {
+		return burstMs;
+	}
+
+	public void setBurstMs(long burstMs) {
+		this.burstMs = burstMs;
+	}
+
+	@Min(1)
+	public long getBurstIntervalMs() {
+		return burstIntervalMs;
+	}
+
+	public void setBurstIntervalMs(long burstIntervalMs) {
+		this.burstIntervalMs = burstIntervalMs;
+	}
+
+	@Min(0)
+	public long getDurationMs() {
+		return durationMs;
+	}
+
+	public void setDurationMs(long durationMs) {
+		this.durationMs = durationMs;
+	}
+
+	@NotNull
+	public PayloadType getPayloadType() {
+		return payloadType;
+	}
+
+	public void setPayloadType(PayloadType payloadType) {
+		this.payloadType = payloadType;
+	}
+
+	@Min(0)
+	@Max(8)
+	public int getEntropyBits() {
+		return entropyBits;
+	}
+
+	public void setEntropyBits(int entropyBits) {
+		this.entropyBits = entropyBits;
+	}
+
+	public String getJsonTemplate() {
+		return jsonTemplate;
+	}
+
+	public void setJsonTemplate(String jsonTemplate) {
+		this.jsonTemplate = jsonTemplate;
+	}
+
+	public String getPayloadFile() {
+		return payloadFile;
+	}
+
+	public void setPayloadFile(String payloadFile) {
+		this.payloadFile = payloadFile;
+	}
+
+	@NotNull
+	public SizeDistribution getSizeDistribution() {
+		return sizeDistribution;
+	}
+
+	public void setSizeDistribution(SizeDistribution sizeDistribution) {
+		this.sizeDistribution = sizeDistribution;
+	}
+
+	@Min(0)
+	public int getMinMessageSize() {
+		return minMessageSize;
+	}
+
+	public void setMinMessageSize(int minMessageSize) {
+		this.minMessageSize = minMessageSize;
+	}
+
+	@Min(0)
+	public int getMaxMessageSize() {
+		return maxMessageSize;
+	}
+
+	public void setMaxMessageSize(int maxMessageSize) {
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	@Min(0)
+	public int getMessageSizeStdDev() {
+		return messageSizeStdDev;
+	}
+
+	public void setMessageSizeStdDev(int messageSizeStdDev) {
+		this.messageSizeStdDev = messageSizeStdDev;
+	}
+
+	@Min(1)
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	public void setPoolSize(int poolSize) {
+		this.poolSize = poolSize;
+	}
+
+	@AssertTrue(message = "'minMessageSize' cannot be greater than 'maxMessageSize'")
+	public boolean isValidMessageSizeRange() {
+		return minMessageSize <= maxMessageSize;
+	}
+
+	@AssertTrue(message = "'payloadFile' must be set when 'payloadType' is 'file'")
+	public boolean isPayloadFileSetForFilePayloads() {
+		return payloadType != PayloadType.file || payloadFile != null;
+	}
+
+	@AssertTrue(message = "'jsonTemplate' must be set when 'payloadType' is 'json'")
+	public boolean isJsonTemplateSetForJsonPayloads() {
+		return payloadType != PayloadType.json || jsonTemplate != null;
+	}
+
 }
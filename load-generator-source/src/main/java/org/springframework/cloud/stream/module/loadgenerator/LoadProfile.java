@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.loadgenerator;
+
+/**
+ * How the target rate of each producer evolves over a run.
+ *
+ * @see LoadGeneratorSourceProperties
+ */
+public enum LoadProfile {
+
+	/**
+	 * Messages are sent as fast as possible.
+	 */
+	none {
+		@Override
+		double rateAt(long elapsedMs, LoadGeneratorSourceProperties config) {
+			return Double.POSITIVE_INFINITY;
+		}
+	},
+
+	/**
+	 * Messages are sent at {@code rate}.
+	 */
+	constant {
+		@Override
+		double rateAt(long elapsedMs, LoadGeneratorSourceProperties config) {
+			return config.getRate();
+		}
+	},
+
+	/**
+	 * The rate rises linearly from {@code startRate} to {@code rate} over {@code rampMs}, then stays at {@code rate}.
+	 */
+	ramp {
+		@Override
+		double rateAt(long elapsedMs, LoadGeneratorSourceProperties config) {
+			if (elapsedMs >= config.getRampMs()) {
+				return config.getRate();
+			}
+			return config.getStartRate()
+					+ (double) (config.getRate() - config.getStartRate()) * elapsedMs / config.getRampMs();
+		}
+	},
+
+	/**
+	 * The rate goes from {@code startRate} to {@code rate} in {@code steps} equal steps, each lasting {@code stepMs},
+	 * then stays at {@code rate}.
+	 */
+	step {
+		@Override
+		double rateAt(long elapsedMs, LoadGeneratorSourceProperties config) {
+			long step = elapsedMs / config.getStepMs();
+			if (config.getSteps() <= 1 || step >= config.getSteps() - 1) {
+				return config.getRate();
+			}
+			return config.getStartRate()
+					+ (double) (config.getRate() - config.getStartRate()) * step / (config.getSteps() - 1);
+		}
+	},
+
+	/**
+	 * Messages are sent at {@code burstRate} for the first {@code burstMs} of every {@code burstIntervalMs}, and at
+	 * {@code rate} the rest of the time.
+	 */
+	burst {
+		@Override
+		double rateAt(long elapsedMs, LoadGeneratorSourceProperties config) {
+			return elapsedMs % config.getBurstIntervalMs() < config.getBurstMs() ? config.getBurstRate()
+					: config.getRate();
+		}
+	};
+
+	/**
+	 * Return the target rate of a producer, in messages per second, the given time after it started.
+	 */
+	abstract double rateAt(long elapsedMs, LoadGeneratorSourceProperties config);
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.loadgenerator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Computes when each message of a producer is intended to be sent according to a {@link LoadProfile}.
+ * <p>
+ * Intended send times only depend on the profile and on when the producer started, never on when previous messages
+ * were actually sent. A producer that falls behind, for example because sending blocked, sends the messages it is late
+ * for back to back until it has caught up with the schedule, and stamps each of them with its intended send time.
+ * Downstream latencies then include the time messages waited to be sent, rather than hiding it as a producer that
+ * simply waits between sends would (coordinated omission).
+ */
+class Pacer {
+
+	private static final long SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+	private static final long SPIN_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(50L);
+
+	private final LoadProfile profile;
+
+	private final LoadGeneratorSourceProperties config;
+
+	private final long startNanos;
+
+	private long nextNanos;
+
+	Pacer(LoadProfile profile, LoadGeneratorSourceProperties config, long startNanos) {
+		this.profile = profile;
+		this.config = config;
+		this.startNanos = startNanos;
+		this.nextNanos = startNanos;
+	}
+
+	/**
+	 * Return the intended send time of the next message, in {@link System#nanoTime()} terms, and move on to the one
+	 * after.
+	 */
+	long next() {
+		long intended = nextNanos;
+		nextNanos = advance(intended);
+		return intended;
+	}
+
+	/**
+	 * Return when the message after the one intended at the given time is due: the time by which the rate, integrated
+	 * over slices of at most a millisecond, adds up to one message.
+	 */
+	private long advance(long from) {
+		double needed = 1.0;
+		long time = from;
+		while (needed > 0.0) {
+			double rate = profile.rateAt(TimeUnit.NANOSECONDS.toMillis(time - startNanos), config);
+			if (Double.isInfinite(rate)) {
+				return time;
+			}
+			if (rate <= 0.0) {
+				time += SLICE_NANOS;
+				continue;
+			}
+			long slice = Math.min(SLICE_NANOS, (long) Math.ceil(needed * 1e9 / rate));
+			needed -= rate * slice / 1e9;
+			time += slice;
+		}
+		return time;
+	}
+
+	/**
+	 * Wait until the given {@link System#nanoTime()}, returning immediately if it is already past.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	static void awaitNanos(long deadline) throws InterruptedException {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > 0) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			if (remaining > SPIN_THRESHOLD_NANOS) {
+				LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.loadgenerator;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.util.Assert;
+
+/**
+ * Payloads generated before producers start, so that generating them never slows producers down.
+ * <p>
+ * Producers cycle through the pool, each from its own offset. Payloads are shared between producers and must not be
+ * modified. Each payload is wrapped in a {@link Message} up front, which producers send as is unless they add
+ * headers.
+ */
+final class PayloadPool {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final List<Message<byte[]>> messages;
+
+	private final long totalBytes;
+
+	PayloadPool(List<byte[]> payloads) {
+		Assert.notEmpty(payloads, "payloads cannot be empty");
+		List<Message<byte[]>> messages = new ArrayList<>(payloads.size());
+		long totalBytes = 0L;
+		for (byte[] payload : payloads) {
+			messages.add(new GenericMessage<>(payload));
+			totalBytes += payload.length;
+		}
+		this.messages = messages;
+		this.totalBytes = totalBytes;
+	}
+
+	/**
+	 * Create the pool of payloads described by the given configuration.
+	 *
+	 * @throws IOException if the payload file cannot be read
+	 */
+	static PayloadPool create(LoadGeneratorSourceProperties config) throws IOException {
+		if (config.getPayloadType() == PayloadType.file) {
+			List<byte[]> lines = readLines(Files.readAllBytes(Paths.get(config.getPayloadFile())));
+			Assert.notEmpty(lines, "'" + config.getPayloadFile() + "' contains no payloads");
+			return new PayloadPool(lines);
+		}
+		Random random = new Random();
+		JsonTemplate template = config.getPayloadType() == PayloadType.json
+				? new JsonTemplate(config.getJsonTemplate()) : null;
+		// Payloads made of zeros are shared between all the payloads of the same size
+		Map<Integer, byte[]> zeros = new HashMap<>();
+		List<byte[]> payloads = new ArrayList<>(config.getPoolSize());
+		for (int i = 0; i < config.getPoolSize(); i++) {
+			switch (config.getPayloadType()) {
+				case json:
+					payloads.add(template.render(random).getBytes(UTF_8));
+					break;
+				case random:
+					payloads.add(randomBytes(config.getSizeDistribution().sample(config, random),
+							config.getEntropyBits(), random));
+					break;
+				default:
+					int size = config.getSizeDistribution().sample(config, random);
+					byte[] payload = zeros.get(size);
+					if (payload == null) {
+						payload = new byte[size];
+						zeros.put(size, payload);
+					}
+					payloads.add(payload);
+			}
+		}
+		return new PayloadPool(payloads);
+	}
+
+	/**
+	 * Return random bytes drawn uniformly from the first {@code 2^entropyBits} byte values.
+	 */
+	static byte[] randomBytes(int size, int entropyBits, Random random) {
+		byte[] payload = new byte[size];
+		random.nextBytes(payload);
+		if (entropyBits < 8) {
+			int mask = (1 << entropyBits) - 1;
+			for (int i = 0; i < payload.length; i++) {
+				payload[i] &= mask;
+			}
+		}
+		return payload;
+	}
+
+	/**
+	 * Split the given content into its non-empty lines, without line terminators.
+	 */
+	static List<byte[]> readLines(byte[] content) {
+		List<byte[]> lines = new ArrayList<>();
+		int start = 0;
+		for (int i = 0; i <= content.length; i++) {
+			if (i == content.length || content[i] == '\n') {
+				int end = i > start && content[i - 1] == '\r' ? i - 1 : i;
+				if (end > start) {
+					lines.add(Arrays.copyOfRange(content, start, end));
+				}
+				start = i + 1;
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Return the message at the given position, wrapping around the end of the pool.
+	 */
+	Message<byte[]> get(long index) {
+		return messages.get((int) (index % messages.size()));
+	}
+
+	int size() {
+		return messages.size();
+	}
+
+	/**
+	 * Return the mean size of the payloads, in bytes.
+	 */
+	double getMeanSize() {
+		return (double) totalBytes / messages.size();
+	}
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.loadgenerator;
+
+/**
+ * The kind of payloads a load generator sends.
+ *
+ * @see PayloadPool
+ */
+public enum PayloadType {
+
+	/**
+	 * Payloads made of zero bytes.
+	 */
+	zeros,
+
+	/**
+	 * Payloads made of random bytes, carrying {@code entropyBits} bits of entropy per byte.
+	 */
+	random,
+
+	/**
+	 * JSON records rendered from {@code jsonTemplate}, with randomized fields.
+	 */
+	json,
+
+	/**
+	 * The lines of {@code payloadFile}, each line being one payload.
+	 */
+	file
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.loadgenerator;
+
+import java.util.Random;
+
+/**
+ * How the sizes of generated payloads are distributed.
+ *
+ * @see PayloadPool
+ */
+public enum SizeDistribution {
+
+	/**
+	 * Every payload has {@code messageSize} bytes.
+	 */
+	fixed {
+		@Override
+		int sample(LoadGeneratorSourceProperties config, Random random) {
+			return config.getMessageSize();
+		}
+	},
+
+	/**
+	 * Sizes are uniformly distributed between {@code minMessageSize} and {@code maxMessageSize}.
+	 */
+	uniform {
+		@Override
+		int sample(LoadGeneratorSourceProperties config, Random random) {
+			return config.getMinMessageSize()
+					+ random.nextInt(config.getMaxMessageSize() - config.getMinMessageSize() + 1);
+		}
+	},
+
+	/**
+	 * Sizes are normally distributed around {@code messageSize} with a standard deviation of
+	 * {@code messageSizeStdDev}, within {@code minMessageSize} and {@code maxMessageSize}.
+	 */
+	normal {
+		@Override
+		int sample(LoadGeneratorSourceProperties config, Random random) {
+			return clamp(config.getMessageSize() + random.nextGaussian() * config.getMessageSizeStdDev(), config);
+		}
+	},
+
+	/**
+	 * Sizes are exponentially distributed with a mean of {@code messageSize}, within {@code minMessageSize} and
+	 * {@code maxMessageSize}: mostly small payloads, with a long tail of large ones.
+	 */
+	exponential {
+		@Override
+		int sample(LoadGeneratorSourceProperties config, Random random) {
+			return clamp(-config.getMessageSize() * Math.log(1.0 - random.nextDouble()), config);
+		}
+	};
+
+	/**
+	 * Return the size of a new payload, in bytes.
+	 */
+	abstract int sample(LoadGeneratorSourceProperties config, Random random);
+
+	private static int clamp(double size, LoadGeneratorSourceProperties config) {
+		return (int) Math.max(config.getMinMessageSize(), Math.min(config.getMaxMessageSize(), Math.round(size)));
+	}
+
+}
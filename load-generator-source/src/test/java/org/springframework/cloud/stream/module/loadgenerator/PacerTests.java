@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.loadgenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Pacer} and {@link LoadProfile}.
+ */
+public class PacerTests {
+
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+	private final LoadGeneratorSourceProperties config = new LoadGeneratorSourceProperties();
+
+	@Test
+	public void testConstantRateIgnoresSendDelays() throws InterruptedException {
+		config.setRate(1000);
+		Pacer pacer = new Pacer(LoadProfile.constant, config, 0L);
+		assertEquals(0L, pacer.next());
+		// Time spent sending does not shift the schedule
+		Thread.sleep(5L);
+		for (int i = 1; i <= 10; i++) {
+			assertEquals(i * MS, pacer.next());
+		}
+	}
+
+	@Test
+	public void testFractionalRate() {
+		config.setRate(3);
+		Pacer pacer = new Pacer(LoadProfile.constant, config, 0L);
+		pacer.next();
+		assertEquals(333L, TimeUnit.NANOSECONDS.toMillis(pacer.next()));
+		assertEquals(666L, TimeUnit.NANOSECONDS.toMillis(pacer.next()));
+	}
+
+	@Test
+	public void testNoProfileDoesNotWait() {
+		Pacer pacer = new Pacer(LoadProfile.none, config, 42L);
+		assertEquals(42L, pacer.next());
+		assertEquals(42L, pacer.next());
+	}
+
+	@Test
+	public void testZeroRateWaitsForTheRateToRise() {
+		config.setStartRate(0);
+		config.setRate(1000);
+		config.setSteps(2);
+		config.setStepMs(100L);
+		Pacer pacer = new Pacer(LoadProfile.step, config, 0L);
+		pacer.next();
+		assertEquals(101 * MS, pacer.next());
+	}
+
+	@Test
+	public void testRamp() {
+		config.setStartRate(100);
+		config.setRate(1100);
+		config.setRampMs(1000L);
+		assertEquals(100.0, LoadProfile.ramp.rateAt(0L, config), 0.0);
+		assertEquals(600.0, LoadProfile.ramp.rateAt(500L, config), 0.0);
+		assertEquals(1100.0, LoadProfile.ramp.rateAt(1000L, config), 0.0);
+		assertEquals(1100.0, LoadProfile.ramp.rateAt(5000L, config), 0.0);
+	}
+
+	@Test
+	public void testStep() {
+		config.setStartRate(0);
+		config.setRate(300);
+		config.setSteps(4);
+		config.setStepMs(100L);
+		assertEquals(0.0, LoadProfile.step.rateAt(99L, config), 0.0);
+		assertEquals(100.0, LoadProfile.step.rateAt(100L, config), 0.0);
+		assertEquals(200.0, LoadProfile.step.rateAt(250L, config), 0.0);
+		assertEquals(300.0, LoadProfile.step.rateAt(300L, config), 0.0);
+		assertEquals(300.0, LoadProfile.step.rateAt(10000L, config), 0.0);
+	}
+
+	@Test
+	public void testBurst() {
+		config.setRate(10);
+		config.setBurstRate(1000);
+		config.setBurstMs(100L);
+		config.setBurstIntervalMs(1000L);
+		assertEquals(1000.0, LoadProfile.burst.rateAt(0L, config), 0.0);
+		assertEquals(10.0, LoadProfile.burst.rateAt(100L, config), 0.0);
+		assertEquals(1000.0, LoadProfile.burst.rateAt(1050L, config), 0.0);
+	}
+
+	@Test
+	public void testMessagesOverADuration() {
+		config.setRate(500);
+		Pacer pacer = new Pacer(LoadProfile.constant, config, 0L);
+		long deadline = TimeUnit.SECONDS.toNanos(2L);
+		int count = 0;
+		while (pacer.next() < deadline) {
+			count++;
+		}
+		assertEquals(1000, count);
+	}
+
+	@Test
+	public void testAwaitPastDeadline() throws InterruptedException {
+		long start = System.nanoTime();
+		Pacer.awaitNanos(start - MS);
+		Pacer.awaitNanos(start + 2 * MS);
+		assertTrue(System.nanoTime() - start >= 2 * MS);
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.loadgenerator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link PayloadPool}, {@link JsonTemplate} and {@link SizeDistribution}.
+ */
+public class PayloadPoolTests {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final LoadGeneratorSourceProperties config = new LoadGeneratorSourceProperties();
+
+	private final Random random = new Random(42L);
+
+	@Test
+	public void testZerosShareFixedSizePayloads() throws IOException {
+		config.setPoolSize(10);
+		PayloadPool pool = PayloadPool.create(config);
+		assertEquals(10, pool.size());
+		assertEquals(1000, pool.get(0).getPayload().length);
+		assertSame(pool.get(0).getPayload(), pool.get(9).getPayload());
+		assertSame(pool.get(3), pool.get(13));
+	}
+
+	@Test
+	public void testRandomBytesEntropy() {
+		byte[] payload = PayloadPool.randomBytes(10000, 2, random);
+		Set<Byte> values = new HashSet<>();
+		for (byte b : payload) {
+			values.add(b);
+		}
+		assertEquals(4, values.size());
+		assertTrue(values.contains((byte) 3));
+
+		values.clear();
+		for (byte b : PayloadPool.randomBytes(10000, 8, random)) {
+			values.add(b);
+		}
+		assertEquals(256, values.size());
+
+		for (byte b : PayloadPool.randomBytes(100, 0, random)) {
+			assertEquals(0, b);
+		}
+	}
+
+	@Test
+	public void testJsonTemplate() {
+		JsonTemplate template = new JsonTemplate("{\"id\":\"{{string:5}}\",\"n\":{{int:10}},\"t\":\"{{choice:a|b}}\","
+				+ "\"f\":{{bool}},\"nested\":{\"x\":{{double}}}}");
+		for (int i = 0; i < 100; i++) {
+			String record = template.render(random);
+			assertTrue(record, record.matches("\\{\"id\":\"[a-zA-Z0-9]{5}\",\"n\":\\d,\"t\":\"[ab]\","
+					+ "\"f\":(true|false),\"nested\":\\{\"x\":0\\.\\d+(E-\\d+)?\\}\\}"));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownPlaceholder() {
+		new JsonTemplate("{\"id\":{{date}}}");
+	}
+
+	@Test
+	public void testDefaultJsonTemplate() throws IOException {
+		config.setPayloadType(PayloadType.json);
+		config.setPoolSize(5);
+		PayloadPool pool = PayloadPool.create(config);
+		String record = new String(pool.get(0).getPayload(), UTF_8);
+		assertTrue(record, record.startsWith("{\"id\":\"") && record.endsWith("}"));
+		assertTrue(record, !record.contains("{{"));
+	}
+
+	@Test
+	public void testFileReplay() throws IOException {
+		File file = File.createTempFile("payloads", ".txt");
+		file.deleteOnExit();
+		Files.write(file.toPath(), "{\"a\":1}\r\n\n{\"b\":2}\n{\"c\":3}".getBytes(UTF_8));
+		config.setPayloadType(PayloadType.file);
+		config.setPayloadFile(file.getPath());
+		PayloadPool pool = PayloadPool.create(config);
+		assertEquals(3, pool.size());
+		assertArrayEquals("{\"a\":1}".getBytes(UTF_8), pool.get(0).getPayload());
+		assertArrayEquals("{\"b\":2}".getBytes(UTF_8), pool.get(1).getPayload());
+		assertArrayEquals("{\"c\":3}".getBytes(UTF_8), pool.get(2).getPayload());
+		assertArrayEquals("{\"a\":1}".getBytes(UTF_8), pool.get(3).getPayload());
+	}
+
+	@Test
+	public void testSizeDistributions() {
+		config.setMinMessageSize(100);
+		config.setMaxMessageSize(200);
+		config.setMessageSize(150);
+		config.setMessageSizeStdDev(1000);
+		for (SizeDistribution distribution : SizeDistribution.values()) {
+			for (int i = 0; i < 1000; i++) {
+				int size = distribution.sample(config, random);
+				assertTrue(distribution + " " + size, size >= 100 && size <= 200);
+			}
+		}
+		assertEquals(150, SizeDistribution.fixed.sample(config, random));
+	}
+
+	@Test
+	public void testExponentialMean() {
+		config.setMessageSize(1000);
+		config.setMaxMessageSize(Integer.MAX_VALUE);
+		long total = 0;
+		for (int i = 0; i < 10000; i++) {
+			total += SizeDistribution.exponential.sample(config, random);
+		}
+		assertEquals(1000.0, total / 10000.0, 50.0);
+	}
+
+	@Test
+	public void testVariableSizeRandomPool() throws IOException {
+		config.setPayloadType(PayloadType.random);
+		config.setSizeDistribution(SizeDistribution.uniform);
+		config.setMinMessageSize(10);
+		config.setMaxMessageSize(20);
+		config.setPoolSize(100);
+		PayloadPool pool = PayloadPool.create(config);
+		Set<Integer> sizes = new HashSet<>();
+		for (int i = 0; i < pool.size(); i++) {
+			sizes.add(pool.get(i).getPayload().length);
+		}
+		assertEquals(11, sizes.size());
+		assertEquals(15.0, pool.getMeanSize(), 2.0);
+	}
+
+	@Test
+	public void testReadLinesWithoutTrailingNewline() {
+		List<byte[]> lines = PayloadPool.readLines("x\ny".getBytes(UTF_8));
+		assertEquals(2, lines.size());
+		assertArrayEquals("y".getBytes(UTF_8), lines.get(1));
+	}
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.throughput;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Computes the number of bytes {@link String#getBytes(Charset)} would return, without encoding the string.
+ * <p>
+ * UTF-8 and single byte charsets are computed by scanning the characters. Other charsets fall back to encoding.
+ */
+final class EncodedLength {
+
+	private EncodedLength() {
+	}
+
+	static int of(String s, Charset charset) {
+		if (StandardCharsets.UTF_8.equals(charset)) {
+			return utf8(s);
+		}
+		if (StandardCharsets.ISO_8859_1.equals(charset) || StandardCharsets.US_ASCII.equals(charset)) {
+			return singleByte(s);
+		}
+		return s.getBytes(charset).length;
+	}
+
+	/**
+	 * Characters that cannot be mapped are replaced with a single byte, as are surrogate pairs.
+	 */
+	static int singleByte(String s) {
+		int length = s.length();
+		int bytes = length;
+		for (int i = 0; i + 1 < length; i++) {
+			if (Character.isHighSurrogate(s.charAt(i)) && Character.isLowSurrogate(s.charAt(i + 1))) {
+				bytes--;
+				i++;
+			}
+		}
+		return bytes;
+	}
+
+	static int utf8(String s) {
+		int length = s.length();
+		int bytes = length;
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				continue;
+			}
+			if (c < 0x800) {
+				bytes += 1;
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+				// A supplementary code point takes 4 bytes for 2 chars
+				bytes += 2;
+				i++;
+			}
+			else if (!Character.isSurrogate(c)) {
+				bytes += 2;
+			}
+			// Unpaired surrogates are replaced with a single '?'
+		}
+		return bytes;
+	}
+
+}
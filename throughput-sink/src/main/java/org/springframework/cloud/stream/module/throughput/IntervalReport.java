@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.throughput;
+
+/**
+ * What the {@link ThroughputSink} witnessed during one reporting interval.
+ */
+public final class IntervalReport {
+
+	private final long timestamp;
+
+	private final long durationMs;
+
+	private final long messages;
+
+	private final long bytes;
+
+	private final LatencySnapshot latency;
+
+	IntervalReport(long timestamp, long durationMs, long messages, long bytes, LatencySnapshot latency) {
+		this.timestamp = timestamp;
+		this.durationMs = durationMs;
+		this.messages = messages;
+		this.bytes = bytes;
+		this.latency = latency;
+	}
+
+	/**
+	 * Return when the interval ended, in milliseconds since the epoch.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public long getDurationMs() {
+		return durationMs;
+	}
+
+	public long getMessages() {
+		return messages;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public double getMessagesPerSecond() {
+		return durationMs > 0 ? messages * 1000.0 / durationMs : 0.0;
+	}
+
+	public double getMegabytesPerSecond() {
+		return durationMs > 0 ? bytes / (1024.0 * 1024) * 1000 / durationMs : 0.0;
+	}
+
+	public LatencySnapshot getLatency() {
+		return latency;
+	}
+
+}
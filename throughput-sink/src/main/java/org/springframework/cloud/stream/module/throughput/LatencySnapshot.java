@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.throughput;
+
+import org.HdrHistogram.AbstractHistogram;
+
+/**
+ * The percentiles of a distribution of latencies, in milliseconds.
+ */
+public final class LatencySnapshot {
+
+	static final LatencySnapshot EMPTY = new LatencySnapshot(0L, 0L, 0.0, 0L, 0L, 0L, 0L, 0L);
+
+	private final long count;
+
+	private final long min;
+
+	private final double mean;
+
+	private final long p50;
+
+	private final long p90;
+
+	private final long p99;
+
+	private final long p999;
+
+	private final long max;
+
+	LatencySnapshot(long count, long min, double mean, long p50, long p90, long p99, long p999, long max) {
+		this.count = count;
+		this.min = min;
+		this.mean = mean;
+		this.p50 = p50;
+		this.p90 = p90;
+		this.p99 = p99;
+		this.p999 = p999;
+		this.max = max;
+	}
+
+	static LatencySnapshot of(AbstractHistogram histogram) {
+		if (histogram.getTotalCount() == 0L) {
+			return EMPTY;
+		}
+		return new LatencySnapshot(histogram.getTotalCount(), histogram.getMinValue(), histogram.getMean(),
+				histogram.getValueAtPercentile(50.0), histogram.getValueAtPercentile(90.0),
+				histogram.getValueAtPercentile(99.0), histogram.getValueAtPercentile(99.9), histogram.getMaxValue());
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMin() {
+		return min;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	public long getP50() {
+		return p50;
+	}
+
+	public long getP90() {
+		return p90;
+	}
+
+	public long getP99() {
+		return p99;
+	}
+
+	public long getP999() {
+		return p999;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("p50=%dms p90=%dms p99=%dms p99.9=%dms max=%dms (%d samples)", p50, p90, p99, p999, max,
+				count);
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.throughput;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Records end-to-end latencies into a lock-free {@link Recorder}, and keeps the distribution of the latest interval
+ * and of all intervals so far.
+ * <p>
+ * Any number of threads may {@link #record(long)} latencies concurrently without blocking. A single thread is
+ * expected to close intervals by calling {@link #sampleInterval()}, while snapshots can be read from any thread.
+ */
+public class LatencyTracker {
+
+	private static final int SIGNIFICANT_DIGITS = 3;
+
+	private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+
+	private final Histogram cumulative = new Histogram(SIGNIFICANT_DIGITS);
+
+	private Histogram interval;
+
+	private volatile LatencySnapshot lastInterval = LatencySnapshot.EMPTY;
+
+	private volatile LatencySnapshot total = LatencySnapshot.EMPTY;
+
+	/**
+	 * Record one latency, in milliseconds. Negative latencies, which stem from clocks out of sync between hosts,
+	 * are recorded as 0.
+	 */
+	public void record(long latencyMs) {
+		recorder.recordValue(latencyMs < 0L ? 0L : latencyMs);
+	}
+
+	/**
+	 * Close the current interval, adding its latencies to the cumulative distribution.
+	 *
+	 * @return the distribution of the latencies recorded during the interval
+	 */
+	public synchronized LatencySnapshot sampleInterval() {
+		interval = recorder.getIntervalHistogram(interval);
+		cumulative.add(interval);
+		lastInterval = LatencySnapshot.of(interval);
+		total = LatencySnapshot.of(cumulative);
+		return lastInterval;
+	}
+
+	/**
+	 * Return the distribution of the latencies of the latest closed interval.
+	 */
+	public LatencySnapshot getLastInterval() {
+		return lastInterval;
+	}
+
+	/**
+	 * Return the distribution of the latencies of all closed intervals.
+	 */
+	public LatencySnapshot getTotal() {
+		return total;
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.throughput;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Appends interval reports and run summaries to files, either as CSV with a header line or as one JSON document per
+ * line.
+ * <p>
+ * Files are appended to, so that the summaries of successive runs accumulate in the same file and can be compared.
+ * Numbers are always written with a dot as decimal separator.
+ */
+class ReportWriter {
+
+	static final String CSV_FORMAT = "csv";
+
+	static final String JSON_FORMAT = "json";
+
+	private static final String INTERVAL_HEADER = "timestamp,durationMs,messages,bytes,messagesPerSecond,"
+			+ "megabytesPerSecond,latencyCount,latencyP50,latencyP90,latencyP99,latencyP999,latencyMax";
+
+	private static final String SUMMARY_HEADER = "start,end,durationMs,messages,bytes,meanMessagesPerSecond,"
+			+ "peakMessagesPerSecond,meanMegabytesPerSecond,latencyCount,latencyP50,latencyP90,latencyP99,latencyP999,"
+			+ "latencyMax";
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final File reportFile;
+
+	private final File summaryFile;
+
+	private final boolean json;
+
+	/**
+	 * Create a writer appending to the given files, any of which may be {@code null} to not write the matching
+	 * records.
+	 */
+	ReportWriter(File reportFile, File summaryFile, String format) {
+		this.reportFile = reportFile;
+		this.summaryFile = summaryFile;
+		this.json = JSON_FORMAT.equals(format);
+	}
+
+	void write(IntervalReport report) throws IOException {
+		if (reportFile == null) {
+			return;
+		}
+		if (json) {
+			append(reportFile, null, objectMapper.writeValueAsString(report));
+		}
+		else {
+			append(reportFile, INTERVAL_HEADER, String.format(Locale.ROOT, "%d,%d,%d,%d,%.2f,%.4f,%s",
+					report.getTimestamp(), report.getDurationMs(), report.getMessages(), report.getBytes(),
+					report.getMessagesPerSecond(), report.getMegabytesPerSecond(), csv(report.getLatency())));
+		}
+	}
+
+	void write(RunSummary summary) throws IOException {
+		if (summaryFile == null) {
+			return;
+		}
+		if (json) {
+			append(summaryFile, null, objectMapper.writeValueAsString(summary));
+		}
+		else {
+			append(summaryFile, SUMMARY_HEADER, String.format(Locale.ROOT, "%d,%d,%d,%d,%d,%.2f,%.2f,%.4f,%s",
+					summary.getStart(), summary.getEnd(), summary.getDurationMs(), summary.getMessages(),
+					summary.getBytes(), summary.getMeanMessagesPerSecond(), summary.getPeakMessagesPerSecond(),
+					summary.getMeanMegabytesPerSecond(), csv(summary.getLatency())));
+		}
+	}
+
+	private static String csv(LatencySnapshot latency) {
+		return latency.getCount() + "," + latency.getP50() + "," + latency.getP90() + "," + latency.getP99() + ","
+				+ latency.getP999() + "," + latency.getMax();
+	}
+
+	/**
+	 * Append a line to the given file, preceded by the given header if the file is new or empty.
+	 */
+	private static void append(File file, String header, String line) throws IOException {
+		boolean empty = file.length() == 0L;
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+			if (empty && header != null) {
+				writer.write(header);
+				writer.write('\n');
+			}
+			writer.write(line);
+			writer.write('\n');
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.throughput;
+
+/**
+ * What the {@link ThroughputSink} witnessed from the first message it received until it was stopped, or until now
+ * while it is running.
+ */
+public final class RunSummary {
+
+	private final long start;
+
+	private final long end;
+
+	private final long messages;
+
+	private final long bytes;
+
+	private final double peakMessagesPerSecond;
+
+	private final LatencySnapshot latency;
+
+	RunSummary(long start, long end, long messages, long bytes, double peakMessagesPerSecond,
+			LatencySnapshot latency) {
+		this.start = start;
+		this.end = end;
+		this.messages = messages;
+		this.bytes = bytes;
+		this.peakMessagesPerSecond = peakMessagesPerSecond;
+		this.latency = latency;
+	}
+
+	/**
+	 * Return when the first message was received, in milliseconds since the epoch.
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	public long getEnd() {
+		return end;
+	}
+
+	public long getDurationMs() {
+		return end - start;
+	}
+
+	public long getMessages() {
+		return messages;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public double getMeanMessagesPerSecond() {
+		return getDurationMs() > 0 ? messages * 1000.0 / getDurationMs() : 0.0;
+	}
+
+	/**
+	 * Return the highest rate of a single reporting interval.
+	 */
+	public double getPeakMessagesPerSecond() {
+		return peakMessagesPerSecond;
+	}
+
+	public double getMeanMegabytesPerSecond() {
+		return getDurationMs() > 0 ? bytes / (1024.0 * 1024) * 1000 / getDurationMs() : 0.0;
+	}
+
+	public LatencySnapshot getLatency() {
+		return latency;
+	}
+
+}
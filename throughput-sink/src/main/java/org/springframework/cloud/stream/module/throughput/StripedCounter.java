@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.throughput;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter split over cells selected by thread, so that threads adding to it concurrently do not contend on a
+ * single cache line.
+ * <p>
+ * Cells are spaced so that no two of them share a cache line, or a pair of adjacent lines fetched together by the
+ * hardware prefetcher. The first cell is also kept away from the header of the backing array. Reads sum all cells,
+ * so they are meant to be much less frequent than writes.
+ */
+final class StripedCounter {
+
+	/**
+	 * The number of longs between two cells: 128 bytes.
+	 */
+	private static final int CELL_SPACING = 16;
+
+	private final AtomicLongArray cells;
+
+	private final int mask;
+
+	StripedCounter() {
+		int processors = Runtime.getRuntime().availableProcessors();
+		int stripes = Integer.highestOneBit(Math.max(1, processors - 1)) << 1;
+		this.cells = new AtomicLongArray((stripes + 1) * CELL_SPACING);
+		this.mask = stripes - 1;
+	}
+
+	void add(long delta) {
+		int stripe = (int) Thread.currentThread().getId() & mask;
+		cells.addAndGet((stripe + 1) * CELL_SPACING, delta);
+	}
+
+	void increment() {
+		add(1L);
+	}
+
+	long sum() {
+		long sum = 0L;
+		for (int i = CELL_SPACING; i < cells.length(); i += CELL_SPACING) {
+			sum += cells.get(i);
+		}
+		return sum;
+	}
+
+	/**
+	 * Return the sum of all cells, resetting them to 0. Additions concurrent with the reset are either part of the
+	 * returned sum or of the next one, never lost.
+	 */
+	long sumThenReset() {
+		long sum = 0L;
+		for (int i = CELL_SPACING; i < cells.length(); i += CELL_SPACING) {
+			sum += cells.getAndSet(i, 0L);
+		}
+		return sum;
+	}
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.throughput;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * An {@link org.springframework.boot.actuate.endpoint.Endpoint} exposing what the {@link ThroughputSink} witnessed:
+ * the latest interval reports, the summary of the run so far, and the latencies of the latest interval and since the
+ * first message.
+ */
+@ConfigurationProperties(prefix = "endpoints.throughput", ignoreUnknownFields = true)
+public class ThroughputEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+	private final ThroughputSink sink;
+
+	public ThroughputEndpoint(ThroughputSink sink) {
+		super("throughput");
+		this.sink = sink;
+	}
+
+	@Override
+	public Map<String, Object> invoke() {
+		Map<String, Object> latency = new LinkedHashMap<>();
+		latency.put("interval", sink.getLatencyTracker().getLastInterval());
+		latency.put("total", sink.getLatencyTracker().getTotal());
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("summary", sink.getSummary());
+		result.put("intervals", sink.getRecentIntervals());
+		result.put("latency", latency);
+		return result;
+	}
+
+}
@@ -16,8 +16,16 @@
 
 package org.springframework.cloud.stream.module.throughput;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -26,19 +34,27 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.messaging.Sink;
-import org.springframework.context.Lifecycle;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Bean;
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.messaging.Message;
 
 /**
  * A simple handler that will count messages and log witnessed throughput at some interval.
+ * <p>
+ * When messages carry the time they were sent at, the distribution of their end-to-end latencies is logged as well,
+ * and exposed along with the latest interval by the {@code throughput} endpoint.
+ * <p>
+ * Interval reports can also be appended to a CSV or JSON file. When the sink stops, the counts received since the
+ * last report are reported, and a summary of the whole run is logged and optionally appended to a file, so that runs
+ * can be compared with each other.
  *
  * @author Glenn Renfro
  * @author Eric Bottard
  */
 @EnableBinding(Sink.class)
 @EnableConfigurationProperties({ThroughputSinkProperties.class})
-public class ThroughputSink implements Lifecycle {
+public class ThroughputSink implements SmartLifecycle {
 
 	private static Logger logger = LoggerFactory.getLogger(ThroughputSink.class);
 
@@ -46,15 +62,38 @@ public class ThroughputSink implements Lifecycle {
 
 	private final AtomicLong start = new AtomicLong(-1);
 
-	private final AtomicLong bytes = new AtomicLong(-1);
+	private final AtomicLong bytes = new AtomicLong();
 
-	private final AtomicLong intermediateCounter = new AtomicLong();
+	/**
+	 * Counts of the current interval, written by every consumer thread.
+	 */
+	private final StripedCounter intermediateCounter = new StripedCounter();
 
-	private final AtomicLong intermediateBytes = new AtomicLong();
+	private final StripedCounter intermediateBytes = new StripedCounter();
+
+	/**
+	 * The charset String payloads are measured in, as with {@link String#getBytes()}.
+	 */
+	private final Charset charset = Charset.defaultCharset();
 
 	private final TimeUnit timeUnit = TimeUnit.s;
 
-	private final ExecutorService executorService = Executors.newFixedThreadPool(1);
+	private final LatencyTracker latencyTracker = new LatencyTracker();
+
+	private final Deque<IntervalReport> history = new ArrayDeque<>();
+
+	/**
+	 * When the interval being counted started, only accessed by the thread reporting.
+	 */
+	private long intervalStart;
+
+	private volatile double peakRate;
+
+	private volatile RunSummary summary;
+
+	private volatile ReportWriter reportWriter;
+
+	private volatile ExecutorService executorService;
 
 	private volatile boolean running;
 
@@ -63,14 +102,74 @@ public class ThroughputSink implements Lifecycle {
 	@Autowired
 	private volatile ThroughputSinkProperties config;
 
+	public ThroughputSink() {
+	}
+
+	ThroughputSink(ThroughputSinkProperties config) {
+		this.config = config;
+	}
+
+	@Bean
+	public ThroughputEndpoint throughputEndpoint() {
+		return new ThroughputEndpoint(this);
+	}
+
 	@Override
 	public void start() {
+		this.reportWriter = new ReportWriter(file(config.getReportFile()), file(config.getSummaryFile()),
+				config.getReportFormat());
+		this.executorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "throughput-report");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 		this.running = true;
 	}
 
 	@Override
 	public void stop() {
+		if (!running) {
+			return;
+		}
 		this.running = false;
+		executorService.shutdownNow();
+		try {
+			if (!executorService.awaitTermination(config.getReportEveryMs() + 1000L,
+					java.util.concurrent.TimeUnit.MILLISECONDS)) {
+				logger.warn("Reporting thread did not stop, no summary is reported");
+				return;
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		if (start.get() == -1L) {
+			return;
+		}
+		// The reporting thread is done, report what was received since its last report
+		report(false);
+		RunSummary runSummary = getSummary();
+		logger.info(String.format("Run: %d messages in %.2f%s = %.2f/s mean, %.2f/s peak, %.2fMB/s",
+				runSummary.getMessages(), timeUnit.convert(runSummary.getDurationMs(), TimeUnit.ms), timeUnit,
+				runSummary.getMeanMessagesPerSecond(), runSummary.getPeakMessagesPerSecond(),
+				runSummary.getMeanMegabytesPerSecond()));
+		try {
+			reportWriter.write(runSummary);
+		}
+		catch (IOException e) {
+			logger.error("Failed to write run summary", e);
+		}
+	}
+
+	@Override
+	public void stop(Runnable callback) {
+		stop();
+		callback.run();
 	}
 
 	@Override
@@ -78,6 +177,39 @@ public class ThroughputSink implements Lifecycle {
 		return running;
 	}
 
+	@Override
+	public boolean isAutoStartup() {
+		return true;
+	}
+
+	/**
+	 * Start before and stop after other components, so that all the messages received are reported.
+	 */
+	@Override
+	public int getPhase() {
+		return Integer.MIN_VALUE;
+	}
+
+	/**
+	 * Return the latest interval reports, oldest first.
+	 */
+	public List<IntervalReport> getRecentIntervals() {
+		synchronized (history) {
+			return new ArrayList<>(history);
+		}
+	}
+
+	/**
+	 * Return the summary of the run as of the latest interval report, or {@code null} if no message was received.
+	 */
+	public RunSummary getSummary() {
+		return summary;
+	}
+
+	public LatencyTracker getLatencyTracker() {
+		return latencyTracker;
+	}
+
 	@ServiceActivator(inputChannel=Sink.INPUT)
 	public void throughputSink(Message<?> message ) {
 		if (start.get() == -1L) {
@@ -90,62 +222,104 @@ public class ThroughputSink implements Lifecycle {
 					if (payload instanceof byte[] || payload instanceof String) {
 						reportBytes = true;
 					}
-					start.set(System.currentTimeMillis());
-					executorService.execute(new ReportStats());
+					long now = System.currentTimeMillis();
+					intervalStart = now;
+					start.set(now);
+					if (running) {
+						executorService.execute(new ReportStats());
+					}
 				}
 			}
 		}
-		intermediateCounter.incrementAndGet();
+		intermediateCounter.increment();
+		Object sentAt = message.getHeaders().get(config.getTimestampHeader());
+		if (sentAt instanceof Number) {
+			latencyTracker.record(System.currentTimeMillis() - ((Number) sentAt).longValue());
+		}
 		if (reportBytes) {
 			Object payload = message.getPayload();
  			if (payload instanceof byte[]) {
-				intermediateBytes.addAndGet(((byte[]) payload).length);
+				intermediateBytes.add(((byte[]) payload).length);
 			}
 			else if (payload instanceof String) {
-				intermediateBytes.addAndGet((((String) payload).getBytes()).length);
+				intermediateBytes.add(EncodedLength.of((String) payload, charset));
 			}
 		}
 	}
 
+	/**
+	 * Close the current interval, logging and recording what was received during it. The rate of an incomplete
+	 * interval, which may be very short, is not taken into account for the peak rate.
+	 */
+	private void report(boolean complete) {
+		long timeNow = System.currentTimeMillis();
+		long elapsed = timeNow - intervalStart;
+		long currentCounter = intermediateCounter.sumThenReset();
+		long currentBytes = intermediateBytes.sumThenReset();
+		long totalCounter = counter.addAndGet(currentCounter);
+		long totalBytes = bytes.addAndGet(currentBytes);
+		LatencySnapshot latency = latencyTracker.sampleInterval();
+		IntervalReport report = new IntervalReport(timeNow, elapsed, currentCounter, currentBytes, latency);
+		intervalStart = timeNow;
+		if (complete && report.getMessagesPerSecond() > peakRate) {
+			peakRate = report.getMessagesPerSecond();
+		}
+		summary = new RunSummary(start.get(), timeNow, totalCounter, totalBytes, peakRate,
+				latencyTracker.getTotal());
+		synchronized (history) {
+			history.addLast(report);
+			while (history.size() > config.getHistorySize()) {
+				history.removeFirst();
+			}
+		}
+
+		logger.info(
+				String.format("Messages: %10d in %5.2f%s = %11.2f/s",
+						currentCounter,
+						elapsed / 1000.0, timeUnit, report.getMessagesPerSecond()));
+		logger.info(
+				String.format("Messages: %10d in %5.2f%s = %11.2f/s",
+						totalCounter, summary.getDurationMs() / 1000.0, timeUnit,
+						summary.getMeanMessagesPerSecond()));
+		if (reportBytes) {
+			logger.info(
+					String.format("Throughput: %12d in %5.2f%s = %11.2fMB/s, ",
+							currentBytes,
+							elapsed / 1000.0, timeUnit, report.getMegabytesPerSecond()));
+			logger.info(
+					String.format("Throughput: %12d in %5.2f%s = %11.2fMB/s",
+							totalBytes, summary.getDurationMs() / 1000.0, timeUnit,
+							summary.getMeanMegabytesPerSecond()));
+		}
+		if (latency.getCount() > 0) {
+			logger.info("Latency: " + latency);
+			logger.info("Latency: " + summary.getLatency());
+		}
+		try {
+			reportWriter.write(report);
+		}
+		catch (IOException e) {
+			logger.error("Failed to write interval report", e);
+		}
+	}
+
+	private static File file(String path) {
+		return path != null ? new File(path) : null;
+	}
+
 	private class ReportStats implements Runnable {
 		@Override
 		public void run() {
 			int reportEveryMs = config.getReportEveryMs();
 			while (isRunning()) {
-				long intervalStart = System.currentTimeMillis();
 				try {
 					Thread.sleep(reportEveryMs);
-					long timeNow = System.currentTimeMillis();
-					long currentCounter = intermediateCounter.getAndSet(0L);
-					long currentBytes = intermediateBytes.getAndSet(0L);
-					long totalCounter = counter.addAndGet(currentCounter);
-					long totalBytes = bytes.addAndGet(currentBytes);
-
-					logger.info(
-							String.format("Messages: %10d in %5.2f%s = %11.2f/s",
-									currentCounter,
-									(timeNow - intervalStart)/ 1000.0, timeUnit, ((double) currentCounter * 1000 / reportEveryMs)));
-					logger.info(
-							String.format("Messages: %10d in %5.2f%s = %11.2f/s",
-									totalCounter, (timeNow - start.get()) / 1000.0, timeUnit,
-									((double) totalCounter * 1000 / (timeNow - start.get()))));
-					if (reportBytes) {
-						logger.info(
-								String.format("Throughput: %12d in %5.2f%s = %11.2fMB/s, ",
-										currentBytes,
-										(timeNow - intervalStart)/ 1000.0, timeUnit,
-										((currentBytes / (1024.0 * 1024)) * 1000 / reportEveryMs)));
-						logger.info(
-								String.format("Throughput: %12d in %5.2f%s = %11.2fMB/s",
-										totalBytes, (timeNow - start.get()) / 1000.0, timeUnit,
-										((totalBytes / (1024.0 * 1024)) * 1000 / (timeNow - start.get()))));
-					}
 				}
 				catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-					logger.warn("Thread interrupted", e);
+					// Stopping, the final interval is reported by stop()
 					return;
 				}
+				report(true);
 			}
 		}
 	}
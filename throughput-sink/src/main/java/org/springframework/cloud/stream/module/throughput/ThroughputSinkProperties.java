@@ -16,6 +16,9 @@
 
 package org.springframework.cloud.stream.module.throughput;
 
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Min;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -28,6 +31,32 @@ public class ThroughputSinkProperties {
 
 	private int reportEveryMs = 1000;
 
+	/**
+	 * The header holding the time messages were sent at, in milliseconds since the epoch, from which end-to-end
+	 * latencies are computed. Latencies are not tracked for messages without it.
+	 */
+	private String timestampHeader = "producerTimestamp";
+
+	/**
+	 * The file each interval report is appended to, if any.
+	 */
+	private String reportFile;
+
+	/**
+	 * The file a summary of the run is appended to when the sink stops, if any.
+	 */
+	private String summaryFile;
+
+	/**
+	 * The format of the report and summary files, either 'csv' or 'json' (one document per line).
+	 */
+	private String reportFormat = ReportWriter.CSV_FORMAT;
+
+	/**
+	 * The number of latest interval reports exposed by the throughput endpoint.
+	 */
+	private int historySize = 60;
+
 	public int getReportEveryMs() {
 		return reportEveryMs;
 	}
@@ -36,4 +65,50 @@ public class ThroughputSinkProperties {
 		this.reportEveryMs = reportEveryMs;
 	}
 
+	public String getTimestampHeader() {
+		return timestampHeader;
+	}
+
+	public void setTimestampHeader(String timestampHeader) {
+		this.timestampHeader = timestampHeader;
+	}
+
+	public String getReportFile() {
+		return reportFile;
+	}
+
+	public void setReportFile(String reportFile) {
+		this.reportFile = reportFile;
+	}
+
+	public String getSummaryFile() {
+		return summaryFile;
+	}
+
+	public void setSummaryFile(String summaryFile) {
+		this.summaryFile = summaryFile;
+	}
+
+	public String getReportFormat() {
+		return reportFormat;
+	}
+
+	public void setReportFormat(String reportFormat) {
+		this.reportFormat = reportFormat;
+	}
+
+	@Min(0)
+	public int getHistorySize() {
+		return historySize;
+	}
+
+	public void setHistorySize(int historySize) {
+		this.historySize = historySize;
+	}
+
+	@AssertTrue(message = "'reportFormat' must be one of 'csv' or 'json'")
+	public boolean isValidReportFormat() {
+		return ReportWriter.CSV_FORMAT.equals(reportFormat) || ReportWriter.JSON_FORMAT.equals(reportFormat);
+	}
+
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.throughput;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link EncodedLength}.
+ */
+public class EncodedLengthTests {
+
+	private static final String[] SAMPLES = { "", "hello", "Zo\u00eb", "\u2713 done", "\ud83d\ude00 smile",
+			"lone \ud83d surrogate", "lone \ude00 low", "trailing \ud83d", "\u00ff\u0100\u07ff\u0800\uffff" };
+
+	@Test
+	public void testMatchesEncodedBytes() {
+		Charset[] charsets = { StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, StandardCharsets.US_ASCII,
+				StandardCharsets.UTF_16 };
+		for (Charset charset : charsets) {
+			for (String sample : SAMPLES) {
+				assertEquals(charset + " length of '" + sample + "'", sample.getBytes(charset).length,
+						EncodedLength.of(sample, charset));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.throughput;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link LatencyTracker}.
+ */
+public class LatencyTrackerTests {
+
+	private final LatencyTracker tracker = new LatencyTracker();
+
+	@Test
+	public void testPercentilesPerInterval() {
+		for (int i = 1; i <= 100; i++) {
+			tracker.record(i);
+		}
+		LatencySnapshot interval = tracker.sampleInterval();
+		assertEquals(100L, interval.getCount());
+		assertEquals(1L, interval.getMin());
+		assertEquals(50L, interval.getP50());
+		assertEquals(90L, interval.getP90());
+		assertEquals(99L, interval.getP99());
+		assertEquals(100L, interval.getMax());
+		assertEquals(50.5, interval.getMean(), 0.01);
+
+		tracker.record(1000);
+		interval = tracker.sampleInterval();
+		assertEquals(1L, interval.getCount());
+		assertEquals(1000L, interval.getP50());
+		assertEquals(101L, tracker.getTotal().getCount());
+		assertEquals(1000L, tracker.getTotal().getMax());
+		assertEquals(interval, tracker.getLastInterval());
+	}
+
+	@Test
+	public void testEmptyInterval() {
+		tracker.record(10);
+		tracker.sampleInterval();
+		LatencySnapshot interval = tracker.sampleInterval();
+		assertEquals(0L, interval.getCount());
+		assertEquals(0L, interval.getMax());
+		assertEquals(1L, tracker.getTotal().getCount());
+	}
+
+	@Test
+	public void testNegativeLatencyRecordedAsZero() {
+		tracker.record(-5);
+		LatencySnapshot interval = tracker.sampleInterval();
+		assertEquals(1L, interval.getCount());
+		assertEquals(0L, interval.getMax());
+	}
+
+}
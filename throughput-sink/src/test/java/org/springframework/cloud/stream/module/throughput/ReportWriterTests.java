@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.throughput;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ReportWriter}.
+ */
+public class ReportWriterTests {
+
+	private static final LatencySnapshot LATENCY = new LatencySnapshot(10L, 1L, 5.5, 5L, 9L, 10L, 10L, 10L);
+
+	private File reportFile;
+
+	private File summaryFile;
+
+	@Before
+	public void createFiles() throws IOException {
+		reportFile = File.createTempFile("throughput-report", ".csv");
+		summaryFile = File.createTempFile("throughput-summary", ".csv");
+	}
+
+	@After
+	public void deleteFiles() {
+		reportFile.delete();
+		summaryFile.delete();
+	}
+
+	@Test
+	public void testCsvHeaderWrittenOnce() throws IOException {
+		ReportWriter writer = new ReportWriter(reportFile, summaryFile, ReportWriter.CSV_FORMAT);
+		writer.write(new IntervalReport(2000L, 1000L, 500L, 1048576L, LATENCY));
+		writer.write(new IntervalReport(3000L, 500L, 100L, 0L, LatencySnapshot.EMPTY));
+		List<String> lines = Files.readAllLines(reportFile.toPath(), StandardCharsets.UTF_8);
+		assertEquals(3, lines.size());
+		assertTrue(lines.get(0).startsWith("timestamp,durationMs,messages,bytes,"));
+		assertEquals("2000,1000,500,1048576,500.00,1.0000,10,5,9,10,10,10", lines.get(1));
+		assertEquals("3000,500,100,0,200.00,0.0000,0,0,0,0,0,0", lines.get(2));
+	}
+
+	@Test
+	public void testSummariesOfRunsAccumulate() throws IOException {
+		new ReportWriter(null, summaryFile, ReportWriter.CSV_FORMAT).write(
+				new RunSummary(1000L, 3000L, 600L, 0L, 500.0, LATENCY));
+		new ReportWriter(null, summaryFile, ReportWriter.CSV_FORMAT).write(
+				new RunSummary(5000L, 6000L, 100L, 0L, 100.0, LatencySnapshot.EMPTY));
+		List<String> lines = Files.readAllLines(summaryFile.toPath(), StandardCharsets.UTF_8);
+		assertEquals(3, lines.size());
+		assertEquals("1000,3000,2000,600,0,300.00,500.00,0.0000,10,5,9,10,10,10", lines.get(1));
+		assertEquals("5000,6000,1000,100,0,100.00,100.00,0.0000,0,0,0,0,0,0", lines.get(2));
+		assertEquals(0L, reportFile.length());
+	}
+
+	@Test
+	public void testJsonLines() throws IOException {
+		ReportWriter writer = new ReportWriter(reportFile, summaryFile, ReportWriter.JSON_FORMAT);
+		writer.write(new IntervalReport(2000L, 1000L, 500L, 0L, LATENCY));
+		writer.write(new RunSummary(1000L, 2000L, 500L, 0L, 500.0, LATENCY));
+		List<String> lines = Files.readAllLines(reportFile.toPath(), StandardCharsets.UTF_8);
+		assertEquals(1, lines.size());
+		assertTrue(lines.get(0), lines.get(0).startsWith("{\"timestamp\":2000,\"durationMs\":1000,\"messages\":500,"));
+		assertTrue(lines.get(0), lines.get(0).contains("\"latency\":{\"count\":10,"));
+		lines = Files.readAllLines(summaryFile.toPath(), StandardCharsets.UTF_8);
+		assertEquals(1, lines.size());
+		assertTrue(lines.get(0), lines.get(0).contains("\"meanMessagesPerSecond\":500.0"));
+	}
+
+}
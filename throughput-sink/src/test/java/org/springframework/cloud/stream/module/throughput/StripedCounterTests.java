@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.throughput;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link StripedCounter}.
+ */
+public class StripedCounterTests {
+
+	@Test
+	public void testConcurrentAdds() throws InterruptedException {
+		final StripedCounter counter = new StripedCounter();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			threads.add(new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						counter.increment();
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(80000L, counter.sum());
+		assertEquals(80000L, counter.sumThenReset());
+		assertEquals(0L, counter.sum());
+		counter.add(5L);
+		assertEquals(5L, counter.sumThenReset());
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.module.throughput;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+
+/**
+ * Measures the overhead of the {@link ThroughputSink} per message when several consumers share it, and compares the
+ * counters and the measurement of String payloads it uses to the shared {@link AtomicLong}s and the encoding they
+ * replaced.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.springframework.cloud.stream.module.throughput.ThroughputSinkBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class ThroughputSinkBenchmark {
+
+	private static final String TEXT = "{\"id\": 42, \"name\": \"Zo\u00eb\", \"city\": \"K\u00f8benhavn\", \"note\": \"\u2713\"}";
+
+	private final ThroughputSink sink = new ThroughputSink(new ThroughputSinkProperties());
+
+	private final Message<byte[]> bytesMessage = new GenericMessage<>(new byte[1000]);
+
+	private final Message<String> stringMessage = new GenericMessage<>(TEXT);
+
+	private final AtomicLong atomicCounter = new AtomicLong();
+
+	private final StripedCounter stripedCounter = new StripedCounter();
+
+	private final Charset charset = Charset.forName("UTF-8");
+
+	@Benchmark
+	public void sinkBytes() {
+		sink.throughputSink(bytesMessage);
+	}
+
+	@Benchmark
+	public void sinkString() {
+		sink.throughputSink(stringMessage);
+	}
+
+	@Benchmark
+	public long atomicCounter() {
+		return atomicCounter.incrementAndGet();
+	}
+
+	@Benchmark
+	public void stripedCounter() {
+		stripedCounter.increment();
+	}
+
+	@Benchmark
+	public int getBytesLength() {
+		return TEXT.getBytes(charset).length;
+	}
+
+	@Benchmark
+	public int encodedLength() {
+		return EncodedLength.of(TEXT, charset);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(ThroughputSinkBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}